@@ -0,0 +1,81 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.repository.CollectionFilter;
+import com.capstone.EcoTrack.repository.EmbeddedCollectionRepository;
+import com.capstone.EcoTrack.service.CollectionAnalyticsStore;
+import com.capstone.EcoTrack.service.StatsMode;
+import com.google.cloud.Timestamp;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// The dashboard aggregations over synthetic datasets: EmbeddedCollectionRepository.aggregate (index lookup,
+// then the per-record filter-and-add loop) against the columnar analytics store (COLUMNAR mode) loaded
+// from that same repository. The 10M dataset needs several GB of heap, hence the larger fork heap.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CollectionAggregationBenchmark {
+
+    private static final Timestamp MONTH_START = Timestamp.parseTimestamp("2024-03-01T00:00:00Z");
+    private static final Timestamp MONTH_END = Timestamp.parseTimestamp("2024-04-01T00:00:00Z");
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    private int records;
+
+    private EmbeddedCollectionRepository embedded;
+    private CollectionAnalyticsStore columnar;
+
+    private final CollectionFilter overall = CollectionFilter.completedPrivate();
+    private final CollectionFilter barangay = CollectionFilter.completedPrivate().barangay("Barangay 7");
+    private final CollectionFilter driverMonth = CollectionFilter.completedPrivate()
+            .driverId("driver-7")
+            .between(MONTH_START, MONTH_END);
+
+    @Setup
+    public void setUp() throws ExecutionException, InterruptedException {
+        // In memory only (no data dir) and without simulated latency
+        embedded = new EmbeddedCollectionRepository("", 0, 30);
+        for (int i = 0; i < records; i++) {
+            embedded.save(SyntheticCollections.summary(i));
+        }
+        columnar = new CollectionAnalyticsStore(embedded, StatsMode.COLUMNAR);
+        columnar.load();
+    }
+
+    @Benchmark
+    public CollectionStats scanOverall() {
+        return embedded.aggregate(overall);
+    }
+
+    @Benchmark
+    public CollectionStats scanBarangay() {
+        return embedded.aggregate(barangay);
+    }
+
+    @Benchmark
+    public CollectionStats scanDriverMonth() {
+        return embedded.aggregate(driverMonth);
+    }
+
+    @Benchmark
+    public CollectionStats columnarOverall() {
+        return columnar.getOverall();
+    }
+
+    @Benchmark
+    public CollectionStats columnarBarangay() {
+        return columnar.getBarangay("Barangay 7");
+    }
+
+    @Benchmark
+    public CollectionStats columnarDriverMonth() {
+        return columnar.getDriverRange("driver-7",
+                MONTH_START.toDate().getTime(), MONTH_END.toDate().getTime());
+    }
+}
@@ -0,0 +1,90 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.repository.CollectionRecordDecoder;
+import com.google.cloud.firestore.BenchmarkSnapshots;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.firestore.v1.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per-document cost of turning query results into stats: the old bean-mapped full documents
+// against the projected documents read by CollectionRecordDecoder. Payload sizes are printed at setup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionDecodeBenchmark {
+
+    private static final int DOCUMENTS = 1000;
+
+    private List<QueryDocumentSnapshot> fullSnapshots;
+    private List<QueryDocumentSnapshot> projectedSnapshots;
+
+    @Setup
+    public void setUp() {
+        fullSnapshots = new ArrayList<>(DOCUMENTS);
+        projectedSnapshots = new ArrayList<>(DOCUMENTS);
+        long fullBytes = 0;
+        long projectedBytes = 0;
+
+        for (int i = 0; i < DOCUMENTS; i++) {
+            CollectionRecord record = SyntheticCollections.record(i);
+            Document full = SyntheticCollections.document(record);
+            Document projected = SyntheticCollections.document(record, CollectionRecordDecoder.STATS_FIELDS);
+            fullBytes += full.getSerializedSize();
+            projectedBytes += projected.getSerializedSize();
+            fullSnapshots.add(BenchmarkSnapshots.fromDocument(full));
+            projectedSnapshots.add(BenchmarkSnapshots.fromDocument(projected));
+        }
+
+        System.out.printf("Payload bytes per document: full=%d projected=%d%n",
+                fullBytes / DOCUMENTS, projectedBytes / DOCUMENTS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public CollectionStats beanMapperFullDocument() {
+        CollectionStats stats = new CollectionStats();
+        for (QueryDocumentSnapshot document : fullSnapshots) {
+            stats.add(document.toObject(CollectionRecord.class));
+        }
+        return stats;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public CollectionStats beanMapperProjectedDocument() {
+        CollectionStats stats = new CollectionStats();
+        for (QueryDocumentSnapshot document : projectedSnapshots) {
+            stats.add(document.toObject(CollectionRecord.class));
+        }
+        return stats;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public CollectionStats decoderProjectedDocument() {
+        CollectionStats stats = new CollectionStats();
+        for (QueryDocumentSnapshot document : projectedSnapshots) {
+            CollectionRecordDecoder.fold(stats, document);
+        }
+        return stats;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public List<CollectionRecord> decoderFullRecord() {
+        List<CollectionRecord> records = new ArrayList<>(DOCUMENTS);
+        for (QueryDocumentSnapshot document : fullSnapshots) {
+            records.add(CollectionRecordDecoder.decode(document));
+        }
+        return records;
+    }
+}
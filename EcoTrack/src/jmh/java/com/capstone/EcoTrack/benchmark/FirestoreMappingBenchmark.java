@@ -0,0 +1,53 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.User;
+import com.google.cloud.firestore.BenchmarkSnapshots;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-document cost of the Firestore bean mapper for the two stored models, in both directions:
+// toObject when reading a document and the plain-map conversion DocumentReference.set runs before a write
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FirestoreMappingBenchmark {
+
+    private User user;
+    private QueryDocumentSnapshot userSnapshot;
+    private CollectionRecord record;
+    private QueryDocumentSnapshot recordSnapshot;
+
+    @Setup
+    public void setUp() {
+        user = SyntheticUsers.user(42);
+        userSnapshot = BenchmarkSnapshots.fromDocument(SyntheticUsers.document(user));
+        record = SyntheticCollections.record(42);
+        recordSnapshot = BenchmarkSnapshots.fromDocument(SyntheticCollections.document(record));
+    }
+
+    @Benchmark
+    public User readUser() {
+        return userSnapshot.toObject(User.class);
+    }
+
+    @Benchmark
+    public Object writeUser() {
+        return BenchmarkSnapshots.toPlainJavaTypes(user);
+    }
+
+    @Benchmark
+    public CollectionRecord readCollectionRecord() {
+        return recordSnapshot.toObject(CollectionRecord.class);
+    }
+
+    @Benchmark
+    public Object writeCollectionRecord() {
+        return BenchmarkSnapshots.toPlainJavaTypes(record);
+    }
+}
@@ -0,0 +1,61 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.capstone.EcoTrack.config.JwtConfig;
+import com.capstone.EcoTrack.config.JwtKeyRing;
+import com.capstone.EcoTrack.model.User;
+import com.capstone.EcoTrack.service.JwtService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Token work done on every login (generate) and on every authenticated request (extract + validate)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private JwtService jwtService;
+    private User user;
+    private UserDetails userDetails;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtConfig config = new JwtConfig();
+        jwtService = new JwtService(config, JwtKeyRing.ephemeral(config), new SimpleMeterRegistry(), 0);
+        user = SyntheticUsers.user(7);
+        userDetails = new org.springframework.security.core.userdetails.User(
+                user.getEmail(), user.getPassword(),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole())));
+        token = jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(token);
+    }
+
+    @Benchmark
+    public boolean isTokenValid() {
+        return jwtService.isTokenValid(token, userDetails);
+    }
+
+    // What JwtAuthenticationFilter does per request
+    @Benchmark
+    public boolean extractAndValidate() {
+        String username = jwtService.extractUsername(token);
+        return username != null && jwtService.isTokenValid(token, userDetails);
+    }
+}
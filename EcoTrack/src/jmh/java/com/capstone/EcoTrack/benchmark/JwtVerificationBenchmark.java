@@ -0,0 +1,107 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.capstone.EcoTrack.config.JwtConfig;
+import com.capstone.EcoTrack.config.JwtKeyRing;
+import com.capstone.EcoTrack.model.User;
+import com.capstone.EcoTrack.service.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.security.Key;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Per-request token verification under concurrent load: the old three parses with a fresh parser each,
+// one parse with the shared parser, and the verified-token cache. Requests draw from a pool of
+// active sessions, so the cached variant sees the repeat tokens a real API gets.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private static final int SESSIONS = 1000;
+
+    private JwtService uncached;
+    private JwtService cached;
+    private Key legacyKey;
+
+    private String[] uncachedTokens;
+    private String[] cachedTokens;
+    private String[] legacyTokens;
+    private UserDetails[] principals;
+
+    @Setup
+    public void setUp() {
+        JwtConfig config = new JwtConfig();
+        JwtKeyRing keyRing = JwtKeyRing.ephemeral(config);
+        uncached = new JwtService(config, keyRing, new SimpleMeterRegistry(), 0);
+        cached = new JwtService(config, keyRing, new SimpleMeterRegistry(), 10000);
+        legacyKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+
+        uncachedTokens = new String[SESSIONS];
+        cachedTokens = new String[SESSIONS];
+        legacyTokens = new String[SESSIONS];
+        principals = new UserDetails[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            User user = SyntheticUsers.user(i);
+            uncachedTokens[i] = uncached.generateToken(user);
+            cachedTokens[i] = cached.generateToken(user);
+            legacyTokens[i] = Jwts.builder()
+                    .setSubject(user.getEmail())
+                    .claim("userId", user.getUserId())
+                    .claim("email", user.getEmail())
+                    .claim("role", user.getRole())
+                    .setIssuedAt(new Date())
+                    .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+                    .signWith(legacyKey)
+                    .compact();
+            principals[i] = new org.springframework.security.core.userdetails.User(
+                    user.getEmail(), "", Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole())));
+        }
+    }
+
+    // What the filter did before: extractUsername, then isTokenValid's extractUsername and extractExpiration
+    @Benchmark
+    public boolean legacyThreeParses() {
+        int i = ThreadLocalRandom.current().nextInt(SESSIONS);
+        String token = legacyTokens[i];
+        String username = legacyParse(token).getSubject();
+        boolean valid = legacyParse(token).getSubject().equals(principals[i].getUsername())
+                && !legacyParse(token).getExpiration().before(new Date());
+        return username != null && valid;
+    }
+
+    @Benchmark
+    public boolean singleParse() {
+        int i = ThreadLocalRandom.current().nextInt(SESSIONS);
+        Claims claims = uncached.verify(uncachedTokens[i]);
+        return claims.getSubject() != null && uncached.isTokenValid(claims, principals[i]);
+    }
+
+    @Benchmark
+    public boolean cachedVerification() {
+        int i = ThreadLocalRandom.current().nextInt(SESSIONS);
+        Claims claims = cached.verify(cachedTokens[i]);
+        return claims.getSubject() != null && cached.isTokenValid(claims, principals[i]);
+    }
+
+    private Claims legacyParse(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(legacyKey)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
@@ -0,0 +1,236 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-loop load against a running server: for each concurrency level, that many clients each keep one
+// request in flight (a mix of logins and dashboard reads) and the sustained rate, latency percentiles and
+// error rate are recorded. The highest level that stays within load.max-p99-ms and load.max-error-rate is
+// reported as what the server sustains.
+//
+// Start the server with the load profile once per thread mode, then run this against it:
+//   java -jar EcoTrack.jar --spring.profiles.active=embedded,load --spring.threads.virtual.enabled=false
+//   mvn -Pbenchmark test-compile exec:exec@load -Dload.label=platform
+// and again with --spring.threads.virtual.enabled=true and -Dload.label=virtual. Results are printed and
+// written to target/load-{label}.json.
+public class LoadProfile {
+
+    private static final String PASSWORD = "load-profile-password";
+    private static final int MAX_LATENCY_MILLIS = 60_000;
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final double loginShare;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private String email;
+    private String token;
+
+    LoadProfile(String baseUrl, double loginShare) {
+        this.baseUrl = baseUrl;
+        this.loginShare = loginShare;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = System.getProperty("load.url", "http://localhost:8080");
+        String label = System.getProperty("load.label", "run");
+        int[] levels = Arrays.stream(System.getProperty("load.levels", "50,100,200,400,800").split(","))
+                .mapToInt(level -> Integer.parseInt(level.trim()))
+                .toArray();
+        int warmupSeconds = Integer.getInteger("load.warmup-seconds", 5);
+        int seconds = Integer.getInteger("load.seconds", 20);
+        double loginShare = Double.parseDouble(System.getProperty("load.login-share", "0.2"));
+        long maxP99Millis = Long.getLong("load.max-p99-ms", 1000);
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+        File out = new File(System.getProperty("load.out", "target/load-" + label + ".json"));
+
+        LoadProfile profile = new LoadProfile(baseUrl, loginShare);
+        profile.signUp();
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        int sustained = 0;
+        System.out.printf("%-8s %-10s %10s %8s %8s %8s %8s%n", "clients", "request", "req/s", "p50 ms", "p95 ms", "p99 ms", "errors");
+        for (int level : levels) {
+            Map<String, Stats> stats = profile.run(level, warmupSeconds, seconds);
+            boolean withinLimits = true;
+            for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+                Stats kind = entry.getValue();
+                System.out.printf("%-8d %-10s %10.1f %8d %8d %8d %7.2f%%%n", level, entry.getKey(),
+                        kind.throughput(seconds), kind.percentile(0.50), kind.percentile(0.95), kind.percentile(0.99),
+                        kind.errorRate() * 100);
+                withinLimits &= kind.percentile(0.99) <= maxP99Millis && kind.errorRate() <= maxErrorRate;
+                results.add(kind.toMap(level, entry.getKey(), seconds));
+            }
+            if (withinLimits) {
+                sustained = level;
+            }
+        }
+        System.out.println("Sustained in-flight requests (" + label + "): " + sustained);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", label);
+        report.put("url", baseUrl);
+        report.put("seconds", seconds);
+        report.put("loginShare", loginShare);
+        report.put("maxP99Millis", maxP99Millis);
+        report.put("maxErrorRate", maxErrorRate);
+        report.put("sustainedClients", sustained);
+        report.put("levels", results);
+        out.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out, report);
+        System.exit(0);
+    }
+
+    // One account for the whole run; logins reuse it and dashboard reads use its token
+    private void signUp() throws IOException, InterruptedException {
+        email = "load-" + UUID.randomUUID() + "@example.com";
+        Map<String, Object> user = new HashMap<>();
+        user.put("email", email);
+        user.put("username", email.substring(0, email.indexOf('@')));
+        user.put("password", PASSWORD);
+        user.put("role", "USER");
+        HttpResponse<String> registered = client.send(post("/api/users/register", user), HttpResponse.BodyHandlers.ofString());
+        if (registered.statusCode() != 200) {
+            throw new IllegalStateException("Registration failed: " + registered.statusCode() + " " + registered.body());
+        }
+        HttpResponse<String> login = client.send(login(), HttpResponse.BodyHandlers.ofString());
+        JsonNode body = mapper.readTree(login.body());
+        if (login.statusCode() != 200 || !body.hasNonNull("token")) {
+            throw new IllegalStateException("Login failed: " + login.statusCode() + " " + login.body());
+        }
+        token = body.get("token").asText();
+    }
+
+    // Run `clients` closed-loop clients for the warmup and then the measured window
+    private Map<String, Stats> run(int clients, int warmupSeconds, int seconds) throws InterruptedException {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        stats.put("login", new Stats());
+        stats.put("dashboard", new Stats());
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                clientThreads.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        boolean login = ThreadLocalRandom.current().nextDouble() < loginShare;
+                        HttpRequest request = login ? login() : dashboard();
+                        long sent = System.nanoTime();
+                        boolean ok;
+                        try {
+                            ok = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() / 100 == 2;
+                        } catch (IOException e) {
+                            ok = false;
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        long received = System.nanoTime();
+                        if (sent >= measureFrom && received <= end) {
+                            stats.get(login ? "login" : "dashboard").record(received - sent, ok);
+                        }
+                    }
+                });
+            }
+        }
+        return stats;
+    }
+
+    private HttpRequest login() {
+        Map<String, Object> credentials = new HashMap<>();
+        credentials.put("email", email);
+        credentials.put("password", PASSWORD);
+        return post("/api/users/login", credentials);
+    }
+
+    private HttpRequest dashboard() {
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/dashboard/overall"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, Map<String, Object> body) {
+        try {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Millisecond latency histogram plus success/error counts for one request kind at one level
+    static class Stats {
+        private final AtomicLongArray histogram = new AtomicLongArray(MAX_LATENCY_MILLIS + 1);
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        void record(long nanos, boolean success) {
+            histogram.incrementAndGet((int) Math.min(MAX_LATENCY_MILLIS, TimeUnit.NANOSECONDS.toMillis(nanos)));
+            (success ? ok : errors).increment();
+        }
+
+        long count() {
+            return ok.sum() + errors.sum();
+        }
+
+        double throughput(int seconds) {
+            return (double) count() / seconds;
+        }
+
+        double errorRate() {
+            long count = count();
+            return count == 0 ? 0 : (double) errors.sum() / count;
+        }
+
+        long percentile(double quantile) {
+            long target = (long) Math.ceil(quantile * count());
+            long seen = 0;
+            for (int millis = 0; millis < histogram.length(); millis++) {
+                seen += histogram.get(millis);
+                if (seen >= target && seen > 0) {
+                    return millis;
+                }
+            }
+            return 0;
+        }
+
+        Map<String, Object> toMap(int clients, String request, int seconds) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("clients", clients);
+            result.put("request", request);
+            result.put("requests", count());
+            result.put("throughput", throughput(seconds));
+            result.put("p50Millis", percentile(0.50));
+            result.put("p95Millis", percentile(0.95));
+            result.put("p99Millis", percentile(0.99));
+            result.put("errorRate", errorRate());
+            return result;
+        }
+    }
+}
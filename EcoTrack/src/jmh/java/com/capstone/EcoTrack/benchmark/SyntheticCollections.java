@@ -0,0 +1,93 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.BenchmarkSnapshots;
+import com.google.firestore.v1.Document;
+import com.google.firestore.v1.Value;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+// Deterministic fake collection data shared by the benchmarks
+public final class SyntheticCollections {
+
+    private static final String[] STATUSES = {"COMPLETED", "COMPLETED", "COMPLETED", "PENDING", "CANCELLED"};
+    private static final String[] TYPES = {"PRIVATE", "PRIVATE", "PRIVATE", "PUBLIC"};
+    private static final long START_SECONDS = 1704067200L; // 2024-01-01T00:00:00Z
+    private static final int BARANGAYS = 80;
+    private static final int DRIVERS = 250;
+
+    private static final String[] DRIVER_IDS = pool("driver-", DRIVERS);
+    private static final String[] BARANGAY_NAMES = pool("Barangay ", BARANGAYS);
+
+    private SyntheticCollections() {}
+
+    public static CollectionRecord record(int i) {
+        Random random = new Random(i);
+        CollectionRecord record = new CollectionRecord();
+        record.setRecordId("record-" + i);
+        record.setDriverId("driver-" + random.nextInt(DRIVERS));
+        record.setBarangay("Barangay " + random.nextInt(BARANGAYS));
+        record.setCollectionType(TYPES[random.nextInt(TYPES.length)]);
+        record.setWeight(5 + random.nextDouble() * 95);
+        record.setCollectionDate(Timestamp.ofTimeSecondsAndNanos(START_SECONDS + random.nextInt(730 * 86400), 0));
+        record.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+        record.setNotes("Collected from household " + random.nextInt(10000) + ", bins left at the gate, segregated properly");
+        return record;
+    }
+
+    // The same record as record(i) minus the notes, with shared driver and barangay strings,
+    // small enough to hold millions of them in memory
+    public static CollectionRecord summary(int i) {
+        Random random = new Random(i);
+        CollectionRecord record = new CollectionRecord();
+        record.setRecordId("record-" + i);
+        record.setDriverId(DRIVER_IDS[random.nextInt(DRIVERS)]);
+        record.setBarangay(BARANGAY_NAMES[random.nextInt(BARANGAYS)]);
+        record.setCollectionType(TYPES[random.nextInt(TYPES.length)]);
+        record.setWeight(5 + random.nextDouble() * 95);
+        record.setCollectionDate(Timestamp.ofTimeSecondsAndNanos(START_SECONDS + random.nextInt(730 * 86400), 0));
+        record.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+        return record;
+    }
+
+    // The wire form of a record, optionally cut down to a projection (fields == null keeps everything)
+    public static Document document(CollectionRecord record, String... fields) {
+        Set<String> keep = fields.length == 0 ? null : new HashSet<>(Arrays.asList(fields));
+        Document.Builder builder = Document.newBuilder()
+                .setName(BenchmarkSnapshots.DOCUMENTS + "collections/" + record.getRecordId())
+                .setCreateTime(record.getCollectionDate().toProto())
+                .setUpdateTime(record.getCollectionDate().toProto());
+
+        put(builder, keep, "recordId", string(record.getRecordId()));
+        put(builder, keep, "driverId", string(record.getDriverId()));
+        put(builder, keep, "barangay", string(record.getBarangay()));
+        put(builder, keep, "collectionType", string(record.getCollectionType()));
+        put(builder, keep, "weight", Value.newBuilder().setDoubleValue(record.getWeight()).build());
+        put(builder, keep, "collectionDate", Value.newBuilder().setTimestampValue(record.getCollectionDate().toProto()).build());
+        put(builder, keep, "status", string(record.getStatus()));
+        put(builder, keep, "notes", string(record.getNotes()));
+        return builder.build();
+    }
+
+    private static void put(Document.Builder builder, Set<String> keep, String field, Value value) {
+        if (keep == null || keep.contains(field)) {
+            builder.putFields(field, value);
+        }
+    }
+
+    private static String[] pool(String prefix, int size) {
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = prefix + i;
+        }
+        return values;
+    }
+
+    private static Value string(String value) {
+        return Value.newBuilder().setStringValue(value).build();
+    }
+}
@@ -0,0 +1,74 @@
+package com.capstone.EcoTrack.benchmark;
+
+import com.capstone.EcoTrack.model.User;
+import com.capstone.EcoTrack.model.UserPreferences;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.BenchmarkSnapshots;
+import com.google.firestore.v1.Document;
+import com.google.firestore.v1.MapValue;
+import com.google.firestore.v1.Value;
+
+// Deterministic fake user accounts shared by the benchmarks
+public final class SyntheticUsers {
+
+    // Same shape and length as a stored BCrypt hash; never checked against a password
+    private static final String PASSWORD_HASH = "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z2F3l2s4Jbj1o7m0l6B6aQ2K";
+    private static final long START_SECONDS = 1704067200L; // 2024-01-01T00:00:00Z
+
+    private SyntheticUsers() {}
+
+    public static User user(int i) {
+        UserPreferences preferences = new UserPreferences();
+        preferences.setCollectionRequestNotifications(i % 2 == 0);
+        preferences.setGeneralAnnouncements(i % 3 == 0);
+        preferences.setPreferredLanguage(i % 4 == 0 ? "fil" : "en");
+        preferences.setTimeZone("Asia/Manila");
+
+        User user = new User();
+        user.setUserId("user-" + i);
+        user.setUsername("resident" + i);
+        user.setFirstName("First" + i);
+        user.setLastName("Last" + i);
+        user.setEmail("resident" + i + "@example.com");
+        user.setPassword(PASSWORD_HASH);
+        user.setRole(i % 20 == 0 ? "DRIVER" : "RESIDENT");
+        user.setCreatedAt(Timestamp.ofTimeSecondsAndNanos(START_SECONDS + i * 60L, 0));
+        user.setLocation("Barangay " + i % 80);
+        user.setPreferences(preferences);
+        return user;
+    }
+
+    // The wire form of a user document
+    public static Document document(User user) {
+        UserPreferences preferences = user.getPreferences();
+        MapValue.Builder preferenceFields = MapValue.newBuilder()
+                .putFields("collectionRequestNotifications", bool(preferences.isCollectionRequestNotifications()))
+                .putFields("generalAnnouncements", bool(preferences.isGeneralAnnouncements()))
+                .putFields("preferredLanguage", string(preferences.getPreferredLanguage()))
+                .putFields("timeZone", string(preferences.getTimeZone()));
+
+        return Document.newBuilder()
+                .setName(BenchmarkSnapshots.DOCUMENTS + "users/" + user.getUserId())
+                .setCreateTime(user.getCreatedAt().toProto())
+                .setUpdateTime(user.getCreatedAt().toProto())
+                .putFields("userId", string(user.getUserId()))
+                .putFields("username", string(user.getUsername()))
+                .putFields("firstName", string(user.getFirstName()))
+                .putFields("lastName", string(user.getLastName()))
+                .putFields("email", string(user.getEmail()))
+                .putFields("password", string(user.getPassword()))
+                .putFields("role", string(user.getRole()))
+                .putFields("createdAt", Value.newBuilder().setTimestampValue(user.getCreatedAt().toProto()).build())
+                .putFields("location", string(user.getLocation()))
+                .putFields("preferences", Value.newBuilder().setMapValue(preferenceFields).build())
+                .build();
+    }
+
+    private static Value string(String value) {
+        return Value.newBuilder().setStringValue(value).build();
+    }
+
+    private static Value bool(boolean value) {
+        return Value.newBuilder().setBooleanValue(value).build();
+    }
+}
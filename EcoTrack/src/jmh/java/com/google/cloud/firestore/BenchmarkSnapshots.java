@@ -0,0 +1,30 @@
+package com.google.cloud.firestore;
+
+import com.google.cloud.NoCredentials;
+import com.google.cloud.Timestamp;
+import com.google.firestore.v1.Document;
+
+// Lives in the Firestore package to reach the package-private snapshot factory, so benchmarks
+// can decode the same QueryDocumentSnapshots a query returns without any network round trip
+public final class BenchmarkSnapshots {
+
+    public static final String DOCUMENTS = "projects/benchmark/databases/(default)/documents/";
+
+    // Never sends an RPC; only needed so snapshots can build their DocumentReference
+    private static final FirestoreRpcContext<?> CONTEXT = (FirestoreRpcContext<?>) FirestoreOptions.newBuilder()
+            .setProjectId("benchmark")
+            .setCredentials(NoCredentials.getInstance())
+            .build()
+            .getService();
+
+    private BenchmarkSnapshots() {}
+
+    public static QueryDocumentSnapshot fromDocument(Document document) {
+        return QueryDocumentSnapshot.fromDocument(CONTEXT, Timestamp.now(), document);
+    }
+
+    // The plain maps DocumentReference.set(bean) builds before encoding the write
+    public static Object toPlainJavaTypes(Object bean) {
+        return CustomClassMapper.convertToPlainJavaTypes(bean);
+    }
+}
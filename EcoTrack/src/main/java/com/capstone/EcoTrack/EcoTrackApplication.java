@@ -5,10 +5,12 @@ package com.capstone.EcoTrack;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @ComponentScan(basePackages = {"com.capstone.EcoTrack"})
 @SpringBootApplication
+@EnableScheduling
 public class EcoTrackApplication {
 
 	public static void main(String[] args){
@@ -0,0 +1,44 @@
+package com.capstone.EcoTrack.config;
+
+import com.google.api.core.ApiFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+// Times Firestore round trips as ecotrack.firestore.requests{collection, operation, outcome}.
+// Wrap a future right after issuing the call: record("users", "get", docRef.get()).get()
+@Component
+public class FirestoreMetrics {
+
+    private final MeterRegistry registry;
+
+    public FirestoreMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T> ApiFuture<T> record(String collection, String operation, ApiFuture<T> future) {
+        Timer.Sample sample = Timer.start(registry);
+        future.addListener(() -> sample.stop(Timer.builder("ecotrack.firestore.requests")
+                .description("Firestore round trips")
+                .tag("collection", collection)
+                .tag("operation", operation)
+                .tag("outcome", outcomeOf(future))
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry)), MoreExecutors.directExecutor());
+        return future;
+    }
+
+    private static String outcomeOf(ApiFuture<?> future) {
+        if (future.isCancelled()) {
+            return "cancelled";
+        }
+        try {
+            future.get();
+            return "success";
+        } catch (Exception e) {
+            return "error";
+        }
+    }
+}
@@ -1,26 +1,12 @@
 package com.capstone.EcoTrack.config;
 
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.security.Key;
-
+// Signing keys live in JwtKeyRing
 @Configuration
 public class JwtConfig {
-    private final Key key;
     private final long expiration = 86400000; // 24 hours in milliseconds
 
-    public JwtConfig() {
-        // Generate a secure key for HMAC-SHA256
-        this.key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
-    }
-
-    public Key getKey() {
-        return key;
-    }
-
     public long getExpiration() {
         return expiration;
     }
@@ -0,0 +1,308 @@
+package com.capstone.EcoTrack.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// HS256 signing keys shared by every node, newest first. Tokens are signed with the newest key and carry
+// its id in the "kid" header; verification accepts any key still in the ring. Keys come from either:
+//   ecotrack.jwt.keys           kid:base64 pairs from configuration (rotate by redeploying the config), or
+//   ecotrack.jwt.keystore-file  a JSON file this class rotates on schedule and other nodes re-read.
+// With neither set a random key is made at startup, so tokens do not survive a restart.
+//
+// The keystore file must be the same file for every node, on storage they all mount (e.g. an NFS or
+// EFS volume) and that honours advisory file locks. A file per node gives each node its own ring, and
+// tokens are then only accepted by the node that issued them. Each read-merge-write runs under an
+// exclusive lock on <keystore-file>.lock, so nodes rotating at the same moment take turns.
+// A node that rotates signs with the new key at once, before the others' next scheduled refresh, so a
+// token with an unknown kid makes a node re-read the file (at most once per unknown-kid-reload-ms).
+// Where no such volume exists, configure ecotrack.jwt.keys instead.
+
+@Component
+public class JwtKeyRing {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyRing.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path keystoreFile;
+    private final long rotationMillis;
+    private final long retentionMillis;
+    private final long unknownKidReloadMillis;
+    private final AtomicLong lastUnknownKidReload = new AtomicLong();
+    private volatile List<SigningKey> keys; // newest first, replaced as a whole
+
+    public JwtKeyRing(@Value("${ecotrack.jwt.keys:}") String configuredKeys,
+                      @Value("${ecotrack.jwt.keystore-file:}") String keystoreFile,
+                      @Value("${ecotrack.jwt.rotation-days:30}") long rotationDays,
+                      @Value("${ecotrack.jwt.unknown-kid-reload-ms:1000}") long unknownKidReloadMillis,
+                      JwtConfig jwtConfig) {
+        // Configured keys win; the file is only managed when no keys are configured
+        this.keystoreFile = configuredKeys.isBlank() && !keystoreFile.isEmpty() ? Path.of(keystoreFile) : null;
+        this.rotationMillis = TimeUnit.DAYS.toMillis(rotationDays);
+        // A retired key must outlive the last token it signed
+        this.retentionMillis = jwtConfig.getExpiration();
+        this.unknownKidReloadMillis = unknownKidReloadMillis;
+
+        if (!configuredKeys.isBlank()) {
+            this.keys = parse(configuredKeys);
+        } else if (this.keystoreFile != null) {
+            this.keys = locked(() -> {
+                List<SigningKey> stored = Files.exists(this.keystoreFile) ? read() : Collections.emptyList();
+                if (!stored.isEmpty()) {
+                    return stored;
+                }
+                List<SigningKey> created = Collections.singletonList(generate());
+                write(created);
+                return created;
+            });
+        } else {
+            log.warn("No ecotrack.jwt.keys or keystore-file configured; tokens will not survive a restart");
+            this.keys = Collections.singletonList(generate());
+        }
+    }
+
+    // In-memory ring with one random key, for tools and benchmarks outside Spring
+    public static JwtKeyRing ephemeral(JwtConfig jwtConfig) {
+        return new JwtKeyRing("", "", 30, 0, jwtConfig);
+    }
+
+    public SigningKey current() {
+        return keys.get(0);
+    }
+
+    // Key for a token's kid header, or null if it is unknown or retired; tokens without a kid use the current
+    // key. An unknown kid may be a key another node has just rotated in, so the file is re-read before giving up.
+    public Key find(String kid) {
+        if (kid == null) {
+            return current().key;
+        }
+        Key key = lookup(kid);
+        if (key == null && reloadForUnknownKid()) {
+            key = lookup(kid);
+        }
+        return key;
+    }
+
+    private Key lookup(String kid) {
+        for (SigningKey key : keys) {
+            if (key.kid.equals(kid)) {
+                return key.key;
+            }
+        }
+        return null;
+    }
+
+    // Merge in the keys on file, without rotating or dropping any. Rate limited, as anyone can send a made-up
+    // kid; returns whether this call re-read the file.
+    private boolean reloadForUnknownKid() {
+        long now = System.currentTimeMillis();
+        long last = lastUnknownKidReload.get();
+        if (keystoreFile == null || now - last < unknownKidReloadMillis
+                || !lastUnknownKidReload.compareAndSet(last, now)) {
+            return false;
+        }
+        try {
+            locked(() -> {
+                if (Files.exists(keystoreFile)) {
+                    keys = Collections.unmodifiableList(merge(read()));
+                }
+                return null;
+            });
+            return true;
+        } catch (UncheckedIOException e) {
+            log.error("Error re-reading JWT keystore for an unknown kid", e);
+            return false;
+        }
+    }
+
+    // Pick up keys other nodes wrote to the shared file, rotate if the newest key is due and drop keys past
+    // retention. Keys from memory and file are merged, so keys this node handed out are kept even if another
+    // node overwrote the file. The file lock serializes nodes, and locked() this node's threads.
+    @Scheduled(fixedDelayString = "${ecotrack.jwt.rotation-check-ms:60000}")
+    public void refresh() {
+        if (keystoreFile == null) {
+            return;
+        }
+        try {
+            boolean rotated = locked(this::refreshLocked);
+            if (rotated) {
+                log.info("Rotated JWT signing key, now {}", current().kid);
+            }
+        } catch (UncheckedIOException e) {
+            log.error("Error refreshing JWT key ring", e);
+        }
+    }
+
+    // Returns whether a new key was made
+    private boolean refreshLocked() {
+        long now = System.currentTimeMillis();
+        List<SigningKey> stored = Files.exists(keystoreFile) ? read() : Collections.emptyList();
+        List<SigningKey> merged = merge(stored);
+
+        boolean rotated = merged.isEmpty() || now - merged.get(0).createdAt >= rotationMillis;
+        if (rotated) {
+            merged.add(0, generate());
+        }
+        // Always keep the signing key; older ones only while tokens they signed can still be live,
+        // i.e. until a token lifetime has passed since the next key replaced them
+        List<SigningKey> next = new ArrayList<>();
+        next.add(merged.get(0));
+        for (int i = 1; i < merged.size(); i++) {
+            if (now - merged.get(i - 1).createdAt < retentionMillis) {
+                next.add(merged.get(i));
+            }
+        }
+
+        if (!kids(next).equals(kids(stored))) {
+            write(next);
+        }
+        keys = Collections.unmodifiableList(next);
+        return rotated;
+    }
+
+    // The keys on file plus those only in memory, newest first
+    private List<SigningKey> merge(List<SigningKey> stored) {
+        Map<String, SigningKey> byKid = new LinkedHashMap<>();
+        for (SigningKey key : stored) {
+            byKid.put(key.kid, key);
+        }
+        for (SigningKey key : keys) {
+            byKid.putIfAbsent(key.kid, key);
+        }
+        List<SigningKey> merged = new ArrayList<>(byKid.values());
+        merged.sort(Comparator.comparingLong((SigningKey key) -> key.createdAt).reversed());
+        return merged;
+    }
+
+    // Run a read-merge-write of the keystore under an exclusive lock on its lock file, shared by all nodes.
+    // File locks belong to the whole JVM, so this node's threads take turns first.
+    private synchronized <T> T locked(Supplier<T> action) {
+        Path lockFile = keystoreFile.resolveSibling(keystoreFile.getFileName() + ".lock");
+        try {
+            Files.createDirectories(lockFile.toAbsolutePath().getParent());
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                return action.get();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not lock JWT keystore " + lockFile, e);
+        }
+    }
+
+    private static List<String> kids(List<SigningKey> ring) {
+        List<String> kids = new ArrayList<>();
+        for (SigningKey key : ring) {
+            kids.add(key.kid);
+        }
+        return kids;
+    }
+
+    private static List<SigningKey> parse(String configuredKeys) {
+        List<SigningKey> parsed = new ArrayList<>();
+        for (String entry : configuredKeys.split(",")) {
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("ecotrack.jwt.keys entries must be kid:base64secret");
+            }
+            parsed.add(new SigningKey(parts[0], Base64.getDecoder().decode(parts[1]), 0));
+        }
+        return Collections.unmodifiableList(parsed);
+    }
+
+    private static SigningKey generate() {
+        byte[] secret = new byte[32];
+        RANDOM.nextBytes(secret);
+        return new SigningKey(UUID.randomUUID().toString(), secret, System.currentTimeMillis());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SigningKey> read() {
+        try {
+            Map<String, Object> stored = MAPPER.readValue(keystoreFile.toFile(), Map.class);
+            List<SigningKey> loaded = new ArrayList<>();
+            for (Map<String, Object> entry : (List<Map<String, Object>>) stored.get("keys")) {
+                loaded.add(new SigningKey((String) entry.get("kid"),
+                        Base64.getDecoder().decode((String) entry.get("secret")),
+                        ((Number) entry.get("createdAt")).longValue()));
+            }
+            return Collections.unmodifiableList(loaded);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read JWT keystore " + keystoreFile, e);
+        }
+    }
+
+    // Write to a temp file and move it into place so other nodes never read half a file
+    private void write(List<SigningKey> ring) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (SigningKey key : ring) {
+            entries.add(Map.of("kid", key.kid,
+                    "secret", Base64.getEncoder().encodeToString(key.secret),
+                    "createdAt", key.createdAt));
+        }
+        try {
+            Path directory = keystoreFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "jwt-keys", ".tmp");
+            try {
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system; rely on the directory's permissions
+            }
+            MAPPER.writeValue(temp.toFile(), Map.of("keys", entries));
+            Files.move(temp, keystoreFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write JWT keystore " + keystoreFile, e);
+        }
+    }
+
+    public static final class SigningKey {
+        private final String kid;
+        private final byte[] secret;
+        private final SecretKey key;
+        private final long createdAt; // epoch millis; 0 for configured keys, which never rotate
+
+        SigningKey(String kid, byte[] secret, long createdAt) {
+            this.kid = kid;
+            this.secret = secret;
+            this.key = Keys.hmacShaKeyFor(secret); // rejects secrets shorter than 256 bits
+            this.createdAt = createdAt;
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public SecretKey getKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.capstone.EcoTrack.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+// Counts hashing work: ecotrack.bcrypt.operations{operation=encode|matches, result=...}
+public class MeteredPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final Counter encodes;
+    private final Counter matches;
+    private final Counter mismatches;
+
+    public MeteredPasswordEncoder(PasswordEncoder delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.encodes = counter(registry, "encode", "done");
+        this.matches = counter(registry, "matches", "match");
+        this.mismatches = counter(registry, "matches", "mismatch");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        encodes.increment();
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        boolean result = delegate.matches(rawPassword, encodedPassword);
+        (result ? matches : mismatches).increment();
+        return result;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private static Counter counter(MeterRegistry registry, String operation, String result) {
+        return Counter.builder("ecotrack.bcrypt.operations")
+                .description("BCrypt hash computations")
+                .tag("operation", operation)
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,30 @@
+package com.capstone.EcoTrack.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class StatsExecutorConfig {
+
+    // Bounded pool for aggregating stats shards; when it is saturated the caller aggregates the shard itself
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService statsExecutor(@Value("${ecotrack.stats.shard-threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(size * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stats-shard-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -9,34 +9,34 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.cloud.FirestoreClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 import java.io.IOException;
 import java.io.InputStream;
 
+// Not loaded under the "embedded" profile, which keeps its data in memory instead of Firestore
 @Configuration
+@Profile("!embedded")
 public class firebaseConfig {
 
-    private static Firestore firestoreInstance; // Store Firestore instance to prevent closing
-
+    // A singleton bean already gives one Firestore instance per context, so no static field or lazy
+    // check-then-set is needed; FirestoreClient hands back the client owned by the default FirebaseApp
     @Bean
     public Firestore firestore() throws IOException {
-        if (firestoreInstance == null) {
-            if (FirebaseApp.getApps().isEmpty()) {
-                InputStream serviceAccount = getClass().getClassLoader().getResourceAsStream("serviceAccountKey.json");
+        if (FirebaseApp.getApps().isEmpty()) {
+            InputStream serviceAccount = getClass().getClassLoader().getResourceAsStream("serviceAccountKey.json");
 
-                if (serviceAccount == null) {
-                    throw new IOException("Service Account Key file not found in resources!");
-                }
+            if (serviceAccount == null) {
+                throw new IOException("Service Account Key file not found in resources!");
+            }
 
-                FirebaseOptions options = FirebaseOptions.builder()
-                        .setCredentials(GoogleCredentials.fromStream(serviceAccount))
-                        .build();
+            FirebaseOptions options = FirebaseOptions.builder()
+                    .setCredentials(GoogleCredentials.fromStream(serviceAccount))
+                    .build();
 
-                FirebaseApp.initializeApp(options);
-            }
-            firestoreInstance = FirestoreClient.getFirestore();
+            FirebaseApp.initializeApp(options);
         }
-        return firestoreInstance; // Always return the same Firestore instance
+        return FirestoreClient.getFirestore();
     }
 
     @Bean
@@ -0,0 +1,135 @@
+package com.capstone.EcoTrack.controller;
+
+import com.capstone.EcoTrack.repository.SyncTokenExpiredException;
+import com.capstone.EcoTrack.service.AuthenticatedUser;
+import com.capstone.EcoTrack.service.CollectionBatchService;
+import com.capstone.EcoTrack.service.CollectionService;
+import com.capstone.EcoTrack.service.CollectionSyncService;
+import com.capstone.EcoTrack.service.WriteBufferFullException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+@RestController
+@RequestMapping("/api/collections")
+public class CollectionController {
+
+    private final CollectionBatchService collectionBatchService;
+    private final CollectionSyncService collectionSyncService;
+    private final CollectionService collectionService;
+
+    @Autowired
+    public CollectionController(CollectionBatchService collectionBatchService, CollectionSyncService collectionSyncService,
+                                CollectionService collectionService) {
+        this.collectionBatchService = collectionBatchService;
+        this.collectionSyncService = collectionSyncService;
+        this.collectionService = collectionService;
+    }
+
+    // Submit one collection record as it is collected. It is written with other trucks' records in the next
+    // flush of the write buffer and answered once stored; 503 with Retry-After while the buffer is full.
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> submitRecord(HttpServletRequest request) {
+        try {
+            return collectionService.submitRecord(collectionBatchService.readRecord(request.getInputStream()))
+                    .<ResponseEntity<?>>thenApply(recordId -> {
+                        Map<String, String> response = new HashMap<>();
+                        response.put("message", "Collection record saved");
+                        response.put("recordId", recordId);
+                        return ResponseEntity.ok(response);
+                    })
+                    .exceptionally(error -> {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        if (cause instanceof WriteBufferFullException) {
+                            return busy((WriteBufferFullException) cause);
+                        }
+                        return error(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Error writing collection record: " + cause.getMessage());
+                    });
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(error(HttpStatus.SC_BAD_REQUEST, e.getMessage()));
+        } catch (WriteBufferFullException e) {
+            return CompletableFuture.completedFuture(busy(e));
+        } catch (IOException | InterruptedException e) {
+            return CompletableFuture.completedFuture(error(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Error writing collection record: " + e.getMessage()));
+        }
+    }
+
+    // Upload many collection records at once as a JSON array; the body is read as a stream, not bound up front.
+    // Answers with a per-record report; 400 when the body is not a (complete) JSON array.
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> uploadBatch(HttpServletRequest request) {
+        try {
+            Map<String, Object> report = collectionBatchService.ingest(request.getInputStream());
+            return report.containsKey("error") ? ResponseEntity.badRequest().body(report) : ResponseEntity.ok(report);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (IOException | ExecutionException | InterruptedException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Error writing collection records: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    // A driver's records written or deleted since the token (all of them without one), one page at a time.
+    // Drivers sync their own records only; admins any driver's.
+    @GetMapping("/sync")
+    public ResponseEntity<?> sync(@RequestParam String driverId, @RequestParam(required = false) String since,
+                                  @AuthenticationPrincipal AuthenticatedUser principal) {
+        if (principal == null || !(driverId.equals(principal.getUserId()) || principal.hasRole("ADMIN"))) {
+            return error(HttpStatus.SC_FORBIDDEN, "Not allowed to sync the records of driver " + driverId);
+        }
+        try {
+            return ResponseEntity.ok(collectionSyncService.getDriverChanges(driverId, since));
+        } catch (SyncTokenExpiredException e) {
+            return error(HttpStatus.SC_GONE, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.SC_BAD_REQUEST, e.getMessage());
+        } catch (UnsupportedOperationException e) {
+            return error(HttpStatus.SC_NOT_IMPLEMENTED, e.getMessage());
+        } catch (ExecutionException | InterruptedException e) {
+            return error(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Error fetching collection changes: " + e.getMessage());
+        }
+    }
+
+    // Deleted records show up in delta sync as tombstones
+    @DeleteMapping("/{recordId}")
+    public ResponseEntity<?> deleteRecord(@PathVariable String recordId) {
+        try {
+            if (!collectionService.deleteRecord(recordId)) {
+                return ResponseEntity.notFound().build();
+            }
+            Map<String, String> response = new HashMap<>();
+            response.put("message", "Collection record deleted");
+            return ResponseEntity.ok(response);
+        } catch (ExecutionException | InterruptedException e) {
+            return error(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Error deleting collection record: " + e.getMessage());
+        }
+    }
+
+    private static ResponseEntity<?> busy(WriteBufferFullException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SC_SERVICE_UNAVAILABLE)
+                .header("Retry-After", String.valueOf(e.getRetryAfterSeconds()))
+                .body(error);
+    }
+
+    private static ResponseEntity<?> error(int status, String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.status(status).body(error);
+    }
+}
@@ -1,64 +1,170 @@
 package com.capstone.EcoTrack.controller;
 
+import com.capstone.EcoTrack.service.AuthenticatedUser;
+import com.capstone.EcoTrack.service.CollectionRollupService;
+import com.capstone.EcoTrack.repository.Futures;
 import com.capstone.EcoTrack.service.CollectionService;
+import com.capstone.EcoTrack.service.ETags;
+import com.capstone.EcoTrack.service.SeriesBucket;
 import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/dashboard")
 public class DashboardController {
 
     private final CollectionService collectionService;
+    private final CollectionRollupService collectionRollupService; // null on the embedded backend
+    private final CacheControl statsCache;
 
-    public DashboardController(CollectionService collectionService) {
+    public DashboardController(CollectionService collectionService, ObjectProvider<CollectionRollupService> collectionRollupService,
+                               @Value("${ecotrack.http.dashboard-max-age-seconds:30}") long statsMaxAgeSeconds) {
         this.collectionService = collectionService;
+        this.collectionRollupService = collectionRollupService.getIfAvailable();
+        this.statsCache = CacheControl.maxAge(statsMaxAgeSeconds, TimeUnit.SECONDS).cachePrivate();
     }
 
     // Get driver's daily collection statistics
     @GetMapping("/driver/{driverId}/daily")
-    public ResponseEntity<?> getDriverDailyStats(
+    public CompletableFuture<ResponseEntity<?>> getDriverDailyStats(
             @PathVariable String driverId,
             @RequestParam(required = false) Date date) {
+        // If no date provided, use current date
+        if (date == null) {
+            date = new Date();
+        }
+
+        return collectionService.getDriverDailyStats(driverId, date)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(error -> serverError("Error fetching driver statistics: ", error));
+    }
+
+    // Get a driver's collections per day/week/month; defaults to the last 30 days
+    @GetMapping("/driver/{driverId}/series")
+    public CompletableFuture<ResponseEntity<?>> getDriverSeries(
+            @PathVariable String driverId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String bucket,
+            @RequestParam(required = false) String zone,
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        CompletableFuture<Map<String, Object>> series;
         try {
-            // If no date provided, use current date
-            if (date == null) {
-                date = new Date();
-            }
+            ZoneId zoneId = resolveZone(zone, principal);
+            LocalDate end = to != null ? to : LocalDate.now(zoneId);
+            LocalDate start = from != null ? from : end.minusDays(29);
 
-            Map<String, Object> stats = collectionService.getDriverDailyStats(driverId, date);
-            return ResponseEntity.ok(stats);
-        } catch (ExecutionException | InterruptedException e) {
-            return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
-                    .body("Error fetching driver statistics: " + e.getMessage());
+            series = collectionService.getDriverSeries(driverId, start, end, SeriesBucket.parse(bucket), zoneId);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Invalid series request: " + e.getMessage()));
         }
+        return series.<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(error -> serverError("Error fetching driver series: ", error));
     }
 
     // Get barangay collection statistics
     @GetMapping("/barangay/{barangay}")
-    public ResponseEntity<?> getBarangayStats(@PathVariable String barangay) {
+    public CompletableFuture<ResponseEntity<?>> getBarangayStats(@PathVariable String barangay,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return conditional(collectionService.getBarangayStatsVersion(barangay), ifNoneMatch,
+                () -> collectionService.getBarangayStats(barangay))
+                .exceptionally(error -> serverError("Error fetching barangay statistics: ", error));
+    }
+
+    // Get a barangay's collections per day/week/month; defaults to the last 30 days
+    @GetMapping("/barangay/{barangay}/series")
+    public CompletableFuture<ResponseEntity<?>> getBarangaySeries(
+            @PathVariable String barangay,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String bucket,
+            @RequestParam(required = false) String zone,
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        CompletableFuture<Map<String, Object>> series;
         try {
-            Map<String, Object> stats = collectionService.getBarangayStats(barangay);
-            return ResponseEntity.ok(stats);
-        } catch (ExecutionException | InterruptedException e) {
-            return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
-                    .body("Error fetching barangay statistics: " + e.getMessage());
+            ZoneId zoneId = resolveZone(zone, principal);
+            LocalDate end = to != null ? to : LocalDate.now(zoneId);
+            LocalDate start = from != null ? from : end.minusDays(29);
+
+            series = collectionService.getBarangaySeries(barangay, start, end, SeriesBucket.parse(bucket), zoneId);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Invalid series request: " + e.getMessage()));
         }
+        return series.<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(error -> serverError("Error fetching barangay series: ", error));
     }
 
     // Get overall collection statistics
     @GetMapping("/overall")
-    public ResponseEntity<?> getOverallStats() {
+    public CompletableFuture<ResponseEntity<?>> getOverallStats(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return conditional(collectionService.getOverallStatsVersion(), ifNoneMatch, collectionService::getOverallStats)
+                .exceptionally(error -> serverError("Error fetching overall statistics: ", error));
+    }
+
+    // Recompute the pre-aggregated stats from the raw collection records (admins only)
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<?> rebuildRollups() {
+        if (collectionRollupService == null) {
+            return ResponseEntity.status(HttpStatus.SC_NOT_IMPLEMENTED)
+                    .body("Rollups are not available on this backend");
+        }
         try {
-            Map<String, Object> stats = collectionService.getOverallStats();
-            return ResponseEntity.ok(stats);
+            Map<String, Integer> rebuilt = collectionRollupService.rebuild();
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Rollups rebuilt successfully");
+            response.putAll(rebuilt);
+            return ResponseEntity.ok(response);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SC_CONFLICT).body(e.getMessage());
         } catch (ExecutionException | InterruptedException e) {
             return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
-                    .body("Error fetching overall statistics: " + e.getMessage());
+                    .body("Error rebuilding rollups: " + e.getMessage());
+        }
+    }
+
+    // Compare the stats version with If-None-Match first and only compute the stats when it differs
+    private CompletableFuture<ResponseEntity<?>> conditional(CompletableFuture<String> version, String ifNoneMatch,
+                                                           Supplier<CompletableFuture<Map<String, Object>>> stats) {
+        return version.thenCompose(marker -> {
+            String etag = ETags.of(marker);
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return CompletableFuture.<ResponseEntity<?>>completedFuture(ETags.notModified(etag, statsCache));
+            }
+            return stats.get().<ResponseEntity<?>>thenApply(body -> ETags.ok(body, etag, statsCache));
+        });
+    }
+
+    private static ResponseEntity<?> serverError(String message, Throwable error) {
+        return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                .body(message + Futures.unwrap(error).getMessage());
+    }
+
+    // Explicit zone parameter first, then the caller's saved preference (from the token), then the server zone
+    private static ZoneId resolveZone(String zone, AuthenticatedUser principal) {
+        if (zone != null) {
+            return ZoneId.of(zone);
+        }
+        if (principal != null && principal.getTimeZone() != null) {
+            return ZoneId.of(principal.getTimeZone());
         }
+        return ZoneId.systemDefault();
     }
 } 
\ No newline at end of file
@@ -1,67 +1,127 @@
 package com.capstone.EcoTrack.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import com.capstone.EcoTrack.model.User;
+import com.capstone.EcoTrack.repository.FirestoreUserRepository;
+import com.capstone.EcoTrack.repository.Futures;
+import com.capstone.EcoTrack.service.LoginThrottle;
 import com.capstone.EcoTrack.service.UserService;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
 
     private final UserService userService;
+    private final LoginThrottle loginThrottle;
+    private final FirestoreUserRepository firestoreUserRepository; // null on the embedded backend
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, LoginThrottle loginThrottle,
+                          ObjectProvider<FirestoreUserRepository> firestoreUserRepository) {
         this.userService = userService;
+        this.loginThrottle = loginThrottle;
+        this.firestoreUserRepository = firestoreUserRepository.getIfAvailable();
     }
 
     @PostMapping("/register")
-    public ResponseEntity<?> registerUser(@RequestBody User user) {
+    public CompletableFuture<ResponseEntity<?>> registerUser(@RequestBody User user) {
         return userService.registerUser(user);
     }
 
+    // Answered asynchronously: the servlet thread is released while the lookup and password check run
     @PostMapping("/login")
-    public ResponseEntity<?> loginUser(@RequestBody User user) {
-        return userService.loginUser(user);
+    public CompletableFuture<ResponseEntity<?>> loginUser(@RequestBody User user, HttpServletRequest request) {
+        // Over the limit: answer before any user lookup or password check
+        String clientIp = request.getRemoteAddr(); // read now; the request is not ours once the answer is async
+        long retryAfter = loginThrottle.tryAcquire(user.getEmail(), clientIp);
+        if (retryAfter > 0) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Too many login attempts, please retry later");
+            ResponseEntity<?> throttled = ResponseEntity.status(HttpStatus.SC_TOO_MANY_REQUESTS)
+                    .header("Retry-After", String.valueOf(retryAfter))
+                    .body(error);
+            return CompletableFuture.completedFuture(throttled);
+        }
+
+        return userService.loginUser(user).thenApply(response -> {
+            if (response.getStatusCode().is2xxSuccessful()) {
+                loginThrottle.recordSuccess(user.getEmail());
+            } else if (response.getStatusCode().is4xxClientError()) {
+                // Unknown email or wrong password; server-side errors and 503s are not the caller's fault
+                loginThrottle.recordFailure(user.getEmail(), clientIp);
+            }
+            return response;
+        });
     }
 
     @GetMapping("/profile/{userId}")
-    public ResponseEntity<?> getUserProfile(@PathVariable String userId) {
-        return userService.getUserProfile(userId);
+    public CompletableFuture<ResponseEntity<?>> getUserProfile(@PathVariable String userId,
+                                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return userService.getUserProfile(userId, ifNoneMatch);
     }
 
     @PutMapping("/profile/{userId}")
-    public ResponseEntity<?> updateUserProfile(@PathVariable String userId, @RequestBody User user) {
+    public CompletableFuture<ResponseEntity<?>> updateUserProfile(@PathVariable String userId, @RequestBody User user) {
         return userService.updateUserProfile(userId, user);
     }
 
     @PutMapping("/profile/{userId}/password")
-    public ResponseEntity<?> updatePassword(@PathVariable String userId, @RequestBody User user) {
+    public CompletableFuture<ResponseEntity<?>> updatePassword(@PathVariable String userId, @RequestBody User user) {
         return userService.updatePassword(userId, user);
     }
 
     @PutMapping("/profile/{userId}/email")
-    public ResponseEntity<?> updateEmail(@PathVariable String userId, @RequestBody Map<String, String> request) {
-        try {
-            userService.updateEmail(userId, request.get("newEmail"));
-            Map<String, String> response = new HashMap<>();
-            response.put("message", "Email updated successfully");
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(error);
-        }
+    public CompletableFuture<ResponseEntity<?>> updateEmail(@PathVariable String userId, @RequestBody Map<String, String> request) {
+        return userService.updateEmail(userId, request.get("newEmail"))
+                .<ResponseEntity<?>>thenApply(updated -> {
+                    Map<String, String> response = new HashMap<>();
+                    response.put("message", "Email updated successfully");
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(error -> {
+                    Map<String, String> body = new HashMap<>();
+                    body.put("error", Futures.unwrap(error).getMessage());
+                    return ResponseEntity.badRequest().body(body);
+                });
+    }
+
+    // Give a user a role, e.g. DRIVER (admin only, see SecurityConfig)
+    @PutMapping("/{userId}/role")
+    public ResponseEntity<?> updateRole(@PathVariable String userId, @RequestBody Map<String, String> request) {
+        return userService.updateRole(userId, request.get("role"));
     }
 
     @GetMapping("/profile/{userId}/collection-stats")
-    public ResponseEntity<?> getCollectionStats(@PathVariable String userId) {
+    public CompletableFuture<ResponseEntity<?>> getCollectionStats(@PathVariable String userId) {
         return userService.getCollectionStats(userId);
     }
+
+    // Index the emails and usernames of users stored before the indexes existed (admin only, see SecurityConfig).
+    // Safe to run again; the report lists users left unindexed because another user has their email or username.
+    @PostMapping("/indexes/backfill")
+    public ResponseEntity<?> backfillIndexes() {
+        if (firestoreUserRepository == null) {
+            return ResponseEntity.status(HttpStatus.SC_NOT_IMPLEMENTED)
+                    .body("The embedded backend indexes users as they are stored");
+        }
+        try {
+            return ResponseEntity.ok(firestoreUserRepository.backfillIndexes());
+        } catch (ExecutionException | InterruptedException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Error backfilling user indexes: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
 }
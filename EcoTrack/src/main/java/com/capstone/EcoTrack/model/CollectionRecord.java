@@ -2,16 +2,20 @@ package com.capstone.EcoTrack.model;
 
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.annotation.PropertyName;
+import com.google.cloud.firestore.annotation.ServerTimestamp;
 
 public class CollectionRecord {
     private String recordId;
     private String driverId;
+    private String userId; // household the collection was made for, if known
     private String barangay;
     private String collectionType; // "PRIVATE" or "PUBLIC"
     private double weight; // in kilograms
     private Timestamp collectionDate;
     private String status; // "COMPLETED", "PENDING", "CANCELLED"
     private String notes;
+    @ServerTimestamp
+    private Timestamp updatedAt; // commit time of the last write, set by Firestore; drives delta sync
 
     // Default constructor
     public CollectionRecord() {}
@@ -36,6 +40,16 @@ public class CollectionRecord {
         this.driverId = driverId;
     }
 
+    @PropertyName("userId")
+    public String getUserId() {
+        return userId;
+    }
+
+    @PropertyName("userId")
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
     @PropertyName("barangay")
     public String getBarangay() {
         return barangay;
@@ -95,4 +109,14 @@ public class CollectionRecord {
     public void setNotes(String notes) {
         this.notes = notes;
     }
-} 
\ No newline at end of file
+
+    @PropertyName("updatedAt")
+    public Timestamp getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @PropertyName("updatedAt")
+    public void setUpdatedAt(Timestamp updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
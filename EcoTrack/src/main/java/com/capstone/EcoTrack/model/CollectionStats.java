@@ -0,0 +1,66 @@
+package com.capstone.EcoTrack.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CollectionStats {
+    private int totalCollections;
+    private double totalWeight; // in kilograms
+    private final Map<String, Integer> barangayBreakdown = new HashMap<>();
+    private final Map<String, Integer> driverBreakdown = new HashMap<>();
+
+    // Default constructor
+    public CollectionStats() {}
+
+    // Fold a single completed collection into the running totals
+    public void add(String barangay, String driverId, double weight) {
+        totalCollections++;
+        totalWeight += weight;
+        barangayBreakdown.merge(barangay, 1, Integer::sum);
+        driverBreakdown.merge(driverId, 1, Integer::sum);
+    }
+
+    // Undo an earlier add, dropping breakdown entries that reach zero
+    public void remove(String barangay, String driverId, double weight) {
+        totalCollections--;
+        totalWeight -= weight;
+        barangayBreakdown.computeIfPresent(barangay, (key, count) -> count > 1 ? count - 1 : null);
+        driverBreakdown.computeIfPresent(driverId, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    public void add(CollectionRecord record) {
+        add(record.getBarangay(), record.getDriverId(), record.getWeight());
+    }
+
+    // Combine partial results computed elsewhere (other pages, shards or rollups)
+    public void merge(CollectionStats other) {
+        totalCollections += other.totalCollections;
+        totalWeight += other.totalWeight;
+        other.barangayBreakdown.forEach((key, count) -> barangayBreakdown.merge(key, count, Integer::sum));
+        other.driverBreakdown.forEach((key, count) -> driverBreakdown.merge(key, count, Integer::sum));
+    }
+
+    public int getTotalCollections() {
+        return totalCollections;
+    }
+
+    public void setTotalCollections(int totalCollections) {
+        this.totalCollections = totalCollections;
+    }
+
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    public void setTotalWeight(double totalWeight) {
+        this.totalWeight = totalWeight;
+    }
+
+    public Map<String, Integer> getBarangayBreakdown() {
+        return barangayBreakdown;
+    }
+
+    public Map<String, Integer> getDriverBreakdown() {
+        return driverBreakdown;
+    }
+}
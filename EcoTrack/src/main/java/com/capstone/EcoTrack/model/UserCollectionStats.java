@@ -0,0 +1,78 @@
+package com.capstone.EcoTrack.model;
+
+import com.google.cloud.Timestamp;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Running collection counters for one user (household or driver). Records of every status are counted
+// per status; totals and the last collection date only follow completed collections.
+public class UserCollectionStats {
+    private long totalCollections;
+    private double totalWeight; // in kilograms
+    private Timestamp lastCollection;
+    private final Map<String, Long> byStatus = new HashMap<>();
+
+    // Default constructor
+    public UserCollectionStats() {}
+
+    // The users a record counts for: the household it was collected from and the driver who collected it
+    public static Set<String> usersOf(CollectionRecord record) {
+        Set<String> users = new LinkedHashSet<>();
+        if (record != null) {
+            if (record.getUserId() != null && !record.getUserId().isEmpty()) {
+                users.add(record.getUserId());
+            }
+            if (record.getDriverId() != null && !record.getDriverId().isEmpty()) {
+                users.add(record.getDriverId());
+            }
+        }
+        return users;
+    }
+
+    // A record entering (sign = 1) or leaving (sign = -1) the user's records. The last collection date only
+    // moves forward: a removed record cannot take it back without rescanning the user's records.
+    public void add(CollectionRecord record, int sign) {
+        String status = record.getStatus() == null ? "UNKNOWN" : record.getStatus();
+        byStatus.merge(status, (long) sign, Long::sum);
+        if (!"COMPLETED".equals(record.getStatus())) {
+            return;
+        }
+        totalCollections += sign;
+        totalWeight += sign * record.getWeight();
+        Timestamp date = record.getCollectionDate();
+        if (sign > 0 && date != null && (lastCollection == null || date.compareTo(lastCollection) > 0)) {
+            lastCollection = date;
+        }
+    }
+
+    public long getTotalCollections() {
+        return totalCollections;
+    }
+
+    public void setTotalCollections(long totalCollections) {
+        this.totalCollections = totalCollections;
+    }
+
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    public void setTotalWeight(double totalWeight) {
+        this.totalWeight = totalWeight;
+    }
+
+    public Timestamp getLastCollection() {
+        return lastCollection;
+    }
+
+    public void setLastCollection(Timestamp lastCollection) {
+        this.lastCollection = lastCollection;
+    }
+
+    public Map<String, Long> getByStatus() {
+        return byStatus;
+    }
+}
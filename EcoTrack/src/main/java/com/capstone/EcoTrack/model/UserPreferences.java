@@ -35,6 +35,26 @@ public class UserPreferences {
     public void setGeneralAnnouncements(boolean generalAnnouncements) {
         this.generalAnnouncements = generalAnnouncements;
     }
+
+    @PropertyName("preferredLanguage")
+    public String getPreferredLanguage() {
+        return preferredLanguage;
+    }
+
+    @PropertyName("preferredLanguage")
+    public void setPreferredLanguage(String preferredLanguage) {
+        this.preferredLanguage = preferredLanguage;
+    }
+
+    @PropertyName("timeZone")
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    @PropertyName("timeZone")
+    public void setTimeZone(String timeZone) {
+        this.timeZone = timeZone;
+    }
     //updated lage ni di man ka motuo
 
    
@@ -0,0 +1,40 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.google.cloud.Timestamp;
+
+import java.util.List;
+import java.util.Map;
+
+// One page of a driver's delta sync: records written and record IDs deleted (with their deletion time),
+// the cursor to continue from, and whether more pages follow right away
+public final class CollectionChanges {
+
+    private final List<CollectionRecord> records;
+    private final Map<String, Timestamp> deleted;
+    private final SyncCursor next;
+    private final boolean more;
+
+    public CollectionChanges(List<CollectionRecord> records, Map<String, Timestamp> deleted, SyncCursor next, boolean more) {
+        this.records = records;
+        this.deleted = deleted;
+        this.next = next;
+        this.more = more;
+    }
+
+    public List<CollectionRecord> getRecords() {
+        return records;
+    }
+
+    public Map<String, Timestamp> getDeleted() {
+        return deleted;
+    }
+
+    public SyncCursor getNext() {
+        return next;
+    }
+
+    public boolean hasMore() {
+        return more;
+    }
+}
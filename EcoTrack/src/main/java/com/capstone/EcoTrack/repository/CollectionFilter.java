@@ -0,0 +1,101 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.google.cloud.Timestamp;
+
+// Equality filters plus a [from, to) collectionDate range; null means "any"
+public class CollectionFilter {
+    private String barangay;
+    private String driverId;
+    private String collectionType;
+    private String status;
+    private Timestamp from; // inclusive
+    private Timestamp to;   // exclusive
+
+    public static CollectionFilter all() {
+        return new CollectionFilter();
+    }
+
+    // What the dashboard counts: completed private collections
+    public static CollectionFilter completedPrivate() {
+        return new CollectionFilter().collectionType("PRIVATE").status("COMPLETED");
+    }
+
+    public CollectionFilter barangay(String barangay) {
+        this.barangay = barangay;
+        return this;
+    }
+
+    public CollectionFilter driverId(String driverId) {
+        this.driverId = driverId;
+        return this;
+    }
+
+    public CollectionFilter collectionType(String collectionType) {
+        this.collectionType = collectionType;
+        return this;
+    }
+
+    public CollectionFilter status(String status) {
+        this.status = status;
+        return this;
+    }
+
+    public CollectionFilter between(Timestamp from, Timestamp to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public boolean matches(CollectionRecord record) {
+        if (barangay != null && !barangay.equals(record.getBarangay())) {
+            return false;
+        }
+        if (driverId != null && !driverId.equals(record.getDriverId())) {
+            return false;
+        }
+        if (collectionType != null && !collectionType.equals(record.getCollectionType())) {
+            return false;
+        }
+        if (status != null && !status.equals(record.getStatus())) {
+            return false;
+        }
+        if (from != null || to != null) {
+            Timestamp date = record.getCollectionDate();
+            if (date == null) {
+                return false;
+            }
+            if (from != null && date.compareTo(from) < 0) {
+                return false;
+            }
+            if (to != null && date.compareTo(to) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getBarangay() {
+        return barangay;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public String getCollectionType() {
+        return collectionType;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Timestamp getFrom() {
+        return from;
+    }
+
+    public Timestamp getTo() {
+        return to;
+    }
+}
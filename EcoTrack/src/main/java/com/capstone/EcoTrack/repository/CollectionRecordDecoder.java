@@ -0,0 +1,53 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+
+// Hand-written replacement for document.toObject(CollectionRecord.class) on the stats paths.
+// Reads fields with the typed getters instead of Firestore's reflective bean mapper.
+public final class CollectionRecordDecoder {
+
+    // Projection for the stats queries; collectionDate is kept so paging cursors still work
+    public static final String[] STATS_FIELDS = {"weight", "barangay", "driverId", "collectionDate"};
+
+    // Projection for anything that needs to know whether a record counts (rollups, analytics store);
+    // updatedAt versions the analytics store's rows
+    public static final String[] SUMMARY_FIELDS = {"weight", "barangay", "driverId", "collectionDate", "status", "collectionType",
+            "updatedAt"};
+
+    // Projection for rebuilding the per-user counters
+    public static final String[] USER_STATS_FIELDS = {"weight", "userId", "driverId", "collectionDate", "status"};
+
+    private CollectionRecordDecoder() {}
+
+    // Add a (projected) document straight to the totals without allocating a CollectionRecord
+    public static void fold(CollectionStats stats, DocumentSnapshot document) {
+        stats.add(document.getString("barangay"), document.getString("driverId"), weightOf(document));
+    }
+
+    public static double weightOf(DocumentSnapshot document) {
+        Double weight = document.getDouble("weight");
+        return weight == null ? 0.0 : weight;
+    }
+
+    // Decode whatever fields the document carries; missing fields stay null/0 like the bean mapper
+    public static CollectionRecord decode(DocumentSnapshot document) {
+        CollectionRecord record = new CollectionRecord();
+        String recordId = document.getString("recordId");
+        record.setRecordId(recordId != null ? recordId : document.getId());
+        record.setDriverId(document.getString("driverId"));
+        record.setUserId(document.getString("userId"));
+        record.setBarangay(document.getString("barangay"));
+        record.setCollectionType(document.getString("collectionType"));
+        record.setWeight(weightOf(document));
+        record.setCollectionDate(document.getTimestamp("collectionDate"));
+        record.setStatus(document.getString("status"));
+        record.setNotes(document.getString("notes"));
+        // Records written before updatedAt existed only have the document's own update time
+        Timestamp updatedAt = document.getTimestamp("updatedAt");
+        record.setUpdatedAt(updatedAt != null ? updatedAt : document.getUpdateTime());
+        return record;
+    }
+}
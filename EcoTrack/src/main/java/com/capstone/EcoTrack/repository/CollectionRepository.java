@@ -0,0 +1,106 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.model.UserCollectionStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+// Storage for collection records and the queries the dashboard runs over them
+public interface CollectionRepository {
+
+    CollectionRecord findById(String recordId) throws ExecutionException, InterruptedException;
+
+    // Create or replace a record, assigning a recordId when it has none and setting updatedAt to the write's
+    // commit time; returns the replaced version or null
+    CollectionRecord save(CollectionRecord record) throws ExecutionException, InterruptedException;
+
+    // Create or replace many records at once, assigning recordIds where missing and setting updatedAt on those
+    // written, as save does. Returns one entry per record, in order: null when it was written, else why not.
+    // Stores may trade the transactional counter updates of save for throughput here (bulk uploads); the
+    // default is saveAllInTransactions.
+    default List<String> saveAll(List<CollectionRecord> records) throws ExecutionException, InterruptedException {
+        return saveAllInTransactions(records);
+    }
+
+    // As saveAll, but each record and its counter updates commit together, as in save, so concurrent writes
+    // cannot make the counters drift. Stores may put several records in one transaction; the default saves
+    // them one by one.
+    default List<String> saveAllInTransactions(List<CollectionRecord> records) throws ExecutionException, InterruptedException {
+        List<String> errors = new ArrayList<>();
+        for (CollectionRecord record : records) {
+            try {
+                save(record);
+                errors.add(null);
+            } catch (RuntimeException | ExecutionException e) {
+                errors.add(Futures.unwrap(e).getMessage());
+            }
+        }
+        return errors;
+    }
+
+    // Change only the status; returns the record with updatedAt set to the commit time. Throws
+    // IllegalArgumentException when the record does not exist.
+    CollectionRecord updateStatus(String recordId, String status) throws ExecutionException, InterruptedException;
+
+    // Remove a record, keeping the dashboard rollups in step; returns the removed record, its updatedAt set to
+    // the removal's commit time, or null
+    CollectionRecord delete(String recordId) throws ExecutionException, InterruptedException;
+
+    // Counters over a user's records (as household or driver), kept in step by every write so reading them
+    // costs the same however many records there are; all zero for a user without records
+    UserCollectionStats findUserStats(String userId) throws ExecutionException, InterruptedException;
+
+    default CompletableFuture<UserCollectionStats> findUserStatsAsync(String userId) {
+        return Futures.completed(() -> findUserStats(userId));
+    }
+
+    // A page of at most `limit` changes to one driver's records after the cursor, oldest change first;
+    // a null cursor starts a full download. Stores that keep no change times throw UnsupportedOperationException;
+    // a store that no longer knows every deletion since the cursor throws SyncTokenExpiredException.
+    default CollectionChanges changes(String driverId, SyncCursor cursor, int limit) throws ExecutionException, InterruptedException {
+        throw new UnsupportedOperationException("Delta sync is not available on this backend");
+    }
+
+    // Totals and breakdowns over every record matching the filter
+    CollectionStats aggregate(CollectionFilter filter) throws ExecutionException, InterruptedException;
+
+    // Non-blocking aggregate; the default suits stores that answer from memory
+    default CompletableFuture<CollectionStats> aggregateAsync(CollectionFilter filter) {
+        return Futures.completed(() -> aggregate(filter));
+    }
+
+    // As aggregateAsync, reading the records a page at a time so memory stays bounded; stores that answer
+    // from memory have nothing to page
+    default CompletableFuture<CollectionStats> aggregatePagedAsync(CollectionFilter filter) {
+        return aggregateAsync(filter);
+    }
+
+    // As aggregateAsync, split into date ranges read in parallel; stores that answer from memory have
+    // nothing to split
+    default CompletableFuture<CollectionStats> aggregateShardedAsync(CollectionFilter filter) {
+        return aggregateAsync(filter);
+    }
+
+    // Version of the records as a whole, raised by every write, or null when the store cannot tell without
+    // reading the records (Firestore); lets unchanged dashboard polls be answered before aggregating
+    default CompletableFuture<Long> versionAsync() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Visit every matching record. Records may be partial: notes are not loaded.
+    void forEach(CollectionFilter filter, Consumer<CollectionRecord> consumer) throws ExecutionException, InterruptedException;
+
+    // Non-blocking forEach, complete once every record has been visited; the default suits stores that
+    // answer from memory
+    default CompletableFuture<Void> forEachAsync(CollectionFilter filter, Consumer<CollectionRecord> consumer) {
+        return Futures.completed(() -> {
+            forEach(filter, consumer);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Transaction;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+// Pre-aggregated documents kept in step with the collection records (the dashboard rollups). The Firestore
+// repository hands every write's changes to it, inside the same transaction or bulk write; what the
+// documents hold and where they live is up to the implementation.
+public interface CollectionRollupWriter {
+
+    // Increments for one transactional write. Reads what it needs through the transaction, so call it
+    // before the transaction writes anything.
+    Deltas begin(Transaction transaction) throws ExecutionException, InterruptedException;
+
+    // Increments for a write outside a transaction (bulk writes)
+    Deltas begin() throws ExecutionException, InterruptedException;
+
+    interface Deltas {
+
+        // A record entering (sign = 1) or leaving (sign = -1) the collection
+        void add(CollectionRecord record, int sign);
+
+        // The summed increments as merge writes, at most one per document
+        void writeTo(BiConsumer<DocumentReference, Map<String, Object>> writer);
+
+        // The generation a rebuild is building, or null. The per-user counters then also go to that
+        // generation's shadow documents, which the rebuild swaps in.
+        Long building();
+    }
+}
@@ -0,0 +1,16 @@
+package com.capstone.EcoTrack.repository;
+
+// A write would give a unique field (e.g. a user's email) a value another document already holds
+public class DuplicateValueException extends IllegalArgumentException {
+
+    private final String field;
+
+    public DuplicateValueException(String field) {
+        super(field + " is already in use");
+        this.field = field;
+    }
+
+    public String getField() {
+        return field;
+    }
+}
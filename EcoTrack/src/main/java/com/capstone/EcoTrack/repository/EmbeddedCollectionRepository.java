@@ -0,0 +1,290 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.model.UserCollectionStats;
+import com.google.cloud.Timestamp;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Collection records held in memory with hash indexes on driverId and barangay; see application-embedded.properties
+@Repository
+@Profile("embedded")
+public class EmbeddedCollectionRepository implements CollectionRepository {
+
+    private final EmbeddedStore<CollectionRecord> records;
+    // Per-user counters, rebuilt from the records at startup and kept in step by the store's change listener,
+    // which runs inside each write; readers copy a user's counters inside compute, one key at a time
+    private final Map<String, UserCollectionStats> userStats = new ConcurrentHashMap<>();
+    // Deleted record ID -> its driver and the version of the delete, kept in step like userStats. Held in
+    // memory only: sync tokens from before tombstonesFrom are refused, since deletions before it are unknown.
+    private final Map<String, Tombstone> tombstones = new ConcurrentHashMap<>();
+    private final long tombstonesFrom;
+    private final long tombstoneRetentionMicros;
+
+    public EmbeddedCollectionRepository(@Value("${ecotrack.embedded.data-dir:}") String dataDir,
+                                        @Value("${ecotrack.embedded.latency-ms:0}") long latencyMillis,
+                                        @Value("${ecotrack.collections.sync.tombstone-retention-days:30}") int tombstoneRetentionDays) {
+        Map<String, Function<CollectionRecord, String>> indexes = new LinkedHashMap<>();
+        indexes.put("driverId", CollectionRecord::getDriverId);
+        indexes.put("barangay", CollectionRecord::getBarangay);
+        this.records = new EmbeddedStore<>(CollectionRecord.class, CollectionRecord::getRecordId, indexes,
+                dataDir.isEmpty() ? null : Path.of(dataDir, "collections.json"), latencyMillis);
+        records.scan(null, null, record -> countForUsers(record, 1));
+        records.onChange((previous, next, version) -> {
+            countForUsers(previous, -1);
+            countForUsers(next, 1);
+            if (next == null && previous.getDriverId() != null) {
+                tombstones.put(previous.getRecordId(), new Tombstone(previous.getDriverId(), version));
+            }
+        });
+        this.tombstonesFrom = records.version();
+        this.tombstoneRetentionMicros = TimeUnit.DAYS.toMicros(tombstoneRetentionDays);
+    }
+
+    @Override
+    public CollectionRecord findById(String recordId) {
+        return records.get(recordId);
+    }
+
+    // Versions double as commit times (see changes); read back right after the write like the Firestore
+    // repository, so a write by someone else in between shows up as a later time
+    @Override
+    public CollectionRecord save(CollectionRecord record) {
+        if (record.getRecordId() == null) {
+            record.setRecordId(UUID.randomUUID().toString().replace("-", ""));
+        }
+        CollectionRecord previous = records.put(record);
+        record.setUpdatedAt(committedAt(record.getRecordId()));
+        return previous;
+    }
+
+    @Override
+    public CollectionRecord updateStatus(String recordId, String status) {
+        Map<String, Object> updates = new LinkedHashMap<>();
+        updates.put("status", status);
+        CollectionRecord updated = records.update(recordId, updates);
+        if (updated == null) {
+            throw new IllegalArgumentException("Collection record not found: " + recordId);
+        }
+        updated.setUpdatedAt(committedAt(recordId));
+        return updated;
+    }
+
+    @Override
+    public CollectionRecord delete(String recordId) {
+        CollectionRecord removed = records.remove(recordId);
+        if (removed != null) {
+            removed.setUpdatedAt(timeOf(records.version()));
+        }
+        return removed;
+    }
+
+    @Override
+    public UserCollectionStats findUserStats(String userId) {
+        UserCollectionStats copy = new UserCollectionStats();
+        userStats.computeIfPresent(userId, (id, stats) -> {
+            copy.setTotalCollections(stats.getTotalCollections());
+            copy.setTotalWeight(stats.getTotalWeight());
+            copy.setLastCollection(stats.getLastCollection());
+            copy.getByStatus().putAll(stats.getByStatus());
+            return stats;
+        });
+        return copy;
+    }
+
+    @Override
+    public CompletableFuture<Long> versionAsync() {
+        return Futures.completed(records::version);
+    }
+
+    // Versions double as change times (microseconds, see EmbeddedStore). Every page is cut at the store version
+    // read before it, and a write's listener has run before that version covers it, so writes and tombstones
+    // up to it are all visible and nothing later leaks into the page.
+    @Override
+    public CollectionChanges changes(String driverId, SyncCursor cursor, int limit) {
+        long upTo = records.version();
+
+        if (cursor == null || cursor.isFull()) {
+            // Full download by record ID
+            String afterId = cursor == null ? null : cursor.getAfterId();
+            TreeMap<String, CollectionRecord> byId = new TreeMap<>();
+            records.scanVersioned("driverId", driverId, (record, version) -> {
+                if (afterId == null || record.getRecordId().compareTo(afterId) > 0) {
+                    byId.put(record.getRecordId(), changed(record, version));
+                    if (byId.size() > limit + 1) {
+                        byId.pollLastEntry(); // one past the page is enough to tell there is more
+                    }
+                }
+            });
+            List<CollectionRecord> page = new ArrayList<>(byId.values()).subList(0, Math.min(limit, byId.size()));
+            Timestamp startedAt = cursor == null ? timeOf(upTo) : cursor.getSince();
+            boolean more = byId.size() > limit;
+            SyncCursor next = more
+                    ? SyncCursor.full(driverId, startedAt, page.get(page.size() - 1).getRecordId())
+                    : SyncCursor.delta(driverId, startedAt, null, null);
+            return new CollectionChanges(new ArrayList<>(page), new LinkedHashMap<>(), next, more);
+        }
+
+        long since = Versioned.versionOf(cursor.getSince());
+        if (since < tombstonesFrom) {
+            throw new SyncTokenExpiredException();
+        }
+        long afterVersion = cursor.getAfterTime() == null ? since : Versioned.versionOf(cursor.getAfterTime());
+        String afterId = cursor.getAfterId();
+
+        // Writes and deletions in (since, upTo], ordered by (version, ID) like the Firestore merge
+        List<Change> changes = new ArrayList<>();
+        records.scanVersioned("driverId", driverId, (record, version) -> {
+            if (version <= upTo && isAfter(version, record.getRecordId(), afterVersion, afterId)) {
+                changes.add(new Change(version, record.getRecordId(), changed(record, version)));
+            }
+        });
+        tombstones.forEach((recordId, tombstone) -> {
+            if (tombstone.driverId.equals(driverId) && tombstone.version <= upTo
+                    && isAfter(tombstone.version, recordId, afterVersion, afterId)) {
+                changes.add(new Change(tombstone.version, recordId, null));
+            }
+        });
+        changes.sort(Comparator.comparingLong((Change change) -> change.version).thenComparing(change -> change.recordId));
+
+        List<CollectionRecord> written = new ArrayList<>();
+        Map<String, Timestamp> deleted = new LinkedHashMap<>();
+        for (Change change : changes.subList(0, Math.min(limit, changes.size()))) {
+            if (change.record != null) {
+                written.add(change.record);
+            } else {
+                deleted.put(change.recordId, timeOf(change.version));
+            }
+        }
+        if (changes.size() > limit) {
+            Change last = changes.get(limit - 1);
+            return new CollectionChanges(written, deleted, SyncCursor.delta(driverId, cursor.getSince(), timeOf(last.version), last.recordId), true);
+        }
+        return new CollectionChanges(written, deleted, SyncCursor.delta(driverId, timeOf(upTo), null, null), false);
+    }
+
+    @Override
+    public CollectionStats aggregate(CollectionFilter filter) {
+        CollectionStats stats = new CollectionStats();
+        scan(filter, (record, version) -> stats.add(record));
+        return stats;
+    }
+
+    @Override
+    public void forEach(CollectionFilter filter, Consumer<CollectionRecord> consumer) {
+        // Hand out copies so callers cannot reach into the store, stamped with their version like changes
+        scan(filter, (record, version) -> {
+            CollectionRecord copy = copyOf(record);
+            copy.setUpdatedAt(timeOf(version));
+            consumer.accept(copy);
+        });
+    }
+
+    // Narrow by the driverId or barangay index when the filter allows it, then check the rest
+    private void scan(CollectionFilter filter, BiConsumer<CollectionRecord, Long> consumer) {
+        String field = null;
+        String value = null;
+        if (filter.getDriverId() != null) {
+            field = "driverId";
+            value = filter.getDriverId();
+        } else if (filter.getBarangay() != null) {
+            field = "barangay";
+            value = filter.getBarangay();
+        }
+
+        records.scanVersioned(field, value, (record, version) -> {
+            if (filter.matches(record)) {
+                consumer.accept(record, version);
+            }
+        });
+    }
+
+    private void countForUsers(CollectionRecord record, int sign) {
+        for (String userId : UserCollectionStats.usersOf(record)) {
+            userStats.compute(userId, (id, stats) -> {
+                UserCollectionStats counted = stats == null ? new UserCollectionStats() : stats;
+                counted.add(record, sign);
+                return counted;
+            });
+        }
+    }
+
+    private static CollectionRecord copyOf(CollectionRecord record) {
+        CollectionRecord copy = new CollectionRecord();
+        copy.setRecordId(record.getRecordId());
+        copy.setDriverId(record.getDriverId());
+        copy.setUserId(record.getUserId());
+        copy.setBarangay(record.getBarangay());
+        copy.setCollectionType(record.getCollectionType());
+        copy.setWeight(record.getWeight());
+        copy.setCollectionDate(record.getCollectionDate());
+        copy.setStatus(record.getStatus());
+        return copy;
+    }
+
+    @Scheduled(fixedDelayString = "${ecotrack.embedded.flush-interval-ms:1000}")
+    @PreDestroy
+    public void flush() {
+        records.flushIfDirty();
+        // Tokens older than the retention are refused anyway
+        long expired = System.currentTimeMillis() * 1000 - tombstoneRetentionMicros;
+        tombstones.values().removeIf(tombstone -> tombstone.version < expired);
+    }
+
+    private static boolean isAfter(long version, String recordId, long afterVersion, String afterId) {
+        return version > afterVersion || (version == afterVersion && afterId != null && recordId.compareTo(afterId) > 0);
+    }
+
+    // A copy to hand out, stamped with its version as the update time
+    private static CollectionRecord changed(CollectionRecord record, long version) {
+        CollectionRecord copy = copyOf(record);
+        copy.setNotes(record.getNotes());
+        copy.setUpdatedAt(timeOf(version));
+        return copy;
+    }
+
+    // Null when the record is gone again
+    private Timestamp committedAt(String recordId) {
+        Long version = records.version(recordId);
+        return version == null ? null : timeOf(version);
+    }
+
+    private static Timestamp timeOf(long version) {
+        return Timestamp.ofTimeMicroseconds(version);
+    }
+
+    private static final class Tombstone {
+        private final String driverId;
+        private final long version;
+
+        private Tombstone(String driverId, long version) {
+            this.driverId = driverId;
+            this.version = version;
+        }
+    }
+
+    private static final class Change {
+        private final long version;
+        private final String recordId;
+        private final CollectionRecord record; // null for a deletion
+
+        private Change(long version, String recordId, CollectionRecord record) {
+            this.version = version;
+            this.recordId = recordId;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.capstone.EcoTrack.repository;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.cloud.Timestamp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// In-memory table for the embedded backend: rows by ID plus hash indexes on chosen fields.
+// Values handed out are copies, like documents read from Firestore. When a file is configured the
+// table is loaded from it at startup and written back (atomically, as JSON) by flushIfDirty().
+// A simulated latency can be added to every call so load tests see a remote database's wait times.
+// Every write gives the row a new version, which conditional updates compare like Firestore's update time.
+class EmbeddedStore<T> {
+
+    private static final ObjectMapper MAPPER = createMapper();
+
+    private final Class<T> type;
+    private final Function<T, String> idOf;
+    private final Map<String, Function<T, String>> indexedFields;
+    private final Path file;
+    private final long latencyMillis;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, T> rows = new HashMap<>();
+    private final Map<String, Map<String, Set<String>>> indexes = new HashMap<>(); // field -> value -> ids
+    private final Map<String, Long> versions = new HashMap<>();
+    private long lastVersion = System.currentTimeMillis() * 1000; // from the clock, so versions keep rising across restarts
+    private volatile boolean dirty;
+    private ChangeListener<T> changeListener = (previous, next, version) -> {};
+
+    EmbeddedStore(Class<T> type, Function<T, String> idOf, Map<String, Function<T, String>> indexedFields, Path file,
+                  long latencyMillis) {
+        this.type = type;
+        this.idOf = idOf;
+        this.indexedFields = indexedFields;
+        this.file = file;
+        this.latencyMillis = latencyMillis;
+        indexedFields.keySet().forEach(field -> indexes.put(field, new HashMap<>()));
+        load();
+    }
+
+    T get(String id) {
+        roundTrip();
+        lock.readLock().lock();
+        try {
+            return copy(rows.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Row copy with the version it was read at, or null
+    Versioned<T> getVersioned(String id) {
+        roundTrip();
+        lock.readLock().lock();
+        try {
+            T value = rows.get(id);
+            return value == null ? null : new Versioned<>(copy(value), versions.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Version of one row without copying it, or null
+    Long version(String id) {
+        roundTrip();
+        lock.readLock().lock();
+        try {
+            return versions.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Version of the table as a whole: changes with every write, including removes
+    long version() {
+        roundTrip();
+        lock.readLock().lock();
+        try {
+            return lastVersion;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // First row whose indexed field equals the value, or null
+    T findFirst(String field, String value) {
+        roundTrip();
+        lock.readLock().lock();
+        try {
+            Set<String> ids = indexes.get(field).get(value);
+            return ids == null || ids.isEmpty() ? null : copy(rows.get(ids.iterator().next()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Insert or replace; returns the previous row
+    T put(T value) {
+        return put(value, Collections.emptyList());
+    }
+
+    // As put, but throws DuplicateValueException if another row holds the same value in one of the
+    // (indexed) unique fields; check and write happen under one lock
+    T put(T value, Collection<String> uniqueFields) {
+        T stored = copy(value);
+        roundTrip();
+        lock.writeLock().lock();
+        try {
+            checkUnique(stored, uniqueFields);
+            T previous = rows.put(idOf.apply(stored), stored);
+            unindex(previous);
+            index(stored);
+            versions.put(idOf.apply(stored), ++lastVersion);
+            dirty = true;
+            changeListener.changed(previous, stored, lastVersion);
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Apply top-level field updates to a row; returns the updated row or null if it does not exist
+    T update(String id, Map<String, Object> updates) {
+        return update(id, updates, Collections.emptyList());
+    }
+
+    // As update, but throws DuplicateValueException if the result clashes with another row in a unique field
+    T update(String id, Map<String, Object> updates, Collection<String> uniqueFields) {
+        roundTrip();
+        lock.writeLock().lock();
+        try {
+            return rows.containsKey(id) ? copy(apply(id, updates, uniqueFields)) : null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // As update, but only if the row still has the version it was read at; returns false if it has been
+    // written or removed since
+    boolean updateIfVersion(String id, long version, Map<String, Object> updates) {
+        roundTrip();
+        lock.writeLock().lock();
+        try {
+            Long current = versions.get(id);
+            if (current == null || current != version) {
+                return false;
+            }
+            apply(id, updates, Collections.emptyList());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    T remove(String id) {
+        roundTrip();
+        lock.writeLock().lock();
+        try {
+            T previous = rows.remove(id);
+            unindex(previous);
+            if (versions.remove(id) != null) {
+                lastVersion++;
+            }
+            dirty = previous != null || dirty;
+            if (previous != null) {
+                changeListener.changed(previous, null, lastVersion);
+            }
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with the previous and the new row (either may be null) and the write's version for every write,
+    // under the write lock, so whatever it keeps in step with the rows sees the writes one at a time and in
+    // order, and version() only covers writes it has seen. It must be quick, must not call back into the
+    // store and must not keep or modify the rows. Set it before use.
+    void onChange(ChangeListener<T> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    // Visit rows without copying them, narrowed by an index when field is not null.
+    // The consumer runs under the read lock and must not keep or modify the rows.
+    void scan(String field, String value, Consumer<T> consumer) {
+        roundTrip();
+        lock.readLock().lock();
+        try {
+            if (field == null) {
+                rows.values().forEach(consumer);
+                return;
+            }
+            Set<String> ids = indexes.get(field).get(value);
+            if (ids != null) {
+                for (String id : ids) {
+                    consumer.accept(rows.get(id));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // As scan, with each row's version
+    void scanVersioned(String field, String value, BiConsumer<T, Long> consumer) {
+        roundTrip();
+        lock.readLock().lock();
+        try {
+            if (field == null) {
+                rows.forEach((id, row) -> consumer.accept(row, versions.get(id)));
+                return;
+            }
+            Set<String> ids = indexes.get(field).get(value);
+            if (ids != null) {
+                for (String id : ids) {
+                    consumer.accept(rows.get(id), versions.get(id));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void flushIfDirty() {
+        if (file == null || !dirty) {
+            return;
+        }
+        byte[] json;
+        lock.readLock().lock();
+        try {
+            json = MAPPER.writeValueAsBytes(rows.values());
+            dirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, json);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Wait like a network round trip would, outside the lock so concurrent callers wait in parallel
+    private void roundTrip() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            JavaType listType = MAPPER.getTypeFactory().constructCollectionType(List.class, type);
+            List<T> values = MAPPER.readValue(file.toFile(), listType);
+            for (T value : values) {
+                rows.put(idOf.apply(value), value);
+                index(value);
+                versions.put(idOf.apply(value), ++lastVersion);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load " + file, e);
+        }
+    }
+
+    // Write lock held and the row exists
+    private T apply(String id, Map<String, Object> updates, Collection<String> uniqueFields) {
+        T current = rows.get(id);
+        try {
+            T updated = copy(current);
+            MAPPER.updateValue(updated, updates);
+            checkUnique(updated, uniqueFields);
+            rows.put(id, updated);
+            unindex(current);
+            index(updated);
+            versions.put(id, ++lastVersion);
+            dirty = true;
+            changeListener.changed(current, updated, lastVersion);
+            return updated;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkUnique(T value, Collection<String> uniqueFields) {
+        String id = idOf.apply(value);
+        for (String field : uniqueFields) {
+            String key = indexedFields.get(field).apply(value);
+            Set<String> ids = key == null ? null : indexes.get(field).get(key);
+            if (ids != null && (ids.size() > 1 || !ids.contains(id))) {
+                throw new DuplicateValueException(field);
+            }
+        }
+    }
+
+    private void index(T value) {
+        for (Map.Entry<String, Function<T, String>> field : indexedFields.entrySet()) {
+            indexes.get(field.getKey())
+                    .computeIfAbsent(field.getValue().apply(value), key -> new LinkedHashSet<>())
+                    .add(idOf.apply(value));
+        }
+    }
+
+    private void unindex(T value) {
+        if (value == null) {
+            return;
+        }
+        for (Map.Entry<String, Function<T, String>> field : indexedFields.entrySet()) {
+            Map<String, Set<String>> index = indexes.get(field.getKey());
+            String key = field.getValue().apply(value);
+            Set<String> ids = index.get(key);
+            if (ids != null) {
+                ids.remove(idOf.apply(value));
+                if (ids.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    private T copy(T value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(MAPPER.writeValueAsBytes(value), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Plain Jackson plus Timestamp as an RFC 3339 string
+    private static ObjectMapper createMapper() {
+        SimpleModule timestamps = new SimpleModule();
+        timestamps.addSerializer(Timestamp.class, new JsonSerializer<Timestamp>() {
+            @Override
+            public void serialize(Timestamp value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+                generator.writeString(value.toString());
+            }
+        });
+        timestamps.addDeserializer(Timestamp.class, new JsonDeserializer<Timestamp>() {
+            @Override
+            public Timestamp deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+                return Timestamp.parseTimestamp(parser.getValueAsString());
+            }
+        });
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(timestamps);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
+    }
+
+    @FunctionalInterface
+    interface ChangeListener<T> {
+        void changed(T previous, T next, long version);
+    }
+}
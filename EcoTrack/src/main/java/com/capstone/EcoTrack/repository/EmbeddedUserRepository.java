@@ -0,0 +1,170 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.User;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Users held in memory with hash indexes on email and username, which also enforce their uniqueness;
+// see application-embedded.properties
+@Repository
+@Profile("embedded")
+public class EmbeddedUserRepository implements UserRepository {
+
+    private static final List<String> UNIQUE_FIELDS = List.of("email", "username");
+
+    private final EmbeddedStore<User> users;
+    private final int updateAttempts;
+
+    public EmbeddedUserRepository(@Value("${ecotrack.embedded.data-dir:}") String dataDir,
+                                  @Value("${ecotrack.embedded.latency-ms:0}") long latencyMillis,
+                                  @Value("${ecotrack.users.update-attempts:5}") int updateAttempts) {
+        if (updateAttempts <= 0) {
+            throw new IllegalArgumentException("ecotrack.users.update-attempts must be positive");
+        }
+        this.updateAttempts = updateAttempts;
+        Map<String, Function<User, String>> indexes = new LinkedHashMap<>();
+        indexes.put("email", user -> UserRepository.normalizeEmail(user.getEmail()));
+        indexes.put("username", User::getUsername);
+        this.users = new EmbeddedStore<>(User.class, User::getUserId, indexes,
+                dataDir.isEmpty() ? null : Path.of(dataDir, "users.json"), latencyMillis);
+    }
+
+    @Override
+    public String newId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    @Override
+    public User findById(String userId) {
+        return users.get(userId);
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        return users.findFirst("email", UserRepository.normalizeEmail(email));
+    }
+
+    @Override
+    public User findByUsername(String username) {
+        return users.findFirst("username", username);
+    }
+
+    @Override
+    public User findByEmailOrUsername(String identifier) {
+        User user = findByEmail(identifier);
+        return user != null ? user : findByUsername(identifier);
+    }
+
+    @Override
+    public CompletableFuture<Versioned<User>> findVersionedAsync(String userId) {
+        return Futures.completed(() -> users.getVersioned(userId));
+    }
+
+    @Override
+    public CompletableFuture<Long> findVersionAsync(String userId) {
+        return Futures.completed(() -> users.version(userId));
+    }
+
+    @Override
+    public void create(User user) {
+        users.put(user, UNIQUE_FIELDS);
+    }
+
+    @Override
+    public void save(User user) {
+        users.put(user, UNIQUE_FIELDS);
+    }
+
+    @Override
+    public boolean update(String userId, Map<String, Object> updates) {
+        UserRepository.checkUpdatable(updates);
+        return users.update(userId, updates) != null;
+    }
+
+    // Rows are read whole here, so the field list only matters to the Firestore store
+    @Override
+    public User updateChecked(String userId, List<String> fields, Change change) throws ExecutionException, InterruptedException {
+        for (int attempt = 0; attempt < updateAttempts; attempt++) {
+            Versioned<User> current = users.getVersioned(userId);
+            if (current == null) {
+                return null;
+            }
+            Map<String, Object> updates = change.apply(current.getValue());
+            UserRepository.checkUpdatable(updates);
+            if (users.updateIfVersion(userId, current.getVersion(), updates)) {
+                return current.getValue();
+            }
+        }
+        throw new IllegalStateException("User " + userId + " kept changing; gave up after " + updateAttempts + " attempts");
+    }
+
+    @Override
+    public CompletableFuture<User> updateCheckedAsync(String userId, List<String> fields, AsyncChange change) {
+        return updateCheckedAsync(userId, change, 0);
+    }
+
+    private CompletableFuture<User> updateCheckedAsync(String userId, AsyncChange change, int attempt) {
+        if (attempt == updateAttempts) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "User " + userId + " kept changing; gave up after " + updateAttempts + " attempts"));
+        }
+        Versioned<User> current = users.getVersioned(userId);
+        if (current == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return change.apply(current.getValue()).thenCompose(updates -> {
+            UserRepository.checkUpdatable(updates);
+            if (users.updateIfVersion(userId, current.getVersion(), updates)) {
+                return CompletableFuture.completedFuture(current.getValue());
+            }
+            return updateCheckedAsync(userId, change, attempt + 1);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateIfAsync(String userId, List<String> fields, Predicate<User> condition,
+                                                    Map<String, Object> updates) {
+        return Futures.completed(() -> {
+            UserRepository.checkUpdatable(updates);
+            Versioned<User> current = users.getVersioned(userId);
+            return current != null && condition.test(current.getValue())
+                    && users.updateIfVersion(userId, current.getVersion(), updates);
+        });
+    }
+
+    @Override
+    public User changeEmail(String userId, String newEmail) {
+        User previous = users.get(userId);
+        if (previous == null) {
+            return null;
+        }
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("email", newEmail);
+        return users.update(userId, updates, UNIQUE_FIELDS) == null ? null : previous;
+    }
+
+    @Override
+    public User delete(String userId) {
+        return users.remove(userId);
+    }
+
+    @Scheduled(fixedDelayString = "${ecotrack.embedded.flush-interval-ms:1000}")
+    @PreDestroy
+    public void flush() {
+        users.flushIfDirty();
+    }
+}
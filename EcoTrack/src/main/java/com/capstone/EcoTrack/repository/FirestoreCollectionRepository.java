@@ -0,0 +1,699 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.config.FirestoreMetrics;
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.model.UserCollectionStats;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Collection records in the Firestore "collections" collection. Writes keep the dashboard rollups and the
+// per-user counters (users/{userId}/stats/collections) in step inside the same transaction; aggregation
+// runs as a single, paged or sharded query, whichever the caller asks for.
+@Repository
+@Profile("!embedded")
+public class FirestoreCollectionRepository implements CollectionRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(FirestoreCollectionRepository.class);
+    public static final String TOMBSTONES = "collection_tombstones";
+    public static final String USER_STATS = "stats";
+    public static final String USER_STATS_DOC = "collections";
+    // Up to 11 writes each (the record, 4 rollups in 2 generations during a rebuild, 2 user counters),
+    // under Firestore's 500 per commit
+    private static final int RECORDS_PER_TRANSACTION = 40;
+    private static final FieldMask UPDATE_TIME_ONLY = FieldMask.of("updatedAt");
+
+    private final Firestore firestore;
+    private final CollectionRollupWriter rollupWriter;
+    private final FirestoreMetrics firestoreMetrics;
+    private final int pageSize;
+    private final ExecutorService statsExecutor;
+    private final long shardSpanMillis;
+    private final int maxShards;
+    private final BulkWriterOptions bulkOptions;
+    private final int bulkMaxAttempts;
+    private final long tombstoneRetentionMillis;
+
+    @Autowired
+    public FirestoreCollectionRepository(Firestore firestore, CollectionRollupWriter rollupWriter,
+                                         FirestoreMetrics firestoreMetrics,
+                                         @Value("${ecotrack.stats.page-size:1000}") int pageSize,
+                                         @Qualifier("statsExecutor") ExecutorService statsExecutor,
+                                         @Value("${ecotrack.stats.shard-span-days:30}") int shardSpanDays,
+                                         @Value("${ecotrack.stats.max-shards:16}") int maxShards,
+                                         @Value("${ecotrack.collections.batch.initial-ops-per-second:500}") int bulkInitialOps,
+                                         @Value("${ecotrack.collections.batch.max-ops-per-second:10000}") int bulkMaxOps,
+                                         @Value("${ecotrack.collections.batch.max-attempts:5}") int bulkMaxAttempts,
+                                         @Value("${ecotrack.collections.sync.tombstone-retention-days:30}") int tombstoneRetentionDays) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("ecotrack.stats.page-size must be positive");
+        }
+        if (shardSpanDays <= 0 || maxShards <= 0) {
+            throw new IllegalArgumentException("ecotrack.stats.shard-span-days and max-shards must be positive");
+        }
+        this.firestore = firestore;
+        this.rollupWriter = rollupWriter;
+        this.firestoreMetrics = firestoreMetrics;
+        this.pageSize = pageSize;
+        this.statsExecutor = statsExecutor;
+        this.shardSpanMillis = TimeUnit.DAYS.toMillis(shardSpanDays);
+        this.maxShards = maxShards;
+        if (bulkInitialOps <= 0 || bulkMaxOps < bulkInitialOps || bulkMaxAttempts <= 0) {
+            throw new IllegalArgumentException("ecotrack.collections.batch ops per second and max-attempts must be positive, initial <= max");
+        }
+        this.bulkOptions = BulkWriterOptions.builder()
+                .setInitialOpsPerSecond(bulkInitialOps)
+                .setMaxOpsPerSecond(bulkMaxOps)
+                .build();
+        this.bulkMaxAttempts = bulkMaxAttempts;
+        this.tombstoneRetentionMillis = TimeUnit.DAYS.toMillis(tombstoneRetentionDays);
+    }
+
+    @Override
+    public CollectionRecord findById(String recordId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot document = firestoreMetrics.record("collections", "get", firestore.collection("collections").document(recordId).get()).get();
+        return document.exists() ? document.toObject(CollectionRecord.class) : null;
+    }
+
+    @Override
+    public CollectionRecord save(CollectionRecord record) throws ExecutionException, InterruptedException {
+        CollectionReference collections = firestore.collection("collections");
+        DocumentReference docRef = record.getRecordId() == null
+                ? collections.document()
+                : collections.document(record.getRecordId());
+        record.setRecordId(docRef.getId());
+        record.setUpdatedAt(null); // @ServerTimestamp: stamped with the commit time
+
+        CollectionRecord replaced = firestoreMetrics.record("collections", "transaction", firestore.runTransaction(transaction -> {
+            DocumentSnapshot existing = transaction.get(docRef).get();
+            CollectionRecord previous = existing.exists() ? existing.toObject(CollectionRecord.class) : null;
+            if (previous != null) {
+                previous.setRecordId(docRef.getId()); // the rollup shard follows the record ID
+            }
+            Map<String, UserCollectionStats> userDeltas = new LinkedHashMap<>();
+            addUserDelta(userDeltas, previous, -1);
+            addUserDelta(userDeltas, record, 1);
+            CollectionRollupWriter.Deltas deltas = rollupWriter.begin(transaction);
+            List<DocumentSnapshot> userStats = readUserStats(transaction, userDeltas, deltas.building());
+
+            deltas.add(previous, -1);
+            deltas.add(record, 1);
+            deltas.writeTo((ref, delta) -> transaction.set(ref, delta, SetOptions.merge()));
+            writeUserStats(userDeltas, userStats, (ref, data) -> transaction.set(ref, data, SetOptions.merge()));
+            transaction.set(docRef, record);
+            return previous;
+        })).get();
+        record.setUpdatedAt(commitTimes(docRef).get(0));
+        return replaced;
+    }
+
+    // Records go through a BulkWriter, which ramps its rate up (500/50/5) and retries failed writes on its
+    // own, up to max-attempts per record. There is no transaction per record: the previous versions are
+    // read up front, and the rollups get one summed increment per rollup once the records are written, to the
+    // rollup generations current at that point.
+    // A record changed by someone else in between can leave the rollups and user counters off until the next
+    // rebuild. The user counters are increments too; only lastCollection is compared against a read.
+    @Override
+    public List<String> saveAll(List<CollectionRecord> records) throws ExecutionException, InterruptedException {
+        if (records.isEmpty()) {
+            return new ArrayList<>();
+        }
+        CollectionReference collections = firestore.collection("collections");
+        DocumentReference[] refs = new DocumentReference[records.size()];
+        for (int i = 0; i < refs.length; i++) {
+            CollectionRecord record = records.get(i);
+            refs[i] = record.getRecordId() == null ? collections.document() : collections.document(record.getRecordId());
+            record.setRecordId(refs[i].getId());
+            record.setUpdatedAt(null);
+        }
+        // Returned in the order asked for
+        List<DocumentSnapshot> existing = firestoreMetrics.record("collections", "getAll", firestore.getAll(refs)).get();
+
+        List<String> errors = new ArrayList<>();
+        List<ApiFuture<WriteResult>> rollupWrites = new ArrayList<>();
+        // Closed on every path, a failed flush or read included
+        try (BulkWriter writer = firestore.bulkWriter(bulkOptions)) {
+            writer.addWriteErrorListener(error -> error.getFailedAttempts() < bulkMaxAttempts);
+            List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+            for (int i = 0; i < refs.length; i++) {
+                writes.add(writer.set(refs[i], records.get(i)));
+            }
+            firestoreMetrics.record("collections", "bulk", writer.flush()).get();
+
+            CollectionRollupWriter.Deltas deltas = rollupWriter.begin();
+            Map<String, UserCollectionStats> userDeltas = new LinkedHashMap<>();
+            for (int i = 0; i < refs.length; i++) {
+                try {
+                    records.get(i).setUpdatedAt(writes.get(i).get().getUpdateTime());
+                    errors.add(null);
+                    DocumentSnapshot snapshot = existing.get(i);
+                    CollectionRecord previous = snapshot.exists() ? snapshot.toObject(CollectionRecord.class) : null;
+                    if (previous != null) {
+                        previous.setRecordId(refs[i].getId());
+                    }
+                    deltas.add(previous, -1);
+                    deltas.add(records.get(i), 1);
+                    addUserDelta(userDeltas, previous, -1);
+                    addUserDelta(userDeltas, records.get(i), 1);
+                } catch (ExecutionException e) {
+                    errors.add(Futures.unwrap(e).getMessage());
+                }
+            }
+            List<DocumentSnapshot> userStats = userDeltas.isEmpty()
+                    ? new ArrayList<>()
+                    : firestoreMetrics.record(USER_STATS, "getAll", firestore.getAll(userStatsRefs(userDeltas, deltas.building()))).get();
+
+            deltas.writeTo((ref, delta) -> rollupWrites.add(writer.set(ref, delta, SetOptions.merge())));
+            writeUserStats(userDeltas, userStats, (ref, data) -> rollupWrites.add(writer.set(ref, data, SetOptions.merge())));
+            firestoreMetrics.record("collection_rollups", "bulk", writer.flush()).get();
+        }
+        for (ApiFuture<WriteResult> rollupWrite : rollupWrites) {
+            try {
+                rollupWrite.get();
+            } catch (ExecutionException e) {
+                log.error("Rollup or user stats update after a bulk write failed, rebuild the rollups", Futures.unwrap(e));
+            }
+        }
+        return errors;
+    }
+
+    // Several records per transaction, read and written as save does; a failed transaction fails only its
+    // own records
+    @Override
+    public List<String> saveAllInTransactions(List<CollectionRecord> records) throws ExecutionException, InterruptedException {
+        List<String> errors = new ArrayList<>();
+        for (int from = 0; from < records.size(); from += RECORDS_PER_TRANSACTION) {
+            List<CollectionRecord> chunk = records.subList(from, Math.min(from + RECORDS_PER_TRANSACTION, records.size()));
+            try {
+                saveInTransaction(chunk);
+                chunk.forEach(record -> errors.add(null));
+            } catch (ExecutionException e) {
+                String error = Futures.unwrap(e).getMessage();
+                chunk.forEach(record -> errors.add(error));
+            }
+        }
+        return errors;
+    }
+
+    private void saveInTransaction(List<CollectionRecord> records) throws ExecutionException, InterruptedException {
+        CollectionReference collections = firestore.collection("collections");
+        DocumentReference[] refs = new DocumentReference[records.size()];
+        for (int i = 0; i < refs.length; i++) {
+            CollectionRecord record = records.get(i);
+            refs[i] = record.getRecordId() == null ? collections.document() : collections.document(record.getRecordId());
+            record.setRecordId(refs[i].getId());
+            record.setUpdatedAt(null);
+        }
+
+        firestoreMetrics.record("collections", "transaction", firestore.runTransaction(transaction -> {
+            List<DocumentSnapshot> existing = transaction.getAll(refs).get();
+            CollectionRollupWriter.Deltas deltas = rollupWriter.begin(transaction);
+            Map<String, UserCollectionStats> userDeltas = new LinkedHashMap<>();
+            for (int i = 0; i < refs.length; i++) {
+                DocumentSnapshot snapshot = existing.get(i);
+                CollectionRecord previous = snapshot.exists() ? snapshot.toObject(CollectionRecord.class) : null;
+                if (previous != null) {
+                    previous.setRecordId(refs[i].getId());
+                }
+                deltas.add(previous, -1);
+                deltas.add(records.get(i), 1);
+                addUserDelta(userDeltas, previous, -1);
+                addUserDelta(userDeltas, records.get(i), 1);
+            }
+            List<DocumentSnapshot> userStats = readUserStats(transaction, userDeltas, deltas.building());
+
+            deltas.writeTo((ref, delta) -> transaction.set(ref, delta, SetOptions.merge()));
+            writeUserStats(userDeltas, userStats, (ref, data) -> transaction.set(ref, data, SetOptions.merge()));
+            for (int i = 0; i < refs.length; i++) {
+                transaction.set(refs[i], records.get(i));
+            }
+            return null;
+        })).get();
+        List<Timestamp> committed = commitTimes(refs);
+        for (int i = 0; i < refs.length; i++) {
+            records.get(i).setUpdatedAt(committed.get(i));
+        }
+    }
+
+    @Override
+    public CollectionRecord updateStatus(String recordId, String status) throws ExecutionException, InterruptedException {
+        DocumentReference docRef = firestore.collection("collections").document(recordId);
+
+        CollectionRecord updated;
+        try {
+            updated = firestoreMetrics.record("collections", "transaction", firestore.runTransaction(transaction -> {
+                DocumentSnapshot existing = transaction.get(docRef).get();
+                if (!existing.exists()) {
+                    throw new IllegalArgumentException("Collection record not found: " + recordId);
+                }
+
+                CollectionRecord previous = existing.toObject(CollectionRecord.class);
+                previous.setRecordId(recordId);
+                CollectionRecord next = existing.toObject(CollectionRecord.class);
+                next.setRecordId(recordId);
+                next.setStatus(status);
+                Map<String, UserCollectionStats> userDeltas = new LinkedHashMap<>();
+                addUserDelta(userDeltas, previous, -1);
+                addUserDelta(userDeltas, next, 1);
+                CollectionRollupWriter.Deltas deltas = rollupWriter.begin(transaction);
+                List<DocumentSnapshot> userStats = readUserStats(transaction, userDeltas, deltas.building());
+
+                deltas.add(previous, -1);
+                deltas.add(next, 1);
+                deltas.writeTo((ref, delta) -> transaction.set(ref, delta, SetOptions.merge()));
+                writeUserStats(userDeltas, userStats, (ref, data) -> transaction.set(ref, data, SetOptions.merge()));
+                transaction.update(docRef, "status", status, "updatedAt", FieldValue.serverTimestamp());
+                return next;
+            })).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+        updated.setUpdatedAt(commitTimes(docRef).get(0));
+        return updated;
+    }
+
+    // The tombstone lets delta sync report the deletion; its expireAt is meant for a Firestore TTL policy
+    // on collection_tombstones, as tokens older than the retention are refused anyway
+    @Override
+    public CollectionRecord delete(String recordId) throws ExecutionException, InterruptedException {
+        DocumentReference docRef = firestore.collection("collections").document(recordId);
+        DocumentReference tombstoneRef = firestore.collection(TOMBSTONES).document(recordId);
+
+        CollectionRecord removed = firestoreMetrics.record("collections", "transaction", firestore.runTransaction(transaction -> {
+            DocumentSnapshot existing = transaction.get(docRef).get();
+            if (!existing.exists()) {
+                return null;
+            }
+            CollectionRecord previous = existing.toObject(CollectionRecord.class);
+            previous.setRecordId(recordId);
+            Map<String, UserCollectionStats> userDeltas = new LinkedHashMap<>();
+            addUserDelta(userDeltas, previous, -1);
+            CollectionRollupWriter.Deltas deltas = rollupWriter.begin(transaction);
+            List<DocumentSnapshot> userStats = readUserStats(transaction, userDeltas, deltas.building());
+
+            Map<String, Object> tombstone = new HashMap<>();
+            tombstone.put("recordId", recordId);
+            tombstone.put("driverId", previous.getDriverId());
+            tombstone.put("deletedAt", FieldValue.serverTimestamp());
+            tombstone.put("expireAt", Timestamp.ofTimeMicroseconds((System.currentTimeMillis() + tombstoneRetentionMillis) * 1000));
+
+            deltas.add(previous, -1);
+            deltas.writeTo((ref, delta) -> transaction.set(ref, delta, SetOptions.merge()));
+            writeUserStats(userDeltas, userStats, (ref, data) -> transaction.set(ref, data, SetOptions.merge()));
+            transaction.delete(docRef);
+            transaction.set(tombstoneRef, tombstone);
+            return previous;
+        })).get();
+        if (removed != null) {
+            // The tombstone was written in the same commit
+            removed.setUpdatedAt(commitTimes(tombstoneRef).get(0));
+        }
+        return removed;
+    }
+
+    // Transactions don't report their commit time, so read the documents' update times right after; null for
+    // one that is gone again. A write by someone else in between shows up as a later time, which whoever
+    // versions by it (the analytics store) sorts out at its next reload.
+    private List<Timestamp> commitTimes(DocumentReference... refs) throws ExecutionException, InterruptedException {
+        List<Timestamp> times = new ArrayList<>();
+        for (DocumentSnapshot written : firestoreMetrics.record("collections", "getAll", firestore.getAll(refs, UPDATE_TIME_ONLY)).get()) {
+            times.add(written.exists() ? written.getUpdateTime() : null);
+        }
+        return times;
+    }
+
+    // Change times are Firestore commit times (updatedAt, deletedAt), and a query sees every commit up to its
+    // read time, so a finished delta hands out that read time as the next `since`: nothing committed before
+    // it can be missed, whatever order concurrent writers commit in. Needs composite indexes on
+    // (driverId, updatedAt, __name__) and (driverId, deletedAt, __name__).
+    @Override
+    public CollectionChanges changes(String driverId, SyncCursor cursor, int limit) throws ExecutionException, InterruptedException {
+        Query byDriver = firestore.collection("collections").whereEqualTo("driverId", driverId);
+
+        if (cursor == null || cursor.isFull()) {
+            // Full download by document ID, which also covers records written before updatedAt existed
+            Query page = byDriver.orderBy(FieldPath.documentId()).limit(limit);
+            if (cursor != null && cursor.getAfterId() != null) {
+                page = page.startAfter(cursor.getAfterId());
+            }
+            QuerySnapshot snapshot = firestoreMetrics.record("collections", "query", page.get()).get();
+            Timestamp startedAt = cursor == null ? snapshot.getReadTime() : cursor.getSince();
+            List<CollectionRecord> records = new ArrayList<>();
+            for (QueryDocumentSnapshot document : snapshot.getDocuments()) {
+                records.add(CollectionRecordDecoder.decode(document));
+            }
+            boolean more = records.size() == limit;
+            SyncCursor next = more
+                    ? SyncCursor.full(driverId, startedAt, snapshot.getDocuments().get(limit - 1).getId())
+                    : SyncCursor.delta(driverId, startedAt, null, null);
+            return new CollectionChanges(records, new LinkedHashMap<>(), next, more);
+        }
+
+        Query written = byDriver.whereGreaterThan("updatedAt", cursor.getSince())
+                .orderBy("updatedAt").orderBy(FieldPath.documentId());
+        Query deleted = firestore.collection(TOMBSTONES).whereEqualTo("driverId", driverId)
+                .whereGreaterThan("deletedAt", cursor.getSince())
+                .orderBy("deletedAt").orderBy(FieldPath.documentId());
+        if (cursor.getAfterTime() != null) {
+            written = written.startAfter(cursor.getAfterTime(), cursor.getAfterId());
+            deleted = deleted.startAfter(cursor.getAfterTime(), cursor.getAfterId());
+        }
+        ApiFuture<QuerySnapshot> writtenFuture = firestoreMetrics.record("collections", "query", written.limit(limit).get());
+        ApiFuture<QuerySnapshot> deletedFuture = firestoreMetrics.record(TOMBSTONES, "query", deleted.limit(limit).get());
+        QuerySnapshot writtenSnapshot = writtenFuture.get();
+        QuerySnapshot deletedSnapshot = deletedFuture.get();
+
+        // Merge both streams by (change time, ID) and keep the first `limit`; everything after the last one
+        // kept is fetched by the next page
+        List<QueryDocumentSnapshot> writes = writtenSnapshot.getDocuments();
+        List<QueryDocumentSnapshot> deletions = deletedSnapshot.getDocuments();
+        List<CollectionRecord> records = new ArrayList<>();
+        Map<String, Timestamp> removed = new LinkedHashMap<>();
+        int w = 0;
+        int d = 0;
+        Timestamp lastTime = null;
+        String lastId = null;
+        while (records.size() + removed.size() < limit && (w < writes.size() || d < deletions.size())) {
+            boolean takeWrite = d == deletions.size() || (w < writes.size()
+                    && compare(writes.get(w), "updatedAt", deletions.get(d), "deletedAt") <= 0);
+            if (takeWrite) {
+                QueryDocumentSnapshot document = writes.get(w++);
+                records.add(CollectionRecordDecoder.decode(document));
+                lastTime = document.getTimestamp("updatedAt");
+                lastId = document.getId();
+            } else {
+                QueryDocumentSnapshot document = deletions.get(d++);
+                removed.put(document.getId(), document.getTimestamp("deletedAt"));
+                lastTime = document.getTimestamp("deletedAt");
+                lastId = document.getId();
+            }
+        }
+
+        boolean more = w < writes.size() || d < deletions.size() || writes.size() == limit || deletions.size() == limit;
+        if (more) {
+            return new CollectionChanges(records, removed, SyncCursor.delta(driverId, cursor.getSince(), lastTime, lastId), true);
+        }
+        // Both queries came back complete: the older of their read times covers everything either saw
+        Timestamp readTime = writtenSnapshot.getReadTime().compareTo(deletedSnapshot.getReadTime()) <= 0
+                ? writtenSnapshot.getReadTime()
+                : deletedSnapshot.getReadTime();
+        return new CollectionChanges(records, removed, SyncCursor.delta(driverId, readTime, null, null), false);
+    }
+
+    private static int compare(DocumentSnapshot a, String aField, DocumentSnapshot b, String bField) {
+        int byTime = a.getTimestamp(aField).compareTo(b.getTimestamp(bField));
+        return byTime != 0 ? byTime : a.getId().compareTo(b.getId());
+    }
+
+    // One document read: the counters kept by every write, rather than a query over the user's records
+    @Override
+    public UserCollectionStats findUserStats(String userId) throws ExecutionException, InterruptedException {
+        return findUserStatsAsync(userId).get();
+    }
+
+    @Override
+    public CompletableFuture<UserCollectionStats> findUserStatsAsync(String userId) {
+        return Futures.toCompletable(firestoreMetrics.record(USER_STATS, "get", userStatsRef(userId).get()))
+                .thenApply(FirestoreCollectionRepository::decodeUserStats);
+    }
+
+    public static DocumentReference userStatsRef(Firestore firestore, String userId) {
+        return firestore.collection("users").document(userId).collection(USER_STATS).document(USER_STATS_DOC);
+    }
+
+    // A rebuild building the given generation recomputes the user's counters here, while writes add to both
+    // documents, then swaps them in
+    public static DocumentReference userStatsShadowRef(Firestore firestore, String userId, long generation) {
+        return firestore.collection("users").document(userId).collection(USER_STATS).document(userStatsShadowDoc(generation));
+    }
+
+    public static String userStatsShadowDoc(long generation) {
+        return "g" + generation + "_" + USER_STATS_DOC;
+    }
+
+    private DocumentReference userStatsRef(String userId) {
+        return userStatsRef(firestore, userId);
+    }
+
+    public static UserCollectionStats decodeUserStats(DocumentSnapshot document) {
+        UserCollectionStats stats = new UserCollectionStats();
+        if (!document.exists()) {
+            return stats;
+        }
+        Long total = document.getLong("totalCollections");
+        Double weight = document.getDouble("totalWeight");
+        stats.setTotalCollections(total == null ? 0 : total);
+        stats.setTotalWeight(weight == null ? 0 : weight);
+        stats.setLastCollection(document.getTimestamp("lastCollection"));
+        Object byStatus = document.get("byStatus");
+        if (byStatus instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) byStatus).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    stats.getByStatus().put(String.valueOf(entry.getKey()), ((Number) entry.getValue()).longValue());
+                }
+            }
+        }
+        return stats;
+    }
+
+    private static void addUserDelta(Map<String, UserCollectionStats> deltas, CollectionRecord record, int sign) {
+        for (String userId : UserCollectionStats.usersOf(record)) {
+            deltas.computeIfAbsent(userId, id -> new UserCollectionStats()).add(record, sign);
+        }
+    }
+
+    // Each user's counters, followed by its shadow while a rebuild is building one
+    private DocumentReference[] userStatsRefs(Map<String, UserCollectionStats> deltas, Long building) {
+        List<DocumentReference> refs = new ArrayList<>();
+        for (String userId : deltas.keySet()) {
+            refs.add(userStatsRef(userId));
+            if (building != null) {
+                refs.add(userStatsShadowRef(firestore, userId, building));
+            }
+        }
+        return refs.toArray(new DocumentReference[0]);
+    }
+
+    // Transactions must read before they write; getAll returns the documents in the order asked for
+    private List<DocumentSnapshot> readUserStats(Transaction transaction, Map<String, UserCollectionStats> deltas,
+                                                 Long building) throws ExecutionException, InterruptedException {
+        return deltas.isEmpty() ? new ArrayList<>() : transaction.getAll(userStatsRefs(deltas, building)).get();
+    }
+
+    // One write per document read by readUserStats
+    private void writeUserStats(Map<String, UserCollectionStats> deltas, List<DocumentSnapshot> current,
+                                BiConsumer<DocumentReference, Map<String, Object>> writer) {
+        for (DocumentSnapshot stored : current) {
+            String userId = stored.getReference().getParent().getParent().getId();
+            Map<String, Object> data = userStatsIncrements(deltas.get(userId), stored);
+            if (data != null) {
+                writer.accept(stored.getReference(), data);
+            }
+        }
+    }
+
+    // Counters go in as increments, so concurrent writers for the same user add up rather than overwrite.
+    // lastCollection is only written when it moves past the stored value. Null when there is nothing to write,
+    // e.g. a save that changed nothing the counters follow.
+    public static Map<String, Object> userStatsIncrements(UserCollectionStats delta, DocumentSnapshot stored) {
+        Map<String, Object> data = new HashMap<>();
+        if (delta.getTotalCollections() != 0) {
+            data.put("totalCollections", FieldValue.increment(delta.getTotalCollections()));
+        }
+        if (delta.getTotalWeight() != 0) {
+            data.put("totalWeight", FieldValue.increment(delta.getTotalWeight()));
+        }
+        Map<String, Object> byStatus = new HashMap<>();
+        delta.getByStatus().forEach((status, count) -> {
+            if (count != 0) {
+                byStatus.put(status, FieldValue.increment(count));
+            }
+        });
+        if (!byStatus.isEmpty()) {
+            data.put("byStatus", byStatus);
+        }
+        Timestamp last = stored.exists() ? stored.getTimestamp("lastCollection") : null;
+        if (delta.getLastCollection() != null && (last == null || delta.getLastCollection().compareTo(last) > 0)) {
+            data.put("lastCollection", delta.getLastCollection());
+        }
+        if (data.isEmpty()) {
+            return null;
+        }
+        data.put("updatedAt", FieldValue.serverTimestamp());
+        return data;
+    }
+
+    @Override
+    public CollectionStats aggregate(CollectionFilter filter) throws ExecutionException, InterruptedException {
+        return aggregateAsync(filter).get();
+    }
+
+    @Override
+    public CompletableFuture<CollectionStats> aggregateAsync(CollectionFilter filter) {
+        return scan(toQuery(filter));
+    }
+
+    // Pages of ecotrack.stats.page-size
+    @Override
+    public CompletableFuture<CollectionStats> aggregatePagedAsync(CollectionFilter filter) {
+        Query paged = toQuery(filter).select(CollectionRecordDecoder.STATS_FIELDS);
+        return scanPaged(paged, paged.limit(pageSize), new CollectionStats());
+    }
+
+    // Only worth sharding open-ended scans; a driver's day or a bounded range stays one query
+    @Override
+    public CompletableFuture<CollectionStats> aggregateShardedAsync(CollectionFilter filter) {
+        if (filter.getDriverId() == null && filter.getFrom() == null && filter.getTo() == null) {
+            return aggregateSharded(toQuery(filter));
+        }
+        return aggregateAsync(filter);
+    }
+
+    @Override
+    public void forEach(CollectionFilter filter, Consumer<CollectionRecord> consumer) throws ExecutionException, InterruptedException {
+        forEachAsync(filter, consumer).get();
+    }
+
+    @Override
+    public CompletableFuture<Void> forEachAsync(CollectionFilter filter, Consumer<CollectionRecord> consumer) {
+        Query query = toQuery(filter).select(CollectionRecordDecoder.SUMMARY_FIELDS);
+        return visitPaged(query, query.limit(pageSize), consumer);
+    }
+
+    private Query toQuery(CollectionFilter filter) {
+        Query query = firestore.collection("collections");
+        if (filter.getDriverId() != null) {
+            query = query.whereEqualTo("driverId", filter.getDriverId());
+        }
+        if (filter.getBarangay() != null) {
+            query = query.whereEqualTo("barangay", filter.getBarangay());
+        }
+        if (filter.getCollectionType() != null) {
+            query = query.whereEqualTo("collectionType", filter.getCollectionType());
+        }
+        if (filter.getStatus() != null) {
+            query = query.whereEqualTo("status", filter.getStatus());
+        }
+        if (filter.getFrom() != null) {
+            query = query.whereGreaterThanOrEqualTo("collectionDate", filter.getFrom());
+        }
+        if (filter.getTo() != null) {
+            query = query.whereLessThan("collectionDate", filter.getTo());
+        }
+        return query;
+    }
+
+    // Download every matching record (only the fields the stats need) and aggregate in one pass.
+    // Folding a large result is real work, so it runs on the stats pool rather than Firestore's callback thread.
+    private CompletableFuture<CollectionStats> scan(Query query) {
+        return run(query.select(CollectionRecordDecoder.STATS_FIELDS)).thenApplyAsync(this::fold, statsExecutor);
+    }
+
+    // Walk the query one page at a time, folding each page into the totals before asking for the next,
+    // so only a single page of snapshots is ever held in memory
+    private CompletableFuture<CollectionStats> scanPaged(Query query, Query page, CollectionStats stats) {
+        return run(page).thenCompose(snapshot -> {
+            List<QueryDocumentSnapshot> documents = snapshot.getDocuments();
+            for (QueryDocumentSnapshot document : documents) {
+                CollectionRecordDecoder.fold(stats, document);
+            }
+            if (documents.size() < pageSize) {
+                return CompletableFuture.completedFuture(stats);
+            }
+            // startAfter orders by the query's inequality field (if any) and then document ID
+            return scanPaged(query, query.startAfter(documents.get(documents.size() - 1)).limit(pageSize), stats);
+        });
+    }
+
+    // As scanPaged, handing each decoded record to the consumer
+    private CompletableFuture<Void> visitPaged(Query query, Query page, Consumer<CollectionRecord> consumer) {
+        return run(page).thenCompose(snapshot -> {
+            List<QueryDocumentSnapshot> documents = snapshot.getDocuments();
+            for (QueryDocumentSnapshot document : documents) {
+                consumer.accept(CollectionRecordDecoder.decode(document));
+            }
+            if (documents.size() < pageSize) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            return visitPaged(query, query.startAfter(documents.get(documents.size() - 1)).limit(pageSize), consumer);
+        });
+    }
+
+    // Split the query into disjoint collectionDate ranges, run them concurrently and merge the partial results.
+    // The number of shards follows the date span: one per ecotrack.stats.shard-span-days, up to max-shards.
+    private CompletableFuture<CollectionStats> aggregateSharded(Query query) {
+        // Nulls sort before timestamps, so bound the probe queries to real dates
+        Query dated = query.whereGreaterThanOrEqualTo("collectionDate", Timestamp.MIN_VALUE).select("collectionDate");
+        CompletableFuture<QuerySnapshot> firstFuture = run(dated.orderBy("collectionDate").limit(1));
+        CompletableFuture<QuerySnapshot> lastFuture = run(dated.orderBy("collectionDate", Query.Direction.DESCENDING).limit(1));
+        return firstFuture.thenCombine(lastFuture, (first, last) -> aggregateShards(query, first.getDocuments(), last.getDocuments()))
+                .thenCompose(stats -> stats);
+    }
+
+    private CompletableFuture<CollectionStats> aggregateShards(Query query, List<QueryDocumentSnapshot> first, List<QueryDocumentSnapshot> last) {
+        if (first.isEmpty() || last.isEmpty()) {
+            return scan(query);
+        }
+
+        long min = first.get(0).getTimestamp("collectionDate").toDate().getTime();
+        long max = last.get(0).getTimestamp("collectionDate").toDate().getTime() + 1; // exclusive upper bound
+        int shards = (int) Math.min(maxShards, Math.max(1, (max - min + shardSpanMillis - 1) / shardSpanMillis));
+        long step = (max - min + shards - 1) / shards;
+
+        List<CompletableFuture<CollectionStats>> partials = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            long from = min + i * step;
+            long to = i == shards - 1 ? max : Math.min(max, from + step);
+            Query shard = query
+                    .whereGreaterThanOrEqualTo("collectionDate", Timestamp.ofTimeMicroseconds(from * 1000))
+                    .whereLessThan("collectionDate", Timestamp.ofTimeMicroseconds(to * 1000));
+            partials.add(run(shard.select(CollectionRecordDecoder.STATS_FIELDS)).thenApplyAsync(this::fold, statsExecutor));
+        }
+        // Range filters skip records stored without a date, so pick those up separately
+        Query undated = query.whereEqualTo("collectionDate", null).select(CollectionRecordDecoder.STATS_FIELDS);
+        partials.add(run(undated).thenApplyAsync(this::fold, statsExecutor));
+
+        return CompletableFuture.allOf(partials.toArray(new CompletableFuture[0])).thenApply(done -> {
+            CollectionStats stats = new CollectionStats();
+            for (CompletableFuture<CollectionStats> partial : partials) {
+                stats.merge(partial.join());
+            }
+            return stats;
+        });
+    }
+
+    private CompletableFuture<QuerySnapshot> run(Query query) {
+        return Futures.toCompletable(firestoreMetrics.record("collections", "query", query.get()));
+    }
+
+    private CollectionStats fold(QuerySnapshot snapshot) {
+        CollectionStats partial = new CollectionStats();
+        for (QueryDocumentSnapshot document : snapshot.getDocuments()) {
+            CollectionRecordDecoder.fold(partial, document);
+        }
+        return partial;
+    }
+}
@@ -0,0 +1,563 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.config.FirestoreMetrics;
+import com.capstone.EcoTrack.model.User;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.firestore.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+// Users in the Firestore "users" collection. Emails and usernames are unique through index documents
+// user_emails/{normalized email} and usernames/{username} holding the owner's userId, written in the same
+// transaction as the user, so lookups are direct gets and two sign-ups cannot claim the same email.
+// Users created before the indexes existed are indexed by backfillIndexes() (POST /api/users/indexes/backfill),
+// which records its completion in app_meta/user_index_backfill. Until that marker exists, lookups that miss the
+// index fall back to a query.
+@Repository
+@Profile("!embedded")
+public class FirestoreUserRepository implements UserRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(FirestoreUserRepository.class);
+    private static final String USERS = "users";
+    private static final String EMAILS = "user_emails";
+    private static final String USERNAMES = "usernames";
+    private static final FieldMask IDENTIFIERS = FieldMask.of("email", "username");
+    private static final FieldMask VERSION_ONLY = FieldMask.of("userId"); // the update time comes with any read
+    private static final String META = "app_meta";
+    private static final String BACKFILL_MARKER = "user_index_backfill";
+    private static final int BACKFILL_PAGE = 500;
+
+    private final Firestore firestore;
+    private final FirestoreMetrics firestoreMetrics;
+    private final int updateAttempts;
+    private volatile boolean indexComplete;
+
+    @Autowired
+    public FirestoreUserRepository(Firestore firestore, FirestoreMetrics firestoreMetrics,
+                                   @Value("${ecotrack.users.update-attempts:5}") int updateAttempts) {
+        if (updateAttempts <= 0) {
+            throw new IllegalArgumentException("ecotrack.users.update-attempts must be positive");
+        }
+        this.firestore = firestore;
+        this.updateAttempts = updateAttempts;
+        this.firestoreMetrics = firestoreMetrics;
+        // Until the backfill marker has been read, misses fall back to queries
+        this.indexComplete = false;
+    }
+
+    @Override
+    public String newId() {
+        return firestore.collection(USERS).document().getId();
+    }
+
+    @Override
+    public User findById(String userId) throws ExecutionException, InterruptedException {
+        return findByIdAsync(userId).get();
+    }
+
+    @Override
+    public User findByEmail(String email) throws ExecutionException, InterruptedException {
+        return findByEmailAsync(email).get();
+    }
+
+    @Override
+    public User findByUsername(String username) throws ExecutionException, InterruptedException {
+        return lookup(usernameRef(username), USERNAMES, "username", username).get();
+    }
+
+    @Override
+    public User findByEmailOrUsername(String identifier) throws ExecutionException, InterruptedException {
+        return findByEmailOrUsernameAsync(identifier).get();
+    }
+
+    @Override
+    public CompletableFuture<User> findByIdAsync(String userId) {
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "get", firestore.collection(USERS).document(userId).get()))
+                .thenApply(document -> document.exists() ? document.toObject(User.class) : null);
+    }
+
+    @Override
+    public CompletableFuture<Versioned<User>> findVersionedAsync(String userId) {
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "get", firestore.collection(USERS).document(userId).get()))
+                .thenApply(document -> document.exists()
+                        ? new Versioned<>(document.toObject(User.class), Versioned.versionOf(document.getUpdateTime()))
+                        : null);
+    }
+
+    @Override
+    public CompletableFuture<Long> findVersionAsync(String userId) {
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "get", firestore.collection(USERS).document(userId).get(VERSION_ONLY)))
+                .thenApply(document -> document.exists() ? Versioned.versionOf(document.getUpdateTime()) : null);
+    }
+
+    @Override
+    public CompletableFuture<User> findByEmailAsync(String email) {
+        return lookup(emailRef(email), EMAILS, "email", email);
+    }
+
+    @Override
+    public CompletableFuture<User> findByEmailOrUsernameAsync(String identifier) {
+        DocumentReference emailRef = emailRef(identifier);
+        DocumentReference usernameRef = usernameRef(identifier);
+        if (emailRef == null || usernameRef == null) {
+            return emailRef == null
+                    ? lookup(usernameRef, USERNAMES, "username", identifier)
+                    : lookup(emailRef, EMAILS, "email", identifier);
+        }
+        // Both index documents in one round trip
+        return Futures.toCompletable(firestoreMetrics.record(EMAILS, "getAll", firestore.getAll(emailRef, usernameRef)))
+                .thenCompose(indexes -> {
+                    DocumentSnapshot match = null;
+                    for (DocumentSnapshot index : indexes) {
+                        if (index.exists() && (match == null || index.getReference().equals(emailRef))) {
+                            match = index;
+                        }
+                    }
+                    if (match != null) {
+                        return findByIdAsync(match.getString("userId"));
+                    }
+                    if (indexComplete) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    // Not indexed yet: run both queries at once, an email match wins
+                    CompletableFuture<User> byEmail = findFirst("email", identifier);
+                    CompletableFuture<User> byUsername = findFirst("username", identifier);
+                    return byEmail.thenCombine(byUsername, (email, username) -> email != null ? email : username);
+                });
+    }
+
+    @Override
+    public void create(User user) throws ExecutionException, InterruptedException {
+        await(createAsync(user));
+    }
+
+    @Override
+    public CompletableFuture<Void> createAsync(User user) {
+        user.setEmail(UserRepository.normalizeEmail(user.getEmail())); // stored as indexed, so queries match too
+        DocumentReference userRef = firestore.collection(USERS).document(user.getUserId());
+        DocumentReference emailRef = emailRef(user.getEmail());
+        DocumentReference usernameRef = usernameRef(user.getUsername());
+
+        return runTransactionAsync(transaction -> {
+            // Firestore transactions must do all their reads before any write
+            if (taken(transaction, emailRef, "email", user.getEmail(), user.getUserId())) {
+                throw new DuplicateValueException("email");
+            }
+            if (taken(transaction, usernameRef, "username", user.getUsername(), user.getUserId())) {
+                throw new DuplicateValueException("username");
+            }
+            claim(transaction, emailRef, user.getUserId());
+            claim(transaction, usernameRef, user.getUserId());
+            transaction.create(userRef, user);
+            return null;
+        });
+    }
+
+    @Override
+    public void save(User user) throws ExecutionException, InterruptedException {
+        firestoreMetrics.record(USERS, "set", firestore.collection(USERS).document(user.getUserId()).set(user)).get();
+    }
+
+    @Override
+    public boolean update(String userId, Map<String, Object> updates) throws ExecutionException, InterruptedException {
+        return updateAsync(userId, updates).get();
+    }
+
+    // update() requires the document to exist, so a missing user costs no extra read
+    @Override
+    public CompletableFuture<Boolean> updateAsync(String userId, Map<String, Object> updates) {
+        UserRepository.checkUpdatable(updates);
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "update", firestore.collection(USERS).document(userId).update(updates)))
+                .handle((result, error) -> {
+                    if (error == null) {
+                        return true;
+                    }
+                    if (failedWith(error, StatusCode.Code.NOT_FOUND)) {
+                        return false;
+                    }
+                    throw new CompletionException(Futures.unwrap(error));
+                });
+    }
+
+    // Masked read, then an update preconditioned on the update time of that read: Firestore rejects it
+    // with FAILED_PRECONDITION if anything wrote the user in between, and we start over
+    @Override
+    public User updateChecked(String userId, List<String> fields, Change change) throws ExecutionException, InterruptedException {
+        DocumentReference userRef = firestore.collection(USERS).document(userId);
+        FieldMask mask = FieldMask.of(fields.toArray(new String[0]));
+
+        for (int attempt = 0; attempt < updateAttempts; attempt++) {
+            DocumentSnapshot existing = firestoreMetrics.record(USERS, "get", userRef.get(mask)).get();
+            if (!existing.exists()) {
+                return null;
+            }
+            User current = existing.toObject(User.class);
+            Map<String, Object> updates = change.apply(current);
+            UserRepository.checkUpdatable(updates);
+            try {
+                firestoreMetrics.record(USERS, "update", userRef.update(updates, Precondition.updatedAt(existing.getUpdateTime()))).get();
+                return current;
+            } catch (ExecutionException e) {
+                if (!failedWith(e, StatusCode.Code.FAILED_PRECONDITION)) {
+                    throw e;
+                }
+            }
+        }
+        throw new IllegalStateException("User " + userId + " kept changing; gave up after " + updateAttempts + " attempts");
+    }
+
+    // As updateChecked, chaining the attempts instead of waiting on each read and write
+    @Override
+    public CompletableFuture<User> updateCheckedAsync(String userId, List<String> fields, AsyncChange change) {
+        DocumentReference userRef = firestore.collection(USERS).document(userId);
+        return updateCheckedAsync(userRef, FieldMask.of(fields.toArray(new String[0])), change, 0);
+    }
+
+    private CompletableFuture<User> updateCheckedAsync(DocumentReference userRef, FieldMask mask, AsyncChange change, int attempt) {
+        if (attempt == updateAttempts) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "User " + userRef.getId() + " kept changing; gave up after " + updateAttempts + " attempts"));
+        }
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "get", userRef.get(mask)))
+                .thenCompose(existing -> {
+                    if (!existing.exists()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    User current = existing.toObject(User.class);
+                    return change.apply(current).thenCompose(updates -> {
+                        UserRepository.checkUpdatable(updates);
+                        return Futures.toCompletable(firestoreMetrics.record(USERS, "update",
+                                        userRef.update(updates, Precondition.updatedAt(existing.getUpdateTime()))))
+                                .handle((result, error) -> {
+                                    if (error == null) {
+                                        return CompletableFuture.completedFuture(current);
+                                    }
+                                    if (failedWith(error, StatusCode.Code.FAILED_PRECONDITION)) {
+                                        return updateCheckedAsync(userRef, mask, change, attempt + 1);
+                                    }
+                                    return CompletableFuture.<User>failedFuture(Futures.unwrap(error));
+                                })
+                                .thenCompose(next -> next);
+                    });
+                });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateIfAsync(String userId, List<String> fields, Predicate<User> condition,
+                                                    Map<String, Object> updates) {
+        UserRepository.checkUpdatable(updates);
+        DocumentReference userRef = firestore.collection(USERS).document(userId);
+        FieldMask mask = FieldMask.of(fields.toArray(new String[0]));
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "get", userRef.get(mask)))
+                .thenCompose(existing -> {
+                    if (!existing.exists() || !condition.test(existing.toObject(User.class))) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return Futures.toCompletable(firestoreMetrics.record(USERS, "update",
+                                    userRef.update(updates, Precondition.updatedAt(existing.getUpdateTime()))))
+                            .handle((result, error) -> {
+                                if (error == null) {
+                                    return true;
+                                }
+                                if (failedWith(error, StatusCode.Code.FAILED_PRECONDITION) || failedWith(error, StatusCode.Code.NOT_FOUND)) {
+                                    return false;
+                                }
+                                throw new CompletionException(Futures.unwrap(error));
+                            });
+                });
+    }
+
+    @Override
+    public User changeEmail(String userId, String newEmail) throws ExecutionException, InterruptedException {
+        return await(changeEmailAsync(userId, newEmail));
+    }
+
+    @Override
+    public CompletableFuture<User> changeEmailAsync(String userId, String newEmail) {
+        DocumentReference userRef = firestore.collection(USERS).document(userId);
+        DocumentReference newRef = emailRef(newEmail);
+        if (newRef == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Email must not be empty"));
+        }
+
+        return runTransactionAsync(transaction -> {
+            DocumentSnapshot existing = getIdentifiers(transaction, userRef);
+            if (!existing.exists()) {
+                return null;
+            }
+            User previous = existing.toObject(User.class);
+            if (taken(transaction, newRef, "email", newEmail, userId)) {
+                throw new DuplicateValueException("email");
+            }
+            DocumentReference oldRef = emailRef(previous.getEmail());
+            boolean releaseOld = oldRef != null && !oldRef.equals(newRef) && owns(transaction, oldRef, userId);
+
+            if (releaseOld) {
+                transaction.delete(oldRef);
+            }
+            claim(transaction, newRef, userId);
+            transaction.update(userRef, "email", UserRepository.normalizeEmail(newEmail));
+            return previous;
+        });
+    }
+
+    @Override
+    public User delete(String userId) throws ExecutionException, InterruptedException {
+        DocumentReference userRef = firestore.collection(USERS).document(userId);
+
+        return runTransaction(transaction -> {
+            DocumentSnapshot existing = getIdentifiers(transaction, userRef);
+            if (!existing.exists()) {
+                return null;
+            }
+            User previous = existing.toObject(User.class);
+            DocumentReference emailRef = emailRef(previous.getEmail());
+            DocumentReference usernameRef = usernameRef(previous.getUsername());
+            boolean releaseEmail = emailRef != null && owns(transaction, emailRef, userId);
+            boolean releaseUsername = usernameRef != null && owns(transaction, usernameRef, userId);
+
+            if (releaseEmail) {
+                transaction.delete(emailRef);
+            }
+            if (releaseUsername) {
+                transaction.delete(usernameRef);
+            }
+            transaction.delete(userRef);
+            return previous;
+        });
+    }
+
+    // Create the missing index documents for users stored before the indexes existed, a page at a time, and
+    // store mixed-case emails in their normalized form so the fallback query matches the index keys. Users whose
+    // email or username is already claimed by someone else are reported and left unindexed. Only a pass
+    // without such conflicts writes the completion marker; resolve them and run it again otherwise.
+    public Map<String, Object> backfillIndexes() throws ExecutionException, InterruptedException {
+        Query query = firestore.collection(USERS).select("email", "username").orderBy(FieldPath.documentId());
+        int indexed = 0;
+        List<String> conflicted = new ArrayList<>();
+        List<QueryDocumentSnapshot> documents;
+        Query page = query.limit(BACKFILL_PAGE);
+        do {
+            documents = firestoreMetrics.record(USERS, "query", page.get()).get().getDocuments();
+            for (QueryDocumentSnapshot document : documents) {
+                List<String> conflicts = backfill(document);
+                if (conflicts.isEmpty()) {
+                    indexed++;
+                } else {
+                    conflicted.add(document.getId());
+                    log.warn("User {} shares its {} with another user; not indexed", document.getId(), String.join(" and ", conflicts));
+                }
+            }
+            if (!documents.isEmpty()) {
+                page = query.startAfter(documents.get(documents.size() - 1)).limit(BACKFILL_PAGE);
+            }
+        } while (documents.size() == BACKFILL_PAGE);
+
+        if (conflicted.isEmpty()) {
+            Map<String, Object> marker = new HashMap<>();
+            marker.put("completedAt", FieldValue.serverTimestamp());
+            marker.put("indexed", indexed);
+            firestoreMetrics.record(META, "set", firestore.collection(META).document(BACKFILL_MARKER).set(marker)).get();
+            indexComplete = true;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("indexed", indexed);
+        report.put("conflicts", conflicted);
+        report.put("complete", conflicted.isEmpty());
+        return report;
+    }
+
+    private List<String> backfill(QueryDocumentSnapshot document) throws ExecutionException, InterruptedException {
+        String userId = document.getId();
+        String email = document.getString("email");
+        String normalized = UserRepository.normalizeEmail(email);
+        DocumentReference emailRef = emailRef(email);
+        DocumentReference usernameRef = usernameRef(document.getString("username"));
+
+        return runTransaction(transaction -> {
+            DocumentSnapshot emailIndex = emailRef == null ? null : transaction.get(emailRef).get();
+            DocumentSnapshot usernameIndex = usernameRef == null ? null : transaction.get(usernameRef).get();
+
+            List<String> clashes = new ArrayList<>();
+            if (emailIndex != null && emailIndex.exists() && !userId.equals(emailIndex.getString("userId"))) {
+                clashes.add("email");
+            } else if (emailIndex != null) {
+                if (!emailIndex.exists()) {
+                    claim(transaction, emailRef, userId);
+                }
+                if (!normalized.equals(email)) {
+                    transaction.update(document.getReference(), "email", normalized);
+                }
+            }
+            if (usernameIndex != null && usernameIndex.exists() && !userId.equals(usernameIndex.getString("userId"))) {
+                clashes.add("username");
+            } else if (usernameIndex != null && !usernameIndex.exists()) {
+                claim(transaction, usernameRef, userId);
+            }
+            return clashes;
+        });
+    }
+
+    // Trust the indexes once the backfill marker exists. Checked at startup and then every minute until it
+    // shows up, so a backfill run through another instance is picked up here too.
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${ecotrack.users.index-marker-check-ms:60000}", initialDelayString = "${ecotrack.users.index-marker-check-ms:60000}")
+    public void checkBackfillMarker() {
+        if (indexComplete) {
+            return;
+        }
+        try {
+            DocumentSnapshot marker = firestoreMetrics.record(META, "get", firestore.collection(META).document(BACKFILL_MARKER).get()).get();
+            indexComplete = marker.exists();
+            if (!indexComplete) {
+                log.info("User indexes not backfilled yet; lookups fall back to queries until POST /api/users/indexes/backfill has run");
+            }
+        } catch (ExecutionException | InterruptedException e) {
+            log.error("Could not read the user index backfill marker", e);
+        }
+    }
+
+    // Taken if the index document belongs to another user or, until the backfill has finished,
+    // if another (not yet indexed) user document has the value
+    private boolean taken(Transaction transaction, DocumentReference ref, String field, String value, String userId)
+            throws ExecutionException, InterruptedException {
+        if (ref == null) {
+            return false;
+        }
+        DocumentSnapshot index = transaction.get(ref).get();
+        if (index.exists()) {
+            return !userId.equals(index.getString("userId"));
+        }
+        if (indexComplete) {
+            return false;
+        }
+        Query query = byIdentifier(field, value).limit(2);
+        for (QueryDocumentSnapshot document : transaction.get(query).get().getDocuments()) {
+            if (!userId.equals(document.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean owns(Transaction transaction, DocumentReference ref, String userId)
+            throws ExecutionException, InterruptedException {
+        DocumentSnapshot index = transaction.get(ref).get();
+        return index.exists() && userId.equals(index.getString("userId"));
+    }
+
+    private void claim(Transaction transaction, DocumentReference ref, String userId) {
+        if (ref != null) {
+            transaction.set(ref, Collections.singletonMap("userId", userId));
+        }
+    }
+
+    // Only the fields the uniqueness indexes need, not the whole profile
+    private static DocumentSnapshot getIdentifiers(Transaction transaction, DocumentReference userRef)
+            throws ExecutionException, InterruptedException {
+        return transaction.getAll(new DocumentReference[]{userRef}, IDENTIFIERS).get().get(0);
+    }
+
+    // Whether a Firestore call failed with the given gRPC status, however the client wrapped it
+    private static boolean failedWith(Throwable error, StatusCode.Code code) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException && ((ApiException) cause).getStatusCode().getCode() == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <T> T runTransaction(Transaction.Function<T> function) throws ExecutionException, InterruptedException {
+        return await(runTransactionAsync(function));
+    }
+
+    private <T> CompletableFuture<T> runTransactionAsync(Transaction.Function<T> function) {
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "transaction", firestore.runTransaction(function)));
+    }
+
+    // Wait for a transaction, throwing the IllegalArgumentException (e.g. DuplicateValueException) it failed with as is
+    private static <T> T await(CompletableFuture<T> future) throws ExecutionException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private DocumentReference emailRef(String email) {
+        String normalized = UserRepository.normalizeEmail(email);
+        return normalized == null || normalized.isEmpty() ? null : firestore.collection(EMAILS).document(documentId(normalized));
+    }
+
+    private DocumentReference usernameRef(String username) {
+        return username == null || username.isEmpty() ? null : firestore.collection(USERNAMES).document(documentId(username));
+    }
+
+    // Document IDs cannot contain '/', be "." or "..", or look like __name__
+    private static String documentId(String value) {
+        String id = URLEncoder.encode(value, StandardCharsets.UTF_8);
+        if (id.startsWith("_")) {
+            id = "%5F" + id.substring(1);
+        }
+        return id.equals(".") || id.equals("..") ? id.replace(".", "%2E") : id;
+    }
+
+    // Index document, then the user it points to; queries instead on a miss until the backfill has finished
+    private CompletableFuture<User> lookup(DocumentReference ref, String collection, String field, String value) {
+        if (ref == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return Futures.toCompletable(firestoreMetrics.record(collection, "get", ref.get()))
+                .thenCompose(index -> {
+                    if (index.exists()) {
+                        return findByIdAsync(index.getString("userId"));
+                    }
+                    return indexComplete ? CompletableFuture.<User>completedFuture(null) : findFirst(field, value);
+                });
+    }
+
+    private CompletableFuture<User> findFirst(String field, String value) {
+        Query query = byIdentifier(field, value).limit(1);
+        return Futures.toCompletable(firestoreMetrics.record(USERS, "query", query.get()))
+                .thenApply(snapshot -> snapshot.isEmpty() ? null : snapshot.getDocuments().get(0).toObject(User.class));
+    }
+
+    // Emails are indexed normalized and stored normalized since the indexes exist; users not backfilled yet may
+    // still have the address as typed, so match both forms
+    private Query byIdentifier(String field, String value) {
+        if (!"email".equals(field)) {
+            return firestore.collection(USERS).whereEqualTo(field, value);
+        }
+        String normalized = UserRepository.normalizeEmail(value);
+        return normalized.equals(value)
+                ? firestore.collection(USERS).whereEqualTo(field, value)
+                : firestore.collection(USERS).whereIn(field, Arrays.asList(value, normalized));
+    }
+}
@@ -0,0 +1,80 @@
+package com.capstone.EcoTrack.repository;
+
+import com.google.cloud.Timestamp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Where a driver's delta sync stands, carried by clients as an opaque token. Two phases:
+//   full  - first download: every record of the driver by document ID, after afterId; startedAt is the
+//           read time of the first page, and the changes after it are fetched once the pass is done
+//   delta - changes (writes and deletions) with a change time after `since`; afterTime/afterId continue
+//           a delta that did not fit on one page
+public final class SyncCursor {
+
+    private static final String VERSION = "1";
+
+    private final boolean full;
+    private final String driverId;
+    private final Timestamp since;     // full: startedAt
+    private final Timestamp afterTime; // delta page cursor, or null
+    private final String afterId;      // page cursor, or null
+
+    private SyncCursor(boolean full, String driverId, Timestamp since, Timestamp afterTime, String afterId) {
+        this.full = full;
+        this.driverId = driverId;
+        this.since = since;
+        this.afterTime = afterTime;
+        this.afterId = afterId;
+    }
+
+    public static SyncCursor full(String driverId, Timestamp startedAt, String afterId) {
+        return new SyncCursor(true, driverId, startedAt, null, afterId);
+    }
+
+    public static SyncCursor delta(String driverId, Timestamp since, Timestamp afterTime, String afterId) {
+        return new SyncCursor(false, driverId, since, afterTime, afterId);
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public Timestamp getSince() {
+        return since;
+    }
+
+    public Timestamp getAfterTime() {
+        return afterTime;
+    }
+
+    public String getAfterId() {
+        return afterId;
+    }
+
+    // URL-safe token; the driver ID is kept so a token cannot be replayed for another driver
+    public String encode() {
+        String plain = String.join("\n", VERSION, full ? "F" : "D", driverId, since.toString(),
+                afterTime == null ? "" : afterTime.toString(), afterId == null ? "" : afterId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Throws IllegalArgumentException for anything that is not a token from encode()
+    public static SyncCursor decode(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\n", -1);
+            if (parts.length != 6 || !VERSION.equals(parts[0]) || !(parts[1].equals("F") || parts[1].equals("D"))) {
+                throw new IllegalArgumentException("Invalid sync token");
+            }
+            return new SyncCursor(parts[1].equals("F"), parts[2], Timestamp.parseTimestamp(parts[3]),
+                    parts[4].isEmpty() ? null : Timestamp.parseTimestamp(parts[4]),
+                    parts[5].isEmpty() ? null : parts[5]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid sync token", e);
+        }
+    }
+}
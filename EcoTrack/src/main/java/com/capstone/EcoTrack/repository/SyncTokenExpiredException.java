@@ -0,0 +1,10 @@
+package com.capstone.EcoTrack.repository;
+
+// The sync token is older than the tombstones are kept, so deletions could be missed; the caller should
+// answer 410 and the client start over with a full download
+public class SyncTokenExpiredException extends RuntimeException {
+
+    public SyncTokenExpiredException() {
+        super("Sync token has expired, start over without a token");
+    }
+}
@@ -0,0 +1,116 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.User;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+// Storage for user accounts; lookups return null when nothing matches.
+// Emails (compared case-insensitively) and usernames are unique: only create, changeEmail and delete
+// may touch them, so the stores can keep their uniqueness indexes in step.
+public interface UserRepository {
+
+    // Reserve an ID for a user that has not been saved yet
+    String newId();
+
+    User findById(String userId) throws ExecutionException, InterruptedException;
+
+    User findByEmail(String email) throws ExecutionException, InterruptedException;
+
+    User findByUsername(String username) throws ExecutionException, InterruptedException;
+
+    // Email match first, then username
+    User findByEmailOrUsername(String identifier) throws ExecutionException, InterruptedException;
+
+    // Non-blocking variants of the lookups above. The defaults suit stores that answer from memory.
+    default CompletableFuture<User> findByIdAsync(String userId) {
+        return Futures.completed(() -> findById(userId));
+    }
+
+    default CompletableFuture<User> findByEmailAsync(String email) {
+        return Futures.completed(() -> findByEmail(email));
+    }
+
+    default CompletableFuture<User> findByEmailOrUsernameAsync(String identifier) {
+        return Futures.completed(() -> findByEmailOrUsername(identifier));
+    }
+
+    // The user together with the version it was read at, or null
+    CompletableFuture<Versioned<User>> findVersionedAsync(String userId);
+
+    // Just the current version of the user, without reading its fields, or null if it does not exist
+    CompletableFuture<Long> findVersionAsync(String userId);
+
+    // Store a new user under user.getUserId(); throws DuplicateValueException if the email or username is taken
+    void create(User user) throws ExecutionException, InterruptedException;
+
+    // Non-blocking create, failing with DuplicateValueException the same way
+    default CompletableFuture<Void> createAsync(User user) {
+        return Futures.completed(() -> {
+            create(user);
+            return null;
+        });
+    }
+
+    // Replace the whole user document under user.getUserId(), keeping its email and username
+    void save(User user) throws ExecutionException, InterruptedException;
+
+    // Overwrite only the given top-level fields (not email or username) without reading the user first;
+    // returns false if the user does not exist
+    boolean update(String userId, Map<String, Object> updates) throws ExecutionException, InterruptedException;
+
+    default CompletableFuture<Boolean> updateAsync(String userId, Map<String, Object> updates) {
+        return Futures.completed(() -> update(userId, updates));
+    }
+
+    // Read-modify-write of a few fields: read only `fields`, let the change compute the updates from them and
+    // write those only if the user has not been written since the read, re-reading and retrying on conflict.
+    // Returns the user as read (only `fields` set) by the attempt that was written, or null if it does not
+    // exist. Anything the change throws propagates and nothing is written.
+    User updateChecked(String userId, List<String> fields, Change change) throws ExecutionException, InterruptedException;
+
+    // Non-blocking updateChecked, for changes that wait on something themselves (a password hash)
+    CompletableFuture<User> updateCheckedAsync(String userId, List<String> fields, AsyncChange change);
+
+    // Single-shot compare-and-set: read only `fields` and write the updates if the condition holds for them and
+    // nothing writes the user before the write lands. Completes with false, without retrying, when the user
+    // does not exist, the condition fails or the user was written in between.
+    CompletableFuture<Boolean> updateIfAsync(String userId, List<String> fields, Predicate<User> condition,
+                                             Map<String, Object> updates);
+
+    // Returns the user as it was before the change (stores may only read the email and username), or null
+    // if it does not exist; throws DuplicateValueException if another user has the email
+    User changeEmail(String userId, String newEmail) throws ExecutionException, InterruptedException;
+
+    default CompletableFuture<User> changeEmailAsync(String userId, String newEmail) {
+        return Futures.completed(() -> changeEmail(userId, newEmail));
+    }
+
+    // Returns the deleted user (stores may only read the email and username), or null if it did not exist
+    User delete(String userId) throws ExecutionException, InterruptedException;
+
+    // Updates to write given the current values of the fields asked for
+    @FunctionalInterface
+    interface Change {
+        Map<String, Object> apply(User current) throws ExecutionException, InterruptedException;
+    }
+
+    @FunctionalInterface
+    interface AsyncChange {
+        CompletableFuture<Map<String, Object>> apply(User current);
+    }
+
+    static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static void checkUpdatable(Map<String, Object> updates) {
+        if (updates.containsKey("email") || updates.containsKey("username")) {
+            throw new IllegalArgumentException("email and username cannot be changed with a field update");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.capstone.EcoTrack.repository;
+
+import com.google.cloud.Timestamp;
+
+// A stored value with the version it was read at. Every write to the value gives it a higher version:
+// Firestore's update time in microseconds, or the embedded store's row version.
+public final class Versioned<T> {
+
+    private final T value;
+    private final long version;
+
+    public Versioned(T value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Firestore update times have microsecond precision
+    public static long versionOf(Timestamp updateTime) {
+        return updateTime.getSeconds() * 1_000_000 + updateTime.getNanos() / 1_000;
+    }
+}
@@ -0,0 +1,34 @@
+package com.capstone.EcoTrack.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+// Request principal: the email as username, the role as authority, plus the user ID and saved time zone so
+// controllers can check ownership and pick the zone without looking the user up
+public class AuthenticatedUser extends User {
+
+    private final String userId;
+    private final String timeZone; // null when the user has not chosen one
+
+    public AuthenticatedUser(String userId, String email, String password, String timeZone,
+                             Collection<? extends GrantedAuthority> authorities) {
+        super(email, password, authorities);
+        this.userId = userId;
+        this.timeZone = timeZone;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    public boolean hasRole(String role) {
+        String authority = "ROLE_" + role;
+        return getAuthorities().stream().anyMatch(granted -> authority.equals(granted.getAuthority()));
+    }
+}
@@ -0,0 +1,426 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.repository.CollectionFilter;
+import com.capstone.EcoTrack.repository.CollectionRepository;
+import com.capstone.EcoTrack.repository.Versioned;
+import com.google.cloud.Timestamp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory column store of every collection record for the dashboard queries.
+// Each record is one row across primitive arrays; strings are dictionary encoded to int ids,
+// so a stats query is a tight loop over arrays instead of a repository scan.
+//
+// Writes through this instance are applied at once. Writes by other instances only show up with the
+// next reload (every ecotrack.stats.columnar.reload-ms), which reads every record into fresh columns
+// and swaps them in. Every row keeps the commit time of its last write: the record's updatedAt, which
+// the repository sets on every write it makes and loads carry too. Local writes made while a reload runs
+// are replayed onto the fresh columns before the swap, and a row only ever moves to a newer write, so a
+// reload cannot bring back an older version of a record or a deleted one. On a tie the row stays: it
+// holds that very write, or what a reload read after it.
+@Service
+public class CollectionAnalyticsStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CollectionAnalyticsStore.class);
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int REMOVED = -1; // status id of a deleted row
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final CollectionRepository collectionRepository;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Columns columns = new Columns(); // replaced by each reload, under the write lock
+    private List<LocalWrite> replay; // local writes since the running reload started, or null
+
+    private volatile boolean loaded;
+    // Bumped by every change; the random prefix keeps other instances' (and earlier runs') counts apart
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+    private volatile long changes;
+
+    @Autowired
+    public CollectionAnalyticsStore(CollectionRepository collectionRepository,
+                                    @Value("${ecotrack.stats.mode:SCAN}") StatsMode statsMode) {
+        this.collectionRepository = collectionRepository;
+        this.enabled = statsMode == StatsMode.COLUMNAR;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Load every collection record once the application is up
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            load();
+            log.info("Loaded {} collection records into the analytics store", columns.size);
+        } catch (ExecutionException | InterruptedException e) {
+            log.error("Error loading analytics store, falling back to queries", e);
+        }
+    }
+
+    // Pick up other instances' writes; a full read of the collection, so keep the interval long
+    @Scheduled(fixedDelayString = "${ecotrack.stats.columnar.reload-ms:600000}",
+            initialDelayString = "${ecotrack.stats.columnar.reload-ms:600000}")
+    public void scheduledReload() {
+        if (!enabled || !loaded) {
+            return;
+        }
+        try {
+            load();
+        } catch (ExecutionException | InterruptedException e) {
+            log.error("Error reloading analytics store, keeping the previous load", e);
+        }
+    }
+
+    // Read every record into fresh columns, outside the lock, and swap them in
+    public void load() throws ExecutionException, InterruptedException {
+        lock.writeLock().lock();
+        try {
+            if (replay != null) {
+                return; // another load is running
+            }
+            replay = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Columns fresh = new Columns();
+        try {
+            collectionRepository.forEach(CollectionFilter.all(), record -> {
+                if (record.getRecordId() != null) {
+                    fresh.upsert(record.getRecordId(), record, versionOf(record.getUpdatedAt()));
+                }
+            });
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                replay = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        // Replay and swap under one lock, so no local write falls in between
+        lock.writeLock().lock();
+        try {
+            for (LocalWrite write : replay) {
+                if (write.record == null) {
+                    fresh.remove(write.recordId, write.version);
+                } else {
+                    fresh.upsert(write.recordId, write.record, write.version);
+                }
+            }
+            replay = null;
+            columns = fresh;
+            changes++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loaded = true;
+    }
+
+    // Apply a newly written or changed record, as returned by the repository (updatedAt is the commit time)
+    public void upsert(CollectionRecord record) {
+        if (!enabled || record.getRecordId() == null) {
+            return;
+        }
+        write(new LocalWrite(record.getRecordId(), record, versionOf(record.getUpdatedAt())));
+    }
+
+    // Apply a removal committed at removedAt
+    public void remove(String recordId, Timestamp removedAt) {
+        if (!enabled) {
+            return;
+        }
+        write(new LocalWrite(recordId, null, versionOf(removedAt)));
+    }
+
+    // Changes whenever a stats answer may have changed
+    public String getVersion() {
+        return instanceId + "." + changes;
+    }
+
+    public CollectionStats getOverall() {
+        lock.readLock().lock();
+        try {
+            return columns.aggregate(-1, -1, NO_DATE, Long.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public CollectionStats getBarangay(String barangay) {
+        lock.readLock().lock();
+        try {
+            int id = columns.barangays.lookup(barangay);
+            return id < 0 ? new CollectionStats() : columns.aggregate(id, -1, NO_DATE, Long.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Collections of one driver with from <= collectionDate < to (epoch millis)
+    public CollectionStats getDriverRange(String driverId, long from, long to) {
+        lock.readLock().lock();
+        try {
+            int id = columns.drivers.lookup(driverId);
+            return id < 0 ? new CollectionStats() : columns.aggregate(-1, id, from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(LocalWrite write) {
+        lock.writeLock().lock();
+        try {
+            boolean changed = write.record == null
+                    ? columns.remove(write.recordId, write.version)
+                    : columns.upsert(write.recordId, write.record, write.version);
+            if (changed) {
+                changes++;
+            }
+            if (replay != null) {
+                replay.add(write);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Microseconds; a write whose time is unknown loses to any row already there
+    private static long versionOf(Timestamp updatedAt) {
+        return updatedAt == null ? 0 : Versioned.versionOf(updatedAt);
+    }
+
+    // A write through this instance, replayed onto the columns of a reload that was running meanwhile
+    private static final class LocalWrite {
+        private final String recordId;
+        private final CollectionRecord record; // null for a removal
+        private final long version;
+
+        private LocalWrite(String recordId, CollectionRecord record, long version) {
+            this.recordId = recordId;
+            this.record = record;
+            this.version = version;
+        }
+    }
+
+    // One load's rows; not thread-safe, guarded by the store's lock once swapped in
+    private static final class Columns {
+        private double[] weights = new double[INITIAL_CAPACITY];
+        private long[] collectionDates = new long[INITIAL_CAPACITY]; // epoch millis
+        private int[] barangayIds = new int[INITIAL_CAPACITY];
+        private int[] driverIds = new int[INITIAL_CAPACITY];
+        private int[] statusIds = new int[INITIAL_CAPACITY];
+        private int[] typeIds = new int[INITIAL_CAPACITY];
+        private long[] versions = new long[INITIAL_CAPACITY]; // when the row was last written, micros
+        private int size;
+
+        // Removed rows keep their entry, so a stale write cannot bring them back
+        private final RowIndex rowsByRecordId = new RowIndex();
+        private final Dictionary barangays = new Dictionary();
+        private final Dictionary drivers = new Dictionary();
+        private final Dictionary statuses = new Dictionary();
+        private final Dictionary types = new Dictionary();
+
+        // False when the row already holds a newer write
+        boolean upsert(String recordId, CollectionRecord record, long version) {
+            int row = rowsByRecordId.get(recordId);
+            if (row < 0) {
+                row = size++;
+                ensureCapacity(size);
+                rowsByRecordId.put(recordId, row);
+            } else if (versions[row] >= version) {
+                return false;
+            }
+
+            weights[row] = record.getWeight();
+            collectionDates[row] = record.getCollectionDate() == null ? NO_DATE : record.getCollectionDate().toDate().getTime();
+            barangayIds[row] = barangays.encode(record.getBarangay());
+            driverIds[row] = drivers.encode(record.getDriverId());
+            statusIds[row] = statuses.encode(record.getStatus());
+            typeIds[row] = types.encode(record.getCollectionType());
+            versions[row] = version;
+            return true;
+        }
+
+        boolean remove(String recordId, long version) {
+            int row = rowsByRecordId.get(recordId);
+            if (row < 0) {
+                // Not loaded yet; remember the removal in case the load still brings an older version
+                row = size++;
+                ensureCapacity(size);
+                rowsByRecordId.put(recordId, row);
+                barangayIds[row] = barangays.encode(null);
+                driverIds[row] = drivers.encode(null);
+            } else if (versions[row] >= version) {
+                return false;
+            }
+            statusIds[row] = REMOVED;
+            versions[row] = version;
+            return true;
+        }
+
+        // Single pass over the columns; barangayId/driverId of -1 mean "any"
+        CollectionStats aggregate(int barangayId, int driverId, long from, long to) {
+            int privateId = types.lookup("PRIVATE");
+            int completedId = statuses.lookup("COMPLETED");
+            CollectionStats stats = new CollectionStats();
+            if (privateId < 0 || completedId < 0) {
+                return stats;
+            }
+
+            int[] barangayCounts = new int[barangays.size()];
+            int[] driverCounts = new int[drivers.size()];
+            int total = 0;
+            double totalWeight = 0.0;
+
+            for (int row = 0; row < size; row++) {
+                if (statusIds[row] != completedId || typeIds[row] != privateId) {
+                    continue;
+                }
+                if (barangayId >= 0 && barangayIds[row] != barangayId) {
+                    continue;
+                }
+                if (driverId >= 0 && driverIds[row] != driverId) {
+                    continue;
+                }
+                long date = collectionDates[row];
+                if (date < from || date >= to) {
+                    continue;
+                }
+                total++;
+                totalWeight += weights[row];
+                barangayCounts[barangayIds[row]]++;
+                driverCounts[driverIds[row]]++;
+            }
+
+            stats.setTotalCollections(total);
+            stats.setTotalWeight(totalWeight);
+            barangays.decodeCounts(barangayCounts, stats.getBarangayBreakdown());
+            drivers.decodeCounts(driverCounts, stats.getDriverBreakdown());
+            return stats;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= weights.length) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, weights.length * 2);
+            weights = Arrays.copyOf(weights, newCapacity);
+            collectionDates = Arrays.copyOf(collectionDates, newCapacity);
+            barangayIds = Arrays.copyOf(barangayIds, newCapacity);
+            driverIds = Arrays.copyOf(driverIds, newCapacity);
+            statusIds = Arrays.copyOf(statusIds, newCapacity);
+            typeIds = Arrays.copyOf(typeIds, newCapacity);
+            versions = Arrays.copyOf(versions, newCapacity);
+        }
+    }
+
+    // Record ID -> row, open addressing with linear probing over parallel arrays: no boxed Integer or
+    // entry object per record. Entries are never removed.
+    private static final class RowIndex {
+        private String[] keys = new String[INITIAL_CAPACITY * 2];
+        private int[] rows = new int[INITIAL_CAPACITY * 2];
+        private int size;
+
+        int get(String key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot].equals(key)) {
+                    return rows[slot];
+                }
+            }
+            return -1;
+        }
+
+        // The key must not be in the index yet
+        void put(String key, int row) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            insert(keys, rows, key, row);
+            size++;
+        }
+
+        private void grow() {
+            String[] oldKeys = keys;
+            int[] oldRows = rows;
+            keys = new String[oldKeys.length * 2];
+            rows = new int[oldRows.length * 2];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != null) {
+                    insert(keys, rows, oldKeys[slot], oldRows[slot]);
+                }
+            }
+        }
+
+        private static void insert(String[] keys, int[] rows, String key, int row) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            rows[slot] = row;
+        }
+
+        // Spread the hash so IDs sharing low bits do not pile up
+        private static int hash(String key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // String <-> dense int id mapping; null is a regular value with its own id
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        int lookup(String value) {
+            Integer id = ids.get(value);
+            return id == null ? -1 : id;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        void decodeCounts(int[] counts, Map<String, Integer> target) {
+            for (int id = 0; id < counts.length; id++) {
+                if (counts[id] > 0) {
+                    target.put(values.get(id), counts[id]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.repository.CollectionRepository;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.cloud.Timestamp;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+// Bulk upload of collection records (end-of-day uploads from the trucks). The body is a JSON array read one
+// record at a time; valid records are written in chunks of ecotrack.collections.batch.chunk-size through
+// CollectionRepository.saveAll, so memory stays bounded however large the upload is. Every record gets a
+// line in the report: written, invalid, duplicate (its recordId appeared earlier in the upload) or failed.
+@Service
+@Timed(value = "ecotrack.collection.batch", description = "CollectionBatchService calls", percentiles = {0.5, 0.95, 0.99}, histogram = true)
+public class CollectionBatchService {
+
+    private static final Set<String> STATUSES = Set.of("COMPLETED", "PENDING", "CANCELLED");
+    private static final Set<String> COLLECTION_TYPES = Set.of("PRIVATE", "PUBLIC");
+
+    private final CollectionRepository collectionRepository;
+    private final CollectionAnalyticsStore analyticsStore;
+    private final ObjectMapper mapper;
+    private final int chunkSize;
+    private final int maxRecords;
+
+    @Autowired
+    public CollectionBatchService(CollectionRepository collectionRepository, CollectionAnalyticsStore analyticsStore,
+                                  ObjectMapper objectMapper,
+                                  @Value("${ecotrack.collections.batch.chunk-size:500}") int chunkSize,
+                                  @Value("${ecotrack.collections.batch.max-records:20000}") int maxRecords) {
+        if (chunkSize <= 0 || maxRecords <= 0) {
+            throw new IllegalArgumentException("ecotrack.collections.batch.chunk-size and max-records must be positive");
+        }
+        this.collectionRepository = collectionRepository;
+        this.analyticsStore = analyticsStore;
+        this.mapper = objectMapper.copy().registerModule(timestampModule());
+        this.chunkSize = chunkSize;
+        this.maxRecords = maxRecords;
+    }
+
+    // Returns the report; when the body stops being valid JSON part way, the records before that point are
+    // still written and the report carries an "error"
+    public Map<String, Object> ingest(InputStream body) throws IOException, ExecutionException, InterruptedException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        List<CollectionRecord> pending = new ArrayList<>();
+        List<Map<String, Object>> pendingResults = new ArrayList<>();
+        String error = null;
+
+        try (JsonParser parser = mapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of collection records");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of input");
+                }
+                // Read the record before it gets a line, so a truncated one ends the report cleanly
+                JsonNode node = null;
+                if (results.size() < maxRecords) {
+                    node = parser.readValueAsTree();
+                } else {
+                    parser.skipChildren();
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("index", results.size());
+                results.add(result);
+                if (node == null) {
+                    reject(result, "invalid", "More than " + maxRecords + " records in one upload");
+                    continue;
+                }
+
+                CollectionRecord record;
+                try {
+                    record = mapper.treeToValue(node, CollectionRecord.class);
+                } catch (JsonProcessingException e) {
+                    reject(result, "invalid", e.getOriginalMessage());
+                    continue;
+                } catch (RuntimeException e) {
+                    // e.g. an unparseable collectionDate
+                    reject(result, "invalid", e.getMessage());
+                    continue;
+                }
+                result.put("recordId", record.getRecordId());
+
+                String invalid = validate(record);
+                if (invalid != null) {
+                    reject(result, "invalid", invalid);
+                } else if (record.getRecordId() != null && !seenIds.add(record.getRecordId())) {
+                    reject(result, "duplicate", "recordId already appeared earlier in this upload");
+                } else {
+                    pending.add(record);
+                    pendingResults.add(result);
+                    if (pending.size() == chunkSize) {
+                        write(pending, pendingResults);
+                    }
+                }
+            }
+        } catch (JsonProcessingException e) {
+            error = "Malformed JSON after record " + results.size() + ": " + e.getOriginalMessage();
+        }
+        write(pending, pendingResults);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("received", results.size());
+        for (String status : List.of("written", "invalid", "duplicate", "failed")) {
+            report.put(status, results.stream().filter(result -> status.equals(result.get("status"))).count());
+        }
+        if (error != null) {
+            report.put("error", error);
+        }
+        report.put("results", results);
+        return report;
+    }
+
+    // One record, parsed and checked like an upload entry; IllegalArgumentException when it is not valid
+    public CollectionRecord readRecord(InputStream body) throws IOException {
+        CollectionRecord record;
+        try {
+            record = mapper.readValue(body, CollectionRecord.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e.getOriginalMessage());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        String invalid = record == null ? "Expected a collection record" : validate(record);
+        if (invalid != null) {
+            throw new IllegalArgumentException(invalid);
+        }
+        return record;
+    }
+
+    private void write(List<CollectionRecord> records, List<Map<String, Object>> results)
+            throws ExecutionException, InterruptedException {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<String> errors = collectionRepository.saveAll(records);
+        for (int i = 0; i < records.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            // Records without an ID got one assigned
+            result.put("recordId", records.get(i).getRecordId());
+            if (errors.get(i) == null) {
+                result.put("status", "written");
+                analyticsStore.upsert(records.get(i));
+            } else {
+                reject(result, "failed", errors.get(i));
+            }
+        }
+        records.clear();
+        results.clear();
+    }
+
+    private static String validate(CollectionRecord record) {
+        if (record.getStatus() == null || !STATUSES.contains(record.getStatus())) {
+            return "status must be one of " + STATUSES;
+        }
+        if (record.getCollectionType() == null || !COLLECTION_TYPES.contains(record.getCollectionType())) {
+            return "collectionType must be one of " + COLLECTION_TYPES;
+        }
+        if (!Double.isFinite(record.getWeight()) || record.getWeight() < 0) {
+            return "weight must be a non-negative number";
+        }
+        String id = record.getRecordId();
+        // Firestore document ID rules
+        if (id != null && (id.isEmpty() || id.contains("/") || id.equals(".") || id.equals("..") || id.matches("__.*__"))) {
+            return "recordId is not a valid document ID";
+        }
+        return null;
+    }
+
+    private static void reject(Map<String, Object> result, String status, String error) {
+        result.put("status", status);
+        result.put("error", error);
+    }
+
+    // collectionDate as an RFC 3339 string or epoch milliseconds
+    private static SimpleModule timestampModule() {
+        SimpleModule timestamps = new SimpleModule();
+        timestamps.addDeserializer(Timestamp.class, new JsonDeserializer<Timestamp>() {
+            @Override
+            public Timestamp deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+                if (parser.currentToken().isNumeric()) {
+                    return Timestamp.ofTimeMicroseconds(parser.getLongValue() * 1000);
+                }
+                return Timestamp.parseTimestamp(parser.getValueAsString());
+            }
+        });
+        return timestamps;
+    }
+}
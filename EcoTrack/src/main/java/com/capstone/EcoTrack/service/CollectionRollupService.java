@@ -0,0 +1,774 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.config.FirestoreMetrics;
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.model.UserCollectionStats;
+import com.capstone.EcoTrack.repository.CollectionRecordDecoder;
+import com.capstone.EcoTrack.repository.CollectionRollupWriter;
+import com.capstone.EcoTrack.repository.FirestoreCollectionRepository;
+import com.capstone.EcoTrack.repository.Futures;
+import com.capstone.EcoTrack.repository.Versioned;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+// Keeps pre-aggregated dashboard documents in the "collection_rollups" collection, named
+// g{generation}_{rollup}_s{shard}:
+//   overall                      -> totals plus barangay and driver breakdowns
+//   barangay_{barangay}          -> totals plus driver breakdown
+//   barangayday_{barangay}_{day} -> totals plus driver breakdown for one day
+//   driverday_{driverId}_{day}   -> totals plus barangay breakdown for one day
+// All but the driver-day rollups are split over ecotrack.stats.rollups.shards documents. A record always
+// counts in the same shard (by record ID), so concurrent writes spread over the shards instead of queueing
+// on one document's write rate, and readers add the shards up.
+//
+// app_meta/collection_rollups names the current generation, and while a rebuild runs the one being built.
+// The repository's transactional writes read it (through begin) and also add their increments to the
+// generation being built. A rebuild folds the records as of the moment it opened its generation into that
+// generation, so the two add up to the exact totals. Then it swaps the new generation in and drops the
+// older ones; nothing is ever overwritten with absolute values.
+//
+// The per-user counters (users/{userId}/stats/collections) are rebuilt with the same generation: while it
+// is building, writes add to a shadow document (g{generation}_collections) next to each user's counters,
+// the rebuild adds the folded records to the shadows, and then replaces each user's counters with its
+// shadow in a transaction.
+@Service
+@Profile("!embedded")
+public class CollectionRollupService implements CollectionRollupWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(CollectionRollupService.class);
+    public static final String ROLLUPS = "collection_rollups";
+    private static final String META = "app_meta";
+    private static final int BATCH_LIMIT = 500; // Firestore max writes per batch
+    private static final int PAGE_SIZE = 1000;
+    private static final int USERS_PER_TRANSACTION = 200; // two documents each
+    private static final String UNKNOWN = "unknown";
+    private static final FieldMask VERSION_ONLY = FieldMask.of("version");
+
+    private final Firestore firestore;
+    private final FirestoreMetrics firestoreMetrics;
+    private final int shards;
+    private final long generationCacheMillis;
+    private volatile Generations readerGenerations; // cached for dashboard reads
+
+    @Autowired
+    public CollectionRollupService(Firestore firestore, FirestoreMetrics firestoreMetrics,
+                                   @Value("${ecotrack.stats.rollups.shards:8}") int shards,
+                                   @Value("${ecotrack.stats.rollups.generation-cache-ms:5000}") long generationCacheMillis) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("ecotrack.stats.rollups.shards must be positive");
+        }
+        this.firestore = firestore;
+        this.firestoreMetrics = firestoreMetrics;
+        this.shards = shards;
+        this.generationCacheMillis = generationCacheMillis;
+    }
+
+    // Only completed private collections show up on the dashboard
+    public static boolean isCounted(CollectionRecord record) {
+        return record != null
+                && "PRIVATE".equals(record.getCollectionType())
+                && "COMPLETED".equals(record.getStatus());
+    }
+
+    // Day boundaries follow the server zone, same as the daily stats query
+    public static LocalDate dayOf(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    // Reads the generations in the transaction, before any write: a rebuild opening or swapping a
+    // generation then conflicts with the transaction instead of missing it
+    @Override
+    public Deltas begin(Transaction transaction) throws ExecutionException, InterruptedException {
+        return new Deltas(Generations.of(transaction.get(generationsRef()).get()));
+    }
+
+    // Outside a transaction: the generations as of now
+    @Override
+    public Deltas begin() throws ExecutionException, InterruptedException {
+        return new Deltas(Generations.of(firestoreMetrics.record(META, "get", generationsRef().get()).get()));
+    }
+
+    // The rollups (and their shard) a counted record contributes to
+    private void forEachRollup(CollectionRecord record, RollupVisitor visitor) {
+        if (!isCounted(record)) {
+            return;
+        }
+
+        String barangay = keyOf(record.getBarangay());
+        String driverId = keyOf(record.getDriverId());
+        int shard = shardOf(record);
+
+        visitor.visit(overallRollup(), shard, "overall", null, null, true, true);
+        visitor.visit(barangayRollup(barangay), shard, "barangay", barangay, null, false, true);
+
+        if (record.getCollectionDate() != null) {
+            LocalDate day = dayOf(record.getCollectionDate().toDate());
+            visitor.visit(barangayDayRollup(barangay, day), shard, "barangayday", barangay, day, false, true);
+            // One truck writes its own day, so that one is never contended
+            visitor.visit(driverDayRollup(driverId, day), 0, "driverday", driverId, day, true, false);
+        }
+    }
+
+    private int shardOf(CollectionRecord record) {
+        return record.getRecordId() == null ? 0 : Math.floorMod(record.getRecordId().hashCode(), shards);
+    }
+
+    public CompletableFuture<CollectionStats> getOverall() {
+        return readerGeneration().thenCompose(generation -> readSum(shardRefs(generation, overallRollup())));
+    }
+
+    public CompletableFuture<CollectionStats> getBarangay(String barangay) {
+        return readerGeneration().thenCompose(generation -> readSum(shardRefs(generation, barangayRollup(keyOf(barangay)))));
+    }
+
+    // Generation plus the summed version counters and latest update time of a rollup's shards, read without
+    // their breakdowns. A rebuild swaps in a new generation, so markers never repeat across rebuilds.
+    public CompletableFuture<String> getOverallVersion() {
+        return readerGeneration().thenCompose(generation -> readVersion(generation, shardRefs(generation, overallRollup())));
+    }
+
+    public CompletableFuture<String> getBarangayVersion(String barangay) {
+        return readerGeneration().thenCompose(generation -> readVersion(generation, shardRefs(generation, barangayRollup(keyOf(barangay)))));
+    }
+
+    public CompletableFuture<CollectionStats> getDriverDay(String driverId, LocalDate day) {
+        return readerGeneration().thenCompose(generation -> readSum(Collections.singletonList(ref(generation, driverDayRollup(keyOf(driverId), day), 0))));
+    }
+
+    // Day rollups from..to (inclusive) in one batched read; days without collections are left out
+    public CompletableFuture<Map<LocalDate, CollectionStats>> getDriverDays(String driverId, LocalDate from, LocalDate to) {
+        return readerGeneration().thenCompose(generation -> {
+            List<DocumentReference> refs = new ArrayList<>();
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                refs.add(ref(generation, driverDayRollup(keyOf(driverId), day), 0));
+            }
+            return readDays(refs);
+        });
+    }
+
+    public CompletableFuture<Map<LocalDate, CollectionStats>> getBarangayDays(String barangay, LocalDate from, LocalDate to) {
+        return readerGeneration().thenCompose(generation -> {
+            List<DocumentReference> refs = new ArrayList<>();
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                refs.addAll(shardRefs(generation, barangayDayRollup(keyOf(barangay), day)));
+            }
+            return readDays(refs);
+        });
+    }
+
+    // Recompute every rollup and every user's counters from the raw collection records into a new generation
+    // and swap it in. Writes keep going meanwhile: they land in both generations, and the records are read as
+    // of the moment the new generation was opened, so each write is counted exactly once in it. Bulk writes
+    // are not transactional; one racing the opening of the generation may be off until the next rebuild.
+    // Returns the number of rollups and of users with counters.
+    public Map<String, Integer> rebuild() throws ExecutionException, InterruptedException {
+        DocumentReference pointer = generationsRef();
+        long next = runTransaction(transaction -> {
+            Generations generations = Generations.of(transaction.get(pointer).get());
+            long generation = Math.max(generations.current, generations.building == null ? 0 : generations.building) + 1;
+            transaction.set(pointer, generations.withBuilding(generation));
+            return generation;
+        });
+        // Every transaction that read the old pointer has committed before this write could; every later one
+        // also writes the new generation. So the records as of this update time are what the new generation lacks.
+        Timestamp openedAt = firestoreMetrics.record(META, "get", pointer.get()).get().getUpdateTime();
+
+        try {
+            Deltas deltas = foldRecordsAt(openedAt, Generations.only(next));
+            WriteBatch[] batch = {firestore.batch()};
+            int[] pending = {0};
+            List<ExecutionException> failures = new ArrayList<>();
+            deltas.writeTo((ref, data) -> {
+                batch[0].set(ref, data, SetOptions.merge());
+                if (++pending[0] == BATCH_LIMIT) {
+                    commit(batch[0], failures);
+                    batch[0] = firestore.batch();
+                    pending[0] = 0;
+                }
+            });
+            if (pending[0] > 0) {
+                commit(batch[0], failures);
+            }
+            if (!failures.isEmpty()) {
+                throw failures.get(0);
+            }
+            Map<String, UserCollectionStats> users = foldUserStatsAt(openedAt);
+            addToUserShadows(users, next);
+            int withStats = swapUserStats(next);
+
+            long replaced = runTransaction(transaction -> {
+                Generations generations = Generations.of(transaction.get(pointer).get());
+                if (generations.building == null || generations.building != next) {
+                    throw new IllegalStateException("Another rollup rebuild took over generation " + next);
+                }
+                transaction.set(pointer, new Generations(next, null).toMap());
+                return generations.current;
+            });
+            readerGenerations = null;
+            // Readers may still hold the replaced generation for generation-cache-ms; it goes with the next rebuild
+            dropGenerationsExcept(next, replaced);
+            // Writes between a user's swap and the pointer swap still added to its shadow
+            dropUserShadowsUpTo(next);
+
+            Map<String, Integer> rebuilt = new LinkedHashMap<>();
+            rebuilt.put("rollups", deltas.size());
+            rebuilt.put("userStats", withStats);
+            return rebuilt;
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            abandon(next);
+            throw e;
+        }
+    }
+
+    // The counted records as they were at the given time, summed per rollup for the given generations,
+    // read in pages from one read-only snapshot
+    private Deltas foldRecordsAt(Timestamp readTime, Generations generations) throws ExecutionException, InterruptedException {
+        Query query = firestore.collection("collections")
+                .whereEqualTo("collectionType", "PRIVATE")
+                .whereEqualTo("status", "COMPLETED")
+                .select(CollectionRecordDecoder.SUMMARY_FIELDS)
+                .orderBy(FieldPath.documentId());
+        TransactionOptions snapshot = TransactionOptions.createReadOnlyOptionsBuilder()
+                .setReadTime(readTime.toProto())
+                .build();
+
+        return firestoreMetrics.record("collections", "transaction", firestore.runTransaction(transaction -> {
+            Deltas deltas = new Deltas(generations);
+            Query page = query.limit(PAGE_SIZE);
+            while (true) {
+                List<QueryDocumentSnapshot> documents = transaction.get(page).get().getDocuments();
+                for (QueryDocumentSnapshot document : documents) {
+                    deltas.add(CollectionRecordDecoder.decode(document), 1);
+                }
+                if (documents.size() < PAGE_SIZE) {
+                    return deltas;
+                }
+                page = query.startAfter(documents.get(documents.size() - 1)).limit(PAGE_SIZE);
+            }
+        }, snapshot)).get();
+    }
+
+    private void commit(WriteBatch batch, List<ExecutionException> failures) {
+        try {
+            firestoreMetrics.record(ROLLUPS, "batch", batch.commit()).get();
+        } catch (ExecutionException e) {
+            failures.add(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.add(new ExecutionException(e));
+        }
+    }
+
+    // Delete rollup documents of every generation but the given ones, including the unversioned documents
+    // from before generations existed
+    private void dropGenerationsExcept(long keep, long alsoKeep) throws ExecutionException, InterruptedException {
+        String keepPrefix = "g" + keep + "_";
+        String alsoKeepPrefix = "g" + alsoKeep + "_";
+        WriteBatch batch = firestore.batch();
+        int pending = 0;
+        for (DocumentReference ref : firestore.collection(ROLLUPS).listDocuments()) {
+            if (ref.getId().startsWith(keepPrefix) || ref.getId().startsWith(alsoKeepPrefix)) {
+                continue;
+            }
+            batch.delete(ref);
+            if (++pending == BATCH_LIMIT) {
+                firestoreMetrics.record(ROLLUPS, "batch", batch.commit()).get();
+                batch = firestore.batch();
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            firestoreMetrics.record(ROLLUPS, "batch", batch.commit()).get();
+        }
+    }
+
+    // A failed rebuild stops writes going to its generation; the next rebuild deletes what it wrote
+    private void abandon(long generation) {
+        try {
+            runTransaction(transaction -> {
+                Generations generations = Generations.of(transaction.get(generationsRef()).get());
+                if (generations.building != null && generations.building == generation) {
+                    transaction.set(generationsRef(), new Generations(generations.current, null).toMap());
+                }
+                return null;
+            });
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            log.error("Could not abandon rollup generation {}", generation, e);
+        }
+    }
+
+    // Every user's counters as they were at the given time, read in pages from one read-only snapshot
+    private Map<String, UserCollectionStats> foldUserStatsAt(Timestamp readTime) throws ExecutionException, InterruptedException {
+        Query query = firestore.collection("collections")
+                .select(CollectionRecordDecoder.USER_STATS_FIELDS)
+                .orderBy(FieldPath.documentId());
+        TransactionOptions snapshot = TransactionOptions.createReadOnlyOptionsBuilder()
+                .setReadTime(readTime.toProto())
+                .build();
+
+        return firestoreMetrics.record("collections", "transaction", firestore.runTransaction(transaction -> {
+            Map<String, UserCollectionStats> users = new HashMap<>();
+            Query page = query.limit(PAGE_SIZE);
+            while (true) {
+                List<QueryDocumentSnapshot> documents = transaction.get(page).get().getDocuments();
+                for (QueryDocumentSnapshot document : documents) {
+                    CollectionRecord record = CollectionRecordDecoder.decode(document);
+                    for (String userId : UserCollectionStats.usersOf(record)) {
+                        users.computeIfAbsent(userId, id -> new UserCollectionStats()).add(record, 1);
+                    }
+                }
+                if (documents.size() < PAGE_SIZE) {
+                    return users;
+                }
+                page = query.startAfter(documents.get(documents.size() - 1)).limit(PAGE_SIZE);
+            }
+        }, snapshot)).get();
+    }
+
+    // Add the folded counters to the shadows, on top of what writes since the opening added. Increments like
+    // any write; lastCollection is compared against a read, so each chunk is a transaction.
+    private void addToUserShadows(Map<String, UserCollectionStats> users, long generation)
+            throws ExecutionException, InterruptedException {
+        List<String> userIds = new ArrayList<>(users.keySet());
+        for (int from = 0; from < userIds.size(); from += USERS_PER_TRANSACTION) {
+            List<String> chunk = userIds.subList(from, Math.min(from + USERS_PER_TRANSACTION, userIds.size()));
+            DocumentReference[] refs = chunk.stream()
+                    .map(userId -> FirestoreCollectionRepository.userStatsShadowRef(firestore, userId, generation))
+                    .toArray(DocumentReference[]::new);
+            firestoreMetrics.record(FirestoreCollectionRepository.USER_STATS, "transaction", firestore.runTransaction(transaction -> {
+                List<DocumentSnapshot> shadows = transaction.getAll(refs).get();
+                for (int i = 0; i < refs.length; i++) {
+                    Map<String, Object> data = FirestoreCollectionRepository.userStatsIncrements(users.get(chunk.get(i)), shadows.get(i));
+                    if (data != null) {
+                        transaction.set(refs[i], data, SetOptions.merge());
+                    }
+                }
+                return null;
+            })).get();
+        }
+    }
+
+    // Replace every user's counters with the shadow of the generation and drop the counters of users without
+    // one: a user whose first record came after the opening has a shadow too. A transaction per chunk of
+    // users, so writes racing the swap retry against it. Returns the number of users with counters.
+    private int swapUserStats(long generation) throws ExecutionException, InterruptedException {
+        String shadowDoc = FirestoreCollectionRepository.userStatsShadowDoc(generation);
+        Set<String> done = new HashSet<>(); // a user's two documents can fall on different pages
+        int[] withStats = {0};
+        forEachUserStatsPage(page -> {
+            List<String> userIds = new ArrayList<>();
+            for (DocumentReference ref : page) {
+                String userId = ref.getParent().getParent().getId();
+                if ((ref.getId().equals(FirestoreCollectionRepository.USER_STATS_DOC) || ref.getId().equals(shadowDoc))
+                        && done.add(userId)) {
+                    userIds.add(userId);
+                }
+            }
+            for (int from = 0; from < userIds.size(); from += USERS_PER_TRANSACTION) {
+                withStats[0] += swapUserStats(userIds.subList(from, Math.min(from + USERS_PER_TRANSACTION, userIds.size())), generation);
+            }
+        });
+        return withStats[0];
+    }
+
+    private int swapUserStats(List<String> userIds, long generation) throws ExecutionException, InterruptedException {
+        DocumentReference[] refs = new DocumentReference[userIds.size() * 2];
+        for (int i = 0; i < userIds.size(); i++) {
+            refs[2 * i] = FirestoreCollectionRepository.userStatsRef(firestore, userIds.get(i));
+            refs[2 * i + 1] = FirestoreCollectionRepository.userStatsShadowRef(firestore, userIds.get(i), generation);
+        }
+        return firestoreMetrics.record(FirestoreCollectionRepository.USER_STATS, "transaction", firestore.runTransaction(transaction -> {
+            // Shadows only keep up with writes while the pointer names their generation
+            Generations generations = Generations.of(transaction.get(generationsRef()).get());
+            if (generations.building == null || generations.building != generation) {
+                throw new IllegalStateException("Another rollup rebuild took over generation " + generation);
+            }
+            List<DocumentSnapshot> documents = transaction.getAll(refs).get();
+            int swapped = 0;
+            for (int i = 0; i < refs.length; i += 2) {
+                DocumentSnapshot shadow = documents.get(i + 1);
+                if (shadow.exists()) {
+                    UserCollectionStats stats = FirestoreCollectionRepository.decodeUserStats(shadow);
+                    Map<String, Object> data = new HashMap<>();
+                    data.put("totalCollections", stats.getTotalCollections());
+                    data.put("totalWeight", stats.getTotalWeight());
+                    data.put("lastCollection", stats.getLastCollection());
+                    data.put("byStatus", new HashMap<>(stats.getByStatus()));
+                    data.put("updatedAt", FieldValue.serverTimestamp());
+                    transaction.set(refs[i], data);
+                    transaction.delete(refs[i + 1]);
+                    swapped++;
+                } else if (documents.get(i).exists()) {
+                    transaction.delete(refs[i]);
+                }
+            }
+            return swapped;
+        })).get();
+    }
+
+    // Delete the shadows of the given generation and of earlier, abandoned ones; nothing writes to those once
+    // the generation has been swapped in. Later generations belong to a rebuild that may be running.
+    private void dropUserShadowsUpTo(long generation) throws ExecutionException, InterruptedException {
+        forEachUserStatsPage(page -> {
+            WriteBatch batch = firestore.batch();
+            int pending = 0;
+            for (DocumentReference ref : page) {
+                Long shadowOf = shadowGeneration(ref.getId());
+                if (shadowOf != null && shadowOf <= generation) {
+                    batch.delete(ref);
+                    pending++;
+                }
+            }
+            if (pending > 0) {
+                firestoreMetrics.record(FirestoreCollectionRepository.USER_STATS, "batch", batch.commit()).get();
+            }
+        });
+    }
+
+    // The generation of a shadow document's ID (g{generation}_collections), or null for any other document
+    private static Long shadowGeneration(String documentId) {
+        String suffix = "_" + FirestoreCollectionRepository.USER_STATS_DOC;
+        if (!documentId.startsWith("g") || !documentId.endsWith(suffix)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(documentId.substring(1, documentId.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Page through users/{userId}/stats documents by path, PAGE_SIZE at a time (at most BATCH_LIMIT deletes)
+    private void forEachUserStatsPage(UserStatsPage action) throws ExecutionException, InterruptedException {
+        Query query = firestore.collectionGroup(FirestoreCollectionRepository.USER_STATS)
+                .select(FieldPath.documentId())
+                .orderBy(FieldPath.documentId());
+        Query page = query.limit(BATCH_LIMIT);
+        while (true) {
+            List<QueryDocumentSnapshot> documents = firestoreMetrics.record(FirestoreCollectionRepository.USER_STATS, "query", page.get())
+                    .get().getDocuments();
+            List<DocumentReference> refs = new ArrayList<>();
+            for (QueryDocumentSnapshot document : documents) {
+                DocumentReference user = document.getReference().getParent().getParent();
+                if (user != null && "users".equals(user.getParent().getId())) {
+                    refs.add(document.getReference());
+                }
+            }
+            action.accept(refs);
+            if (documents.size() < BATCH_LIMIT) {
+                return;
+            }
+            page = query.startAfter(documents.get(documents.size() - 1)).limit(BATCH_LIMIT);
+        }
+    }
+
+    // Nightly safety net against drift; disabled unless a cron is configured
+    @Scheduled(cron = "${ecotrack.stats.rollups.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        try {
+            Map<String, Integer> rebuilt = rebuild();
+            log.info("Rebuilt {} collection rollups and the counters of {} users", rebuilt.get("rollups"), rebuilt.get("userStats"));
+        } catch (ExecutionException | InterruptedException e) {
+            log.error("Error rebuilding collection rollups", e);
+        }
+    }
+
+
+    private DocumentReference generationsRef() {
+        return firestore.collection(META).document(ROLLUPS);
+    }
+
+    // The current generation for dashboard reads, re-read at most every generation-cache-ms
+    private CompletableFuture<Long> readerGeneration() {
+        Generations cached = readerGenerations;
+        if (cached != null && System.currentTimeMillis() - cached.readAtMillis < generationCacheMillis) {
+            return CompletableFuture.completedFuture(cached.current);
+        }
+        return Futures.toCompletable(firestoreMetrics.record(META, "get", generationsRef().get()))
+                .thenApply(snapshot -> {
+                    Generations generations = Generations.of(snapshot);
+                    readerGenerations = generations;
+                    return generations.current;
+                });
+    }
+
+    private DocumentReference ref(long generation, String rollup, int shard) {
+        return firestore.collection(ROLLUPS).document("g" + generation + "_" + rollup + "_s" + shard);
+    }
+
+    private List<DocumentReference> shardRefs(long generation, String rollup) {
+        List<DocumentReference> refs = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            refs.add(ref(generation, rollup, shard));
+        }
+        return refs;
+    }
+
+    private static String overallRollup() {
+        return "overall";
+    }
+
+    private static String barangayRollup(String barangay) {
+        return "barangay_" + encode(barangay);
+    }
+
+    private static String barangayDayRollup(String barangay, LocalDate day) {
+        return "barangayday_" + encode(barangay) + "_" + day;
+    }
+
+    private static String driverDayRollup(String driverId, LocalDate day) {
+        return "driverday_" + encode(driverId) + "_" + day;
+    }
+
+    // The shards of one rollup added up
+    private CompletableFuture<CollectionStats> readSum(List<DocumentReference> refs) {
+        return Futures.toCompletable(firestoreMetrics.record(ROLLUPS, "get", firestore.getAll(refs.toArray(new DocumentReference[0]))))
+                .thenApply(snapshots -> {
+                    CollectionStats stats = new CollectionStats();
+                    for (DocumentSnapshot snapshot : snapshots) {
+                        stats.merge(toStats(snapshot));
+                    }
+                    return stats;
+                });
+    }
+
+    private CompletableFuture<String> readVersion(long generation, List<DocumentReference> refs) {
+        return Futures.toCompletable(firestoreMetrics.record(ROLLUPS, "get", firestore.getAll(refs.toArray(new DocumentReference[0]), VERSION_ONLY)))
+                .thenApply(snapshots -> {
+                    long version = 0;
+                    long updated = 0;
+                    for (DocumentSnapshot snapshot : snapshots) {
+                        if (snapshot.exists()) {
+                            Long shardVersion = snapshot.getLong("version");
+                            version += shardVersion == null ? 0 : shardVersion;
+                            updated = Math.max(updated, Versioned.versionOf(snapshot.getUpdateTime()));
+                        }
+                    }
+                    return "g" + generation + "-" + version + "." + updated;
+                });
+    }
+
+    private CompletableFuture<Map<LocalDate, CollectionStats>> readDays(List<DocumentReference> refs) {
+        if (refs.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        return Futures.toCompletable(firestoreMetrics.record(ROLLUPS, "get", firestore.getAll(refs.toArray(new DocumentReference[0]))))
+                .thenApply(snapshots -> {
+                    Map<LocalDate, CollectionStats> days = new HashMap<>();
+                    for (DocumentSnapshot snapshot : snapshots) {
+                        String day = snapshot.exists() ? snapshot.getString("day") : null;
+                        if (day != null) {
+                            days.computeIfAbsent(LocalDate.parse(day), d -> new CollectionStats()).merge(toStats(snapshot));
+                        }
+                    }
+                    return days;
+                });
+    }
+
+    static CollectionStats toStats(DocumentSnapshot snapshot) {
+        CollectionStats stats = new CollectionStats();
+        if (!snapshot.exists()) {
+            return stats;
+        }
+
+        Long totalCollections = snapshot.getLong("totalCollections");
+        Double totalWeight = snapshot.getDouble("totalWeight");
+        stats.setTotalCollections(totalCollections == null ? 0 : totalCollections.intValue());
+        stats.setTotalWeight(totalWeight == null ? 0.0 : totalWeight);
+        copyBreakdown(snapshot.get("barangayBreakdown"), stats.getBarangayBreakdown());
+        copyBreakdown(snapshot.get("driverBreakdown"), stats.getDriverBreakdown());
+        return stats;
+    }
+
+    private static void copyBreakdown(Object source, Map<String, Integer> target) {
+        if (!(source instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) source).entrySet()) {
+            int count = ((Number) entry.getValue()).intValue();
+            // Decrements leave zero entries behind; hide them like the scan would
+            if (count > 0) {
+                target.put(String.valueOf(entry.getKey()), count);
+            }
+        }
+    }
+
+    private static String keyOf(String value) {
+        return value == null || value.isEmpty() ? UNKNOWN : value;
+    }
+
+    // Document IDs cannot contain '/', so encode free-form barangay names and driver IDs
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private <T> T runTransaction(Transaction.Function<T> function) throws ExecutionException, InterruptedException {
+        return firestoreMetrics.record(META, "transaction", firestore.runTransaction(function)).get();
+    }
+
+    @FunctionalInterface
+    private interface UserStatsPage {
+        void accept(List<DocumentReference> page) throws ExecutionException, InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface RollupVisitor {
+        void visit(String rollup, int shard, String scope, String key, LocalDate day, boolean withBarangays, boolean withDrivers);
+    }
+
+    // The generation dashboards read and, during a rebuild, the one being built
+    private static final class Generations {
+        private final long current;
+        private final Long building;
+        private final long readAtMillis = System.currentTimeMillis();
+
+        private Generations(long current, Long building) {
+            this.current = current;
+            this.building = building;
+        }
+
+        // Before the first rebuild there is no pointer document: generation 0, nothing building
+        static Generations of(DocumentSnapshot snapshot) {
+            if (!snapshot.exists()) {
+                return new Generations(0, null);
+            }
+            Long current = snapshot.getLong("current");
+            return new Generations(current == null ? 0 : current, snapshot.getLong("building"));
+        }
+
+        static Generations only(long generation) {
+            return new Generations(generation, null);
+        }
+
+        // Where writes go
+        List<Long> targets() {
+            return building == null ? Collections.singletonList(current) : Arrays.asList(current, building);
+        }
+
+        Map<String, Object> withBuilding(long generation) {
+            return new Generations(current, generation).toMap();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> data = new HashMap<>();
+            data.put("current", current);
+            data.put("building", building);
+            data.put("updatedAt", FieldValue.serverTimestamp());
+            return data;
+        }
+    }
+
+    // Increments summed per rollup shard, so each rollup gets a single write however many records of the
+    // write touch it: a bulk load would otherwise hammer the overall rollup, and a record moving between
+    // rollups gets one write per rollup instead of a decrement and an increment
+    private class Deltas implements CollectionRollupWriter.Deltas {
+        private final Generations generations;
+        private final Map<String, Sum> sums = new LinkedHashMap<>();
+
+        private Deltas(Generations generations) {
+            this.generations = generations;
+        }
+
+        // A record entering (sign = 1) or leaving (sign = -1) the counted set
+        @Override
+        public void add(CollectionRecord record, int sign) {
+            forEachRollup(record, (rollup, shard, scope, key, day, withBarangays, withDrivers) -> {
+                Sum sum = sums.computeIfAbsent(rollup + "_s" + shard, id -> new Sum(rollup, shard, scope, key, day));
+                sum.collections += sign;
+                sum.weight += sign * record.getWeight();
+                if (withBarangays) {
+                    sum.barangays.merge(keyOf(record.getBarangay()), sign, Integer::sum);
+                }
+                if (withDrivers) {
+                    sum.drivers.merge(keyOf(record.getDriverId()), sign, Integer::sum);
+                }
+            });
+        }
+
+        int size() {
+            return sums.size();
+        }
+
+        @Override
+        public Long building() {
+            return generations.building;
+        }
+
+        // One merge write per rollup shard whose totals changed and generation written to
+        @Override
+        public void writeTo(BiConsumer<DocumentReference, Map<String, Object>> writer) {
+            for (Sum sum : sums.values()) {
+                sum.barangays.values().removeIf(count -> count == 0);
+                sum.drivers.values().removeIf(count -> count == 0);
+                if (sum.collections == 0 && sum.weight == 0 && sum.barangays.isEmpty() && sum.drivers.isEmpty()) {
+                    continue;
+                }
+
+                Map<String, Object> data = new HashMap<>();
+                data.put("scope", sum.scope);
+                if (sum.key != null) {
+                    data.put("key", sum.key);
+                }
+                if (sum.day != null) {
+                    data.put("day", sum.day.toString());
+                }
+                data.put("totalCollections", FieldValue.increment(sum.collections));
+                data.put("totalWeight", FieldValue.increment(sum.weight));
+                if (!sum.barangays.isEmpty()) {
+                    data.put("barangayBreakdown", increments(sum.barangays));
+                }
+                if (!sum.drivers.isEmpty()) {
+                    data.put("driverBreakdown", increments(sum.drivers));
+                }
+                data.put("version", FieldValue.increment(1));
+                data.put("updatedAt", FieldValue.serverTimestamp());
+                for (long generation : generations.targets()) {
+                    writer.accept(ref(generation, sum.rollup, sum.shard), data);
+                }
+            }
+        }
+
+        private Map<String, Object> increments(Map<String, Integer> counts) {
+            Map<String, Object> increments = new HashMap<>();
+            counts.forEach((key, count) -> increments.put(key, FieldValue.increment(count)));
+            return increments;
+        }
+    }
+
+    private static final class Sum {
+        private final String rollup;
+        private final int shard;
+        private final String scope;
+        private final String key;
+        private final LocalDate day;
+        private long collections;
+        private double weight;
+        private final Map<String, Integer> barangays = new HashMap<>();
+        private final Map<String, Integer> drivers = new HashMap<>();
+
+        private Sum(String rollup, int shard, String scope, String key, LocalDate day) {
+            this.rollup = rollup;
+            this.shard = shard;
+            this.scope = scope;
+            this.key = key;
+            this.day = day;
+        }
+    }
+}
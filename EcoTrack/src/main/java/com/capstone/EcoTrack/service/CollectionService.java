@@ -1,140 +1,340 @@
 package com.capstone.EcoTrack.service;
 
 import com.capstone.EcoTrack.model.CollectionRecord;
-import com.google.api.core.ApiFuture;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.repository.CollectionFilter;
+import com.capstone.EcoTrack.repository.CollectionRepository;
 import com.google.cloud.Timestamp;
-import com.google.cloud.firestore.*;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Service
+@Timed(value = "ecotrack.collection.service", description = "CollectionService calls", percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class CollectionService {
 
-    private final Firestore firestore;
+    private static final int MAX_SERIES_BUCKETS = 1000;
+    private static final long MAX_ROLLUP_SERIES_DAYS = 400; // larger ranges are cheaper as one query
+
+    private final CollectionRepository collectionRepository;
+    private final CollectionRollupService rollupService; // null on the embedded backend
+    private final CollectionAnalyticsStore analyticsStore;
+    private final LiveCollectionStatsCache liveCache;    // null on the embedded backend
+    private final CollectionWriteBuffer writeBuffer;
+    private final StatsMode statsMode;
 
     @Autowired
-    public CollectionService(Firestore firestore) {
-        this.firestore = firestore;
+    public CollectionService(CollectionRepository collectionRepository,
+                             ObjectProvider<CollectionRollupService> rollupService,
+                             CollectionAnalyticsStore analyticsStore,
+                             ObjectProvider<LiveCollectionStatsCache> liveCache,
+                             CollectionWriteBuffer writeBuffer,
+                             @Value("${ecotrack.stats.mode:SCAN}") StatsMode statsMode) {
+        this.collectionRepository = collectionRepository;
+        this.rollupService = rollupService.getIfAvailable();
+        this.analyticsStore = analyticsStore;
+        this.liveCache = liveCache.getIfAvailable();
+        this.writeBuffer = writeBuffer;
+        this.statsMode = statsMode;
+
+        // Rollups and the snapshot listener only exist on the Firestore backend
+        if ((statsMode == StatsMode.ROLLUP && this.rollupService == null)
+                || (statsMode == StatsMode.LIVE && this.liveCache == null)) {
+            throw new IllegalStateException("ecotrack.stats.mode=" + statsMode + " needs the Firestore backend");
+        }
+    }
+
+    // Create or replace a collection record, keeping the dashboard rollups in step
+    public String saveRecord(CollectionRecord record) throws ExecutionException, InterruptedException {
+        collectionRepository.save(record);
+        analyticsStore.upsert(record);
+        return record.getRecordId();
+    }
+
+    // As saveRecord, but written together with other records in the write buffer's next flush; completes
+    // with the record ID once stored. Throws WriteBufferFullException when the buffer stays full.
+    public CompletableFuture<String> submitRecord(CollectionRecord record) throws InterruptedException {
+        return writeBuffer.submit(record).thenApply(written -> {
+            analyticsStore.upsert(written);
+            return written.getRecordId();
+        });
+    }
+
+    // Change the status of a record (e.g. PENDING -> COMPLETED), keeping the dashboard rollups in step
+    public void updateRecordStatus(String recordId, String status) throws ExecutionException, InterruptedException {
+        CollectionRecord updated = collectionRepository.updateStatus(recordId, status);
+        analyticsStore.upsert(updated);
+    }
+
+    // Remove a record, keeping the dashboard rollups in step; false if it did not exist
+    public boolean deleteRecord(String recordId) throws ExecutionException, InterruptedException {
+        CollectionRecord removed = collectionRepository.delete(recordId);
+        if (removed == null) {
+            return false;
+        }
+        analyticsStore.remove(recordId, removed.getUpdatedAt());
+        return true;
     }
 
     // Get daily collection statistics for a driver
-    public Map<String, Object> getDriverDailyStats(String driverId, Date date) throws ExecutionException, InterruptedException {
-        CollectionReference collections = firestore.collection("collections");
-        
-        // Create start and end of day timestamps
+    public CompletableFuture<Map<String, Object>> getDriverDailyStats(String driverId, Date date) {
+        // Create start of day and start of next day timestamps
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(date);
         calendar.set(Calendar.HOUR_OF_DAY, 0);
         calendar.set(Calendar.MINUTE, 0);
         calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
         Timestamp startOfDay = Timestamp.of(calendar.getTime());
-        
-        calendar.set(Calendar.HOUR_OF_DAY, 23);
-        calendar.set(Calendar.MINUTE, 59);
-        calendar.set(Calendar.SECOND, 59);
-        Timestamp endOfDay = Timestamp.of(calendar.getTime());
-
-        // Query collections for the driver on the specified date
-        Query query = collections
-                .whereEqualTo("driverId", driverId)
-                .whereEqualTo("collectionType", "PRIVATE")
-                .whereEqualTo("status", "COMPLETED")
-                .whereGreaterThanOrEqualTo("collectionDate", startOfDay)
-                .whereLessThanOrEqualTo("collectionDate", endOfDay);
-
-        ApiFuture<QuerySnapshot> future = query.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        // Calculate statistics
-        int totalCollections = documents.size();
-        double totalWeight = 0.0;
-        Map<String, Integer> barangayCounts = new HashMap<>();
-
-        for (QueryDocumentSnapshot document : documents) {
-            CollectionRecord record = document.toObject(CollectionRecord.class);
-            totalWeight += record.getWeight();
-            barangayCounts.merge(record.getBarangay(), 1, Integer::sum);
+
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        Timestamp startOfNextDay = Timestamp.of(calendar.getTime());
+
+        boolean live = useLiveCache();
+        CompletableFuture<CollectionStats> result;
+        if (statsMode == StatsMode.ROLLUP) {
+            result = rollupService.getDriverDay(driverId, CollectionRollupService.dayOf(date));
+        } else if (live) {
+            result = CompletableFuture.completedFuture(liveCache.getDriverDay(driverId, CollectionRollupService.dayOf(date)));
+        } else if (useAnalyticsStore()) {
+            result = CompletableFuture.completedFuture(analyticsStore.getDriverRange(driverId,
+                    startOfDay.toDate().getTime(), startOfNextDay.toDate().getTime()));
+        } else {
+            // Completed private collections for the driver on the specified date
+            result = aggregate(CollectionFilter.completedPrivate()
+                    .driverId(driverId)
+                    .between(startOfDay, startOfNextDay));
         }
 
         // Prepare response
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalCollections", totalCollections);
-        stats.put("totalWeight", totalWeight);
-        stats.put("barangayBreakdown", barangayCounts);
-        stats.put("date", date);
-
-        return stats;
+        return result.thenApply(day -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalCollections", day.getTotalCollections());
+            stats.put("totalWeight", day.getTotalWeight());
+            stats.put("barangayBreakdown", day.getBarangayBreakdown());
+            stats.put("date", date);
+            if (live) {
+                liveCache.putFreshness(stats);
+            }
+            return stats;
+        });
     }
 
     // Get barangay-wide collection statistics
-    public Map<String, Object> getBarangayStats(String barangay) throws ExecutionException, InterruptedException {
-        CollectionReference collections = firestore.collection("collections");
-        
-        // Query all completed private collections for the barangay
-        Query query = collections
-                .whereEqualTo("barangay", barangay)
-                .whereEqualTo("collectionType", "PRIVATE")
-                .whereEqualTo("status", "COMPLETED");
-
-        ApiFuture<QuerySnapshot> future = query.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        // Calculate statistics
-        int totalCollections = documents.size();
-        double totalWeight = 0.0;
-        Map<String, Integer> driverBreakdown = new HashMap<>();
-
-        for (QueryDocumentSnapshot document : documents) {
-            CollectionRecord record = document.toObject(CollectionRecord.class);
-            totalWeight += record.getWeight();
-            driverBreakdown.merge(record.getDriverId(), 1, Integer::sum);
+    public CompletableFuture<Map<String, Object>> getBarangayStats(String barangay) {
+        boolean live = useLiveCache();
+        CompletableFuture<CollectionStats> result;
+        if (statsMode == StatsMode.ROLLUP) {
+            result = rollupService.getBarangay(barangay);
+        } else if (live) {
+            result = CompletableFuture.completedFuture(liveCache.getBarangay(barangay));
+        } else if (useAnalyticsStore()) {
+            result = CompletableFuture.completedFuture(analyticsStore.getBarangay(barangay));
+        } else {
+            // All completed private collections for the barangay
+            result = aggregate(CollectionFilter.completedPrivate().barangay(barangay));
         }
 
         // Prepare response
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("barangay", barangay);
-        stats.put("totalCollections", totalCollections);
-        stats.put("totalWeight", totalWeight);
-        stats.put("driverBreakdown", driverBreakdown);
-
-        return stats;
+        return result.thenApply(totals -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("barangay", barangay);
+            stats.put("totalCollections", totals.getTotalCollections());
+            stats.put("totalWeight", totals.getTotalWeight());
+            stats.put("driverBreakdown", totals.getDriverBreakdown());
+            if (live) {
+                liveCache.putFreshness(stats);
+            }
+            return stats;
+        });
     }
 
     // Get overall collection statistics
-    public Map<String, Object> getOverallStats() throws ExecutionException, InterruptedException {
-        CollectionReference collections = firestore.collection("collections");
-        
-        // Query all completed private collections
-        Query query = collections
-                .whereEqualTo("collectionType", "PRIVATE")
-                .whereEqualTo("status", "COMPLETED");
-
-        ApiFuture<QuerySnapshot> future = query.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-        // Calculate statistics
-        int totalCollections = documents.size();
-        double totalWeight = 0.0;
-        Map<String, Integer> barangayBreakdown = new HashMap<>();
-        Map<String, Integer> driverBreakdown = new HashMap<>();
-
-        for (QueryDocumentSnapshot document : documents) {
-            CollectionRecord record = document.toObject(CollectionRecord.class);
-            totalWeight += record.getWeight();
-            barangayBreakdown.merge(record.getBarangay(), 1, Integer::sum);
-            driverBreakdown.merge(record.getDriverId(), 1, Integer::sum);
+    public CompletableFuture<Map<String, Object>> getOverallStats() {
+        boolean live = useLiveCache();
+        CompletableFuture<CollectionStats> result;
+        if (statsMode == StatsMode.ROLLUP) {
+            result = rollupService.getOverall();
+        } else if (live) {
+            result = CompletableFuture.completedFuture(liveCache.getOverall());
+        } else if (useAnalyticsStore()) {
+            result = CompletableFuture.completedFuture(analyticsStore.getOverall());
+        } else {
+            // All completed private collections
+            result = aggregate(CollectionFilter.completedPrivate());
         }
 
         // Prepare response
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalCollections", totalCollections);
-        stats.put("totalWeight", totalWeight);
-        stats.put("barangayBreakdown", barangayBreakdown);
-        stats.put("driverBreakdown", driverBreakdown);
+        return result.thenApply(totals -> {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalCollections", totals.getTotalCollections());
+            stats.put("totalWeight", totals.getTotalWeight());
+            stats.put("barangayBreakdown", totals.getBarangayBreakdown());
+            stats.put("driverBreakdown", totals.getDriverBreakdown());
+            if (live) {
+                liveCache.putFreshness(stats);
+            }
+            return stats;
+        });
+    }
+
+    // A cheap marker that changes whenever getOverallStats may answer differently, read from the same source
+    // the stats will come from; null when only aggregating would tell. Read it before the stats: the marker
+    // can then be older than the data it is sent with, which costs a client one extra full response, never
+    // a stale one.
+    public CompletableFuture<String> getOverallStatsVersion() {
+        if (statsMode == StatsMode.ROLLUP) {
+            return rollupService.getOverallVersion().thenApply(version -> "rollup-" + version);
+        }
+        return statsVersion();
+    }
+
+    public CompletableFuture<String> getBarangayStatsVersion(String barangay) {
+        if (statsMode == StatsMode.ROLLUP) {
+            return rollupService.getBarangayVersion(barangay).thenApply(version -> "rollup-" + version);
+        }
+        return statsVersion();
+    }
+
+    // The in-memory sources and the embedded records only have a version for everything at once
+    private CompletableFuture<String> statsVersion() {
+        if (useLiveCache()) {
+            return CompletableFuture.completedFuture("live-" + liveCache.getVersion());
+        }
+        if (useAnalyticsStore()) {
+            return CompletableFuture.completedFuture("columnar-" + analyticsStore.getVersion());
+        }
+        return collectionRepository.versionAsync().thenApply(version -> version == null ? null : "records-" + version);
+    }
+
+    // Per-bucket collection counts and weights for a driver between two dates (inclusive) in the given zone.
+    // An invalid range throws IllegalArgumentException before anything is read.
+    public CompletableFuture<Map<String, Object>> getDriverSeries(String driverId, LocalDate from, LocalDate to,
+                                                                  SeriesBucket bucket, ZoneId zone) {
+        CollectionFilter filter = CollectionFilter.completedPrivate().driverId(driverId);
+        List<String> buckets = seriesBuckets(from, to, bucket);
+        CompletableFuture<Map<LocalDate, CollectionStats>> rollupDays = useRollupDays(from, to, zone)
+                ? rollupService.getDriverDays(driverId, from, to)
+                : CompletableFuture.completedFuture(null);
+
+        return rollupDays.thenCompose(days -> buildSeries(filter, days, buckets, from, to, bucket, zone))
+                .thenApply(series -> {
+                    series.put("driverId", driverId);
+                    return series;
+                });
+    }
+
+    // Per-bucket collection counts and weights for a barangay between two dates (inclusive) in the given zone.
+    // An invalid range throws IllegalArgumentException before anything is read.
+    public CompletableFuture<Map<String, Object>> getBarangaySeries(String barangay, LocalDate from, LocalDate to,
+                                                                    SeriesBucket bucket, ZoneId zone) {
+        CollectionFilter filter = CollectionFilter.completedPrivate().barangay(barangay);
+        List<String> buckets = seriesBuckets(from, to, bucket);
+        CompletableFuture<Map<LocalDate, CollectionStats>> rollupDays = useRollupDays(from, to, zone)
+                ? rollupService.getBarangayDays(barangay, from, to)
+                : CompletableFuture.completedFuture(null);
+
+        return rollupDays.thenCompose(days -> buildSeries(filter, days, buckets, from, to, bucket, zone))
+                .thenApply(series -> {
+                    series.put("barangay", barangay);
+                    return series;
+                });
+    }
+
+    // Day rollups are cut at server-zone midnight, so they only line up with series in that zone
+    private boolean useRollupDays(LocalDate from, LocalDate to, ZoneId zone) {
+        return statsMode == StatsMode.ROLLUP
+                && zone.getRules().equals(ZoneId.systemDefault().getRules())
+                && ChronoUnit.DAYS.between(from, to) < MAX_ROLLUP_SERIES_DAYS;
+    }
+
+    // The bucket start dates between two dates, checking the range
+    private static List<String> seriesBuckets(LocalDate from, LocalDate to, SeriesBucket bucket) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+
+        List<String> buckets = new ArrayList<>();
+        for (LocalDate start = bucket.start(from); !start.isAfter(to); start = bucket.next(start)) {
+            buckets.add(start.toString());
+            if (buckets.size() > MAX_SERIES_BUCKETS) {
+                throw new IllegalArgumentException("Date range has more than " + MAX_SERIES_BUCKETS + " buckets");
+            }
+        }
+        return buckets;
+    }
+
+    // Bucket either the day rollups or a single range query in one pass
+    private CompletableFuture<Map<String, Object>> buildSeries(CollectionFilter filter, Map<LocalDate, CollectionStats> rollupDays,
+                                                               List<String> buckets, LocalDate from, LocalDate to,
+                                                               SeriesBucket bucket, ZoneId zone) {
+        LocalDate first = bucket.start(from);
+        int[] counts = new int[buckets.size()];
+        double[] weights = new double[buckets.size()];
+
+        CompletableFuture<Void> filled;
+        if (rollupDays != null) {
+            for (Map.Entry<LocalDate, CollectionStats> day : rollupDays.entrySet()) {
+                int index = bucket.index(first, day.getKey());
+                counts[index] += day.getValue().getTotalCollections();
+                weights[index] += day.getValue().getTotalWeight();
+            }
+            filled = CompletableFuture.completedFuture(null);
+        } else {
+            Timestamp start = Timestamp.of(Date.from(from.atStartOfDay(zone).toInstant()));
+            Timestamp end = Timestamp.of(Date.from(to.plusDays(1).atStartOfDay(zone).toInstant()));
+            filled = collectionRepository.forEachAsync(filter.between(start, end), record -> {
+                LocalDate day = record.getCollectionDate().toDate().toInstant().atZone(zone).toLocalDate();
+                int index = bucket.index(first, day);
+                counts[index]++;
+                weights[index] += record.getWeight();
+            });
+        }
+
+        return filled.thenApply(done -> seriesOf(buckets, counts, weights, from, to, bucket, zone));
+    }
+
+    private static Map<String, Object> seriesOf(List<String> buckets, int[] counts, double[] weights,
+                                                LocalDate from, LocalDate to, SeriesBucket bucket, ZoneId zone) {
+        Map<String, Object> series = new HashMap<>();
+        series.put("from", from.toString());
+        series.put("to", to.toString());
+        series.put("bucket", bucket.name().toLowerCase());
+        series.put("zone", zone.getId());
+        series.put("buckets", buckets);
+        series.put("counts", counts);
+        series.put("weights", weights);
+        return series;
+    }
+
+    // Aggregate the records themselves, the way ecotrack.stats.mode asks for
+    private CompletableFuture<CollectionStats> aggregate(CollectionFilter filter) {
+        switch (statsMode) {
+            case PAGED:
+                return collectionRepository.aggregatePagedAsync(filter);
+            case SHARDED:
+                return collectionRepository.aggregateShardedAsync(filter);
+            default:
+                return collectionRepository.aggregateAsync(filter);
+        }
+    }
+
+    // Until the listener has delivered its first full snapshot, LIVE answers with a regular query
+    private boolean useLiveCache() {
+        return statsMode == StatsMode.LIVE && liveCache.isSynced();
+    }
 
-        return stats;
+    // Until the in-memory store has finished loading, COLUMNAR answers with a regular query
+    private boolean useAnalyticsStore() {
+        return statsMode == StatsMode.COLUMNAR && analyticsStore.isLoaded();
     }
-} 
\ No newline at end of file
+}
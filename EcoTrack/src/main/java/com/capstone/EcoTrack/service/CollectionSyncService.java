@@ -0,0 +1,96 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.repository.CollectionChanges;
+import com.capstone.EcoTrack.repository.CollectionRepository;
+import com.capstone.EcoTrack.repository.SyncCursor;
+import com.capstone.EcoTrack.repository.SyncTokenExpiredException;
+import com.google.cloud.Timestamp;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Delta sync for driver devices: the first call (no token) downloads the driver's records page by page,
+// later calls only what was written or deleted since the token they hold. Each answer carries the token
+// for the next call; hasMore says to call again right away.
+@Service
+@Timed(value = "ecotrack.collection.sync", description = "CollectionSyncService calls", percentiles = {0.5, 0.95, 0.99}, histogram = true)
+public class CollectionSyncService {
+
+    private final CollectionRepository collectionRepository;
+    private final int pageSize;
+    private final long retentionMillis;
+
+    @Autowired
+    public CollectionSyncService(CollectionRepository collectionRepository,
+                                 @Value("${ecotrack.collections.sync.page-size:500}") int pageSize,
+                                 @Value("${ecotrack.collections.sync.tombstone-retention-days:30}") int retentionDays) {
+        if (pageSize <= 0 || retentionDays <= 0) {
+            throw new IllegalArgumentException("ecotrack.collections.sync.page-size and tombstone-retention-days must be positive");
+        }
+        this.collectionRepository = collectionRepository;
+        this.pageSize = pageSize;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+    }
+
+    public Map<String, Object> getDriverChanges(String driverId, String token) throws ExecutionException, InterruptedException {
+        SyncCursor cursor = null;
+        if (token != null && !token.isEmpty()) {
+            cursor = SyncCursor.decode(token);
+            if (!cursor.getDriverId().equals(driverId)) {
+                throw new IllegalArgumentException("Sync token belongs to another driver");
+            }
+            // Tombstones older than the retention may be gone already
+            if (cursor.getSince().toDate().getTime() < System.currentTimeMillis() - retentionMillis) {
+                throw new SyncTokenExpiredException();
+            }
+        }
+
+        CollectionChanges changes = collectionRepository.changes(driverId, cursor, pageSize);
+
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (CollectionRecord record : changes.getRecords()) {
+            records.add(toMap(record));
+        }
+        List<Map<String, Object>> deleted = new ArrayList<>();
+        for (Map.Entry<String, Timestamp> tombstone : changes.getDeleted().entrySet()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("recordId", tombstone.getKey());
+            entry.put("deletedAt", format(tombstone.getValue()));
+            deleted.add(entry);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("driverId", driverId);
+        response.put("records", records);
+        response.put("deleted", deleted);
+        response.put("token", changes.getNext().encode());
+        response.put("hasMore", changes.hasMore());
+        return response;
+    }
+
+    private static Map<String, Object> toMap(CollectionRecord record) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("recordId", record.getRecordId());
+        map.put("driverId", record.getDriverId());
+        map.put("userId", record.getUserId());
+        map.put("barangay", record.getBarangay());
+        map.put("collectionType", record.getCollectionType());
+        map.put("weight", record.getWeight());
+        map.put("collectionDate", format(record.getCollectionDate()));
+        map.put("status", record.getStatus());
+        map.put("notes", record.getNotes());
+        map.put("updatedAt", format(record.getUpdatedAt()));
+        return map;
+    }
+
+    // RFC 3339, the same format the batch upload accepts
+    private static String format(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toString();
+    }
+}
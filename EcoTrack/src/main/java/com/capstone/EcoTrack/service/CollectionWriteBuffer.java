@@ -0,0 +1,225 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.repository.CollectionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind stage for single collection records sent by the trucks. Records wait in a bounded queue and
+// one flusher thread writes them through CollectionRepository.saveAllInTransactions, as soon as flush-size
+// records are waiting or the oldest has waited max-latency-ms. Transactions keep the rollups and user
+// counters exact under concurrent writes, as a direct save would; only bulk uploads take saveAll. Each
+// caller's future completes once its record is stored, so nothing is acknowledged before it is durable.
+// A full queue blocks the caller for up to offer-timeout-ms and then fails with WriteBufferFullException.
+// Writes to the same recordId that meet in one flush are coalesced into the last one. On shutdown the queue
+// is flushed before the repository goes away.
+//
+// Metrics: ecotrack.collections.write_buffer.queue.depth, .flush.size{trigger}, .flush.latency{outcome},
+// .rejected
+@Service
+public class CollectionWriteBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(CollectionWriteBuffer.class);
+    private static final int BATCH_LIMIT = 500; // Firestore max writes per commit
+
+    private final CollectionRepository collectionRepository;
+    private final BlockingQueue<Pending> queue;
+    private final int flushSize;
+    private final long maxLatencyNanos;
+    private final long offerTimeoutMillis;
+    private final int retryAfterSeconds;
+    private final long shutdownTimeoutMillis;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private final MeterRegistry registry;
+    private final Counter rejected;
+
+    public CollectionWriteBuffer(CollectionRepository collectionRepository, MeterRegistry registry,
+                                 @Value("${ecotrack.collections.write-buffer.capacity:10000}") int capacity,
+                                 @Value("${ecotrack.collections.write-buffer.flush-size:500}") int flushSize,
+                                 @Value("${ecotrack.collections.write-buffer.max-latency-ms:50}") long maxLatencyMillis,
+                                 @Value("${ecotrack.collections.write-buffer.offer-timeout-ms:1000}") long offerTimeoutMillis,
+                                 @Value("${ecotrack.collections.write-buffer.retry-after-seconds:1}") int retryAfterSeconds,
+                                 @Value("${ecotrack.collections.write-buffer.shutdown-timeout-ms:10000}") long shutdownTimeoutMillis) {
+        if (capacity <= 0 || flushSize <= 0 || flushSize > BATCH_LIMIT || maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("ecotrack.collections.write-buffer.capacity must be positive, flush-size between 1 and "
+                    + BATCH_LIMIT + " and max-latency-ms not negative");
+        }
+        this.collectionRepository = collectionRepository;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushSize = flushSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.registry = registry;
+
+        Gauge.builder("ecotrack.collections.write_buffer.queue.depth", queue, Collection::size)
+                .description("Collection records waiting to be written")
+                .register(registry);
+        this.rejected = Counter.builder("ecotrack.collections.write_buffer.rejected")
+                .description("Collection records refused because the write buffer stayed full")
+                .register(registry);
+
+        this.flusher = new Thread(this::run, "collection-write-buffer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Queue a record for the next flush; the future completes with the record as stored (with its ID) or
+    // fails with the write error. Blocks while the queue is full, up to offer-timeout-ms.
+    public CompletableFuture<CollectionRecord> submit(CollectionRecord record) throws InterruptedException {
+        Pending pending = new Pending(record);
+        if (closed || !queue.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            throw new WriteBufferFullException(closed
+                    ? "Collection writes are shutting down, please retry shortly"
+                    : "Too many collection records waiting to be written, please retry shortly", retryAfterSeconds);
+        }
+        return pending.future;
+    }
+
+    // Stop taking records, let the flusher write what is queued, and fail whatever is left after the timeout
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        flusher.join(shutdownTimeoutMillis);
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) {
+            log.warn("Collection write buffer shut down with {} records unwritten", left.size());
+        }
+        for (Pending pending : left) {
+            pending.future.completeExceptionally(new WriteBufferFullException("Collection writes are shutting down", retryAfterSeconds));
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                List<Pending> batch = new ArrayList<>();
+                batch.add(first);
+                flush(batch, collect(batch, first.enqueuedAt + maxLatencyNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Add to the batch until it is full, the oldest record's deadline passes or shutdown starts;
+    // returns what ended the wait
+    private String collect(List<Pending> batch, long deadline) throws InterruptedException {
+        while (true) {
+            queue.drainTo(batch, flushSize - batch.size());
+            if (batch.size() >= flushSize) {
+                return "size";
+            }
+            if (closed) {
+                return "shutdown";
+            }
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return "deadline";
+            }
+            Pending next = queue.poll(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(100)), TimeUnit.NANOSECONDS);
+            if (next != null) {
+                batch.add(next);
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch, String trigger) {
+        // Same recordId twice in one flush: only the last write is sent, and every caller gets its result
+        Map<Object, List<Pending>> byRecord = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            String recordId = pending.record.getRecordId();
+            byRecord.computeIfAbsent(recordId != null ? recordId : pending, key -> new ArrayList<>()).add(pending);
+        }
+        List<CollectionRecord> records = new ArrayList<>();
+        for (List<Pending> writes : byRecord.values()) {
+            records.add(writes.get(writes.size() - 1).record);
+        }
+
+        DistributionSummary.builder("ecotrack.collections.write_buffer.flush.size")
+                .description("Collection records per flush, before coalescing")
+                .tag("trigger", trigger)
+                .register(registry)
+                .record(batch.size());
+
+        Timer.Sample sample = Timer.start(registry);
+        List<String> errors = null;
+        Throwable failure = null;
+        try {
+            errors = collectionRepository.saveAllInTransactions(records);
+        } catch (ExecutionException e) {
+            failure = e.getCause() != null ? e.getCause() : e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        sample.stop(Timer.builder("ecotrack.collections.write_buffer.flush.latency")
+                .description("Time to write one flush of collection records")
+                .tag("outcome", failure == null ? "success" : "error")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry));
+        if (failure != null) {
+            log.error("Error flushing {} collection records", records.size(), failure);
+        }
+
+        int i = 0;
+        for (List<Pending> writes : byRecord.values()) {
+            CollectionRecord written = records.get(i);
+            String error = errors == null ? null : errors.get(i);
+            i++;
+            for (Pending pending : writes) {
+                if (failure != null) {
+                    pending.future.completeExceptionally(failure);
+                } else if (error != null) {
+                    pending.future.completeExceptionally(new IllegalStateException(error));
+                } else {
+                    pending.future.complete(written);
+                }
+            }
+        }
+    }
+
+    private static class Pending {
+        final CollectionRecord record;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<CollectionRecord> future = new CompletableFuture<>();
+
+        Pending(CollectionRecord record) {
+            this.record = record;
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package com.capstone.EcoTrack.service;
 
 import com.capstone.EcoTrack.model.User;
-import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.Query;
-import com.google.cloud.firestore.QuerySnapshot;
+import com.capstone.EcoTrack.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -18,30 +16,21 @@ import java.util.concurrent.ExecutionException;
 public class CustomUserDetailsService implements UserDetailsService {
 
     @Autowired
-    private Firestore firestore;
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        try {
-            // Try to find user by email first
-            Query query = firestore.collection("users")
-                    .whereEqualTo("email", username)
-                    .limit(1);
-            
-            QuerySnapshot snapshot = query.get().get();
-            if (!snapshot.isEmpty()) {
-                User user = snapshot.getDocuments().get(0).toObject(User.class);
-                return createUserDetails(user);
-            }
+        return userDetailsCache.get(username, this::loadFromRepository);
+    }
 
-            // If not found by email, try username
-            query = firestore.collection("users")
-                    .whereEqualTo("username", username)
-                    .limit(1);
-            
-            snapshot = query.get().get();
-            if (!snapshot.isEmpty()) {
-                User user = snapshot.getDocuments().get(0).toObject(User.class);
+    private UserDetails loadFromRepository(String username) {
+        try {
+            // Email first, then username
+            User user = userRepository.findByEmailOrUsername(username);
+            if (user != null) {
                 return createUserDetails(user);
             }
 
@@ -52,9 +41,11 @@ public class CustomUserDetailsService implements UserDetailsService {
     }
 
     private UserDetails createUserDetails(User user) {
-        return new org.springframework.security.core.userdetails.User(
+        return new AuthenticatedUser(
+            user.getUserId(),
             user.getEmail(), // Using email as the principal
             user.getPassword(),
+            user.getPreferences() == null ? null : user.getPreferences().getTimeZone(),
             Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole()))
         );
     }
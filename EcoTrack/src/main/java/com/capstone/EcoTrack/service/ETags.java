@@ -0,0 +1,51 @@
+package com.capstone.EcoTrack.service;
+
+import org.apache.http.HttpStatus;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+
+// Strong ETags built from version markers, and the If-None-Match check that answers 304 before a
+// response body is computed
+public final class ETags {
+
+    private ETags() {
+    }
+
+    // Quoted entity tag for a version marker, or null when there is no marker
+    public static String of(String version) {
+        return version == null ? null : "\"" + version + "\"";
+    }
+
+    // If-None-Match uses the weak comparison, so W/ prefixes are ignored; "*" matches any existing resource
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static ResponseEntity<?> notModified(String etag, CacheControl cacheControl) {
+        return ResponseEntity.status(HttpStatus.SC_NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .build();
+    }
+
+    // 200 with the body, tagged when there is an ETag
+    public static ResponseEntity<?> ok(Object body, String etag, CacheControl cacheControl) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(cacheControl);
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        return response.body(body);
+    }
+}
@@ -1,29 +1,81 @@
 package com.capstone.EcoTrack.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import com.capstone.EcoTrack.config.JwtConfig;
+import com.capstone.EcoTrack.config.JwtKeyRing;
 import com.capstone.EcoTrack.model.User;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class JwtService {
-    private final Key key;
+    private final JwtKeyRing keyRing;
+    private final JwtParser parser; // immutable and thread safe, so built once
     private final JwtConfig jwtConfig;
+    private final Cache<String, Claims> verifiedTokens; // SHA-256 of the token -> claims; null when disabled
+    private final Counter tokensGenerated;
+    private final Counter tokensParsed;
+    private final Counter tokensRejected;
 
-    public JwtService(JwtConfig jwtConfig) {
+    public JwtService(JwtConfig jwtConfig, JwtKeyRing keyRing, MeterRegistry meterRegistry,
+                      @Value("${ecotrack.jwt.verified-cache.max-size:10000}") long verifiedCacheSize) {
         this.jwtConfig = jwtConfig;
-        this.key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+        this.keyRing = keyRing;
+        // Pick the verification key by the token's kid header, so tokens signed before a rotation stay valid
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        Key key = keyRing.find(header.getKeyId());
+                        if (key == null) {
+                            throw new SignatureException("Unknown signing key " + header.getKeyId());
+                        }
+                        return key;
+                    }
+                })
+                .build();
+        this.tokensGenerated = counter(meterRegistry, "generate", "success");
+        this.tokensParsed = counter(meterRegistry, "parse", "success");
+        this.tokensRejected = counter(meterRegistry, "parse", "invalid");
+
+        if (verifiedCacheSize > 0) {
+            this.verifiedTokens = Caffeine.newBuilder()
+                    .maximumSize(verifiedCacheSize)
+                    .expireAfter(new UntilTokenExpiry())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verifiedTokens");
+        } else {
+            this.verifiedTokens = null;
+        }
     }
 
     public String generateToken(User user) {
@@ -31,43 +83,108 @@ public class JwtService {
         claims.put("userId", user.getUserId());
         claims.put("email", user.getEmail());
         claims.put("role", user.getRole());
+        // Saved zone for the dashboard series; a changed preference applies from the next login
+        if (user.getPreferences() != null && user.getPreferences().getTimeZone() != null) {
+            claims.put("timeZone", user.getPreferences().getTimeZone());
+        }
         
+        JwtKeyRing.SigningKey signingKey = keyRing.current();
+        tokensGenerated.increment();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.getKid())
                 .setClaims(claims)
                 .setSubject(user.getEmail())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + jwtConfig.getExpiration()))
-                .signWith(key)
+                .signWith(signingKey.getKey())
                 .compact();
     }
 
+    // Check the signature and expiry once and return the claims (read-only; they may be shared).
+    // Throws a JwtException (or IllegalArgumentException for a blank token) when the token is not valid.
+    public Claims verify(String token) {
+        if (verifiedTokens == null) {
+            return parse(token);
+        }
+        return verifiedTokens.get(hash(token), digest -> parse(token));
+    }
+
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).getSubject();
+    }
+
+    // Request principal built from the signed claims alone (email as username, role as authority, userId, timeZone).
+    // Parsing rejects bad signatures and expired tokens with a JwtException.
+    public UserDetails toUserDetails(String token) {
+        Claims claims = verify(token);
+        String role = claims.get("role", String.class);
+        List<GrantedAuthority> authorities = role == null
+                ? Collections.emptyList()
+                : Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role));
+        return new AuthenticatedUser(claims.get("userId", String.class), claims.getSubject(), "",
+                claims.get("timeZone", String.class), authorities);
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        return isTokenValid(verify(token), userDetails);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !isTokenExpired(claims);
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
-    private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+    private Claims parse(String token) {
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            tokensParsed.increment();
+            return claims;
+        } catch (JwtException | IllegalArgumentException e) {
+            tokensRejected.increment();
+            throw e;
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Keep a verified token only until its own exp claim
+    private static class UntilTokenExpiry implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return Long.MAX_VALUE;
+            }
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiration.getTime() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    // ecotrack.jwt.operations{operation=generate|parse, outcome=success|invalid}
+    private static Counter counter(MeterRegistry registry, String operation, String outcome) {
+        return Counter.builder("ecotrack.jwt.operations")
+                .description("JWT signing and verification")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry);
     }
 } 
\ No newline at end of file
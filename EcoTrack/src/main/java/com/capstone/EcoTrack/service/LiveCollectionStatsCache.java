@@ -0,0 +1,272 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.repository.CollectionRecordDecoder;
+import com.capstone.EcoTrack.repository.Versioned;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Running dashboard aggregates fed by a Firestore snapshot listener on the completed private collections.
+// Every added/modified/removed document is applied as a delta, so reads never touch Firestore.
+// If the listener fails it is re-registered after a delay and the aggregates are rebuilt from the
+// first snapshot of the new listener; until then reads are flagged as stale.
+@Service
+@Profile("!embedded")
+public class LiveCollectionStatsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveCollectionStatsCache.class);
+
+    private final Firestore firestore;
+    private final boolean enabled;
+    private final long retryMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "live-stats-listener");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final Map<String, Contribution> contributions = new HashMap<>();
+    private final CollectionStats overall = new CollectionStats();
+    private final Map<String, CollectionStats> byBarangay = new HashMap<>();
+    private final Map<String, CollectionStats> byDriverDay = new HashMap<>();
+    private boolean resetPending;
+
+    private ListenerRegistration registration;
+    private volatile boolean connected;
+    private volatile boolean synced;
+    private volatile Timestamp asOf;
+    private volatile boolean stopped;
+
+    @Autowired
+    public LiveCollectionStatsCache(Firestore firestore,
+                                    @Value("${ecotrack.stats.mode:SCAN}") StatsMode statsMode,
+                                    @Value("${ecotrack.stats.live.retry-millis:5000}") long retryMillis) {
+        this.firestore = firestore;
+        this.enabled = statsMode == StatsMode.LIVE;
+        this.retryMillis = retryMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnReady() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    public void start() {
+        stopped = false;
+        scheduler.execute(this::register);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        scheduler.execute(() -> {
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+            connected = false;
+        });
+        scheduler.shutdown();
+    }
+
+    // True once a full snapshot has been applied; stays true while resyncing so stale data can be served
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public boolean isStale() {
+        return !connected;
+    }
+
+    public CollectionStats getOverall() {
+        lock.readLock().lock();
+        try {
+            return copy(overall);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public CollectionStats getBarangay(String barangay) {
+        lock.readLock().lock();
+        try {
+            return copy(byBarangay.get(barangay));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public CollectionStats getDriverDay(String driverId, LocalDate day) {
+        lock.readLock().lock();
+        try {
+            return copy(byDriverDay.get(driverDayKey(driverId, day)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Changes with every snapshot applied and with the stale flag, like the freshness fields do. Instances
+    // listening at the same read time hold the same aggregates, so versions agree across instances.
+    public String getVersion() {
+        Timestamp readTime = asOf;
+        return (isStale() ? "stale." : "") + (readTime == null ? "none" : String.valueOf(Versioned.versionOf(readTime)));
+    }
+
+    // Tell clients how fresh the numbers are
+    public void putFreshness(Map<String, Object> response) {
+        Timestamp readTime = asOf;
+        response.put("stale", isStale());
+        response.put("asOf", readTime == null ? null : readTime.toString());
+    }
+
+    // Runs on the scheduler thread only
+    private void register() {
+        if (stopped) {
+            return;
+        }
+        if (registration != null) {
+            registration.remove();
+        }
+
+        lock.writeLock().lock();
+        try {
+            resetPending = true; // the first snapshot of a new listener lists every document as ADDED
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Query query = firestore.collection("collections")
+                .whereEqualTo("collectionType", "PRIVATE")
+                .whereEqualTo("status", "COMPLETED");
+        registration = query.addSnapshotListener(scheduler, this::onEvent);
+    }
+
+    private void onEvent(QuerySnapshot snapshot, FirestoreException error) {
+        if (error != null) {
+            connected = false;
+            log.warn("Live stats listener failed, resyncing in {} ms", retryMillis, error);
+            if (!stopped) {
+                scheduler.schedule(this::register, retryMillis, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (resetPending) {
+                contributions.clear();
+                overall.setTotalCollections(0);
+                overall.setTotalWeight(0.0);
+                overall.getBarangayBreakdown().clear();
+                overall.getDriverBreakdown().clear();
+                byBarangay.clear();
+                byDriverDay.clear();
+                resetPending = false;
+            }
+
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                QueryDocumentSnapshot document = change.getDocument();
+                unapply(document.getId());
+                if (change.getType() != DocumentChange.Type.REMOVED) {
+                    apply(document);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        asOf = snapshot.getReadTime();
+        connected = true;
+        synced = true;
+    }
+
+    private void apply(QueryDocumentSnapshot document) {
+        Timestamp collectionDate = document.getTimestamp("collectionDate");
+        Contribution contribution = new Contribution(
+                document.getString("barangay"),
+                document.getString("driverId"),
+                CollectionRecordDecoder.weightOf(document),
+                collectionDate == null ? null : CollectionRollupService.dayOf(collectionDate.toDate()));
+        contributions.put(document.getId(), contribution);
+
+        overall.add(contribution.barangay, contribution.driverId, contribution.weight);
+        byBarangay.computeIfAbsent(contribution.barangay, key -> new CollectionStats())
+                .add(contribution.barangay, contribution.driverId, contribution.weight);
+        if (contribution.day != null) {
+            byDriverDay.computeIfAbsent(driverDayKey(contribution.driverId, contribution.day), key -> new CollectionStats())
+                    .add(contribution.barangay, contribution.driverId, contribution.weight);
+        }
+    }
+
+    private void unapply(String documentId) {
+        Contribution contribution = contributions.remove(documentId);
+        if (contribution == null) {
+            return;
+        }
+
+        overall.remove(contribution.barangay, contribution.driverId, contribution.weight);
+        remove(byBarangay, contribution.barangay, contribution);
+        if (contribution.day != null) {
+            remove(byDriverDay, driverDayKey(contribution.driverId, contribution.day), contribution);
+        }
+    }
+
+    private static void remove(Map<String, CollectionStats> groups, String key, Contribution contribution) {
+        CollectionStats stats = groups.get(key);
+        if (stats != null) {
+            stats.remove(contribution.barangay, contribution.driverId, contribution.weight);
+            if (stats.getTotalCollections() <= 0) {
+                groups.remove(key);
+            }
+        }
+    }
+
+    private static CollectionStats copy(CollectionStats source) {
+        CollectionStats stats = new CollectionStats();
+        if (source != null) {
+            stats.merge(source);
+        }
+        return stats;
+    }
+
+    private static String driverDayKey(String driverId, LocalDate day) {
+        return driverId + "|" + day;
+    }
+
+    // What one document added to the aggregates, kept so it can be subtracted again
+    private static final class Contribution {
+        private final String barangay;
+        private final String driverId;
+        private final double weight;
+        private final LocalDate day;
+
+        private Contribution(String barangay, String driverId, double weight, LocalDate day) {
+            this.barangay = barangay;
+            this.driverId = driverId;
+            this.weight = weight;
+            this.day = day;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.capstone.EcoTrack.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Login rate limiting, checked before any user lookup or BCrypt work:
+//  - a token bucket per client IP and one per email address. The IP bucket is sized for many people behind
+//    one address (a depot's NAT, a barangay hall), so it only stops floods.
+//  - a second bucket per client IP that only failed logins drain, which stops password guessing across
+//    many emails without holding back a room full of people who type their passwords right
+//  - after a few consecutive failures an email is locked for a delay that doubles with each further failure
+// Buckets are updated with compare-and-set, so concurrent logins never block each other, and buckets
+// that have been idle for a while are evicted.
+@Service
+public class LoginThrottle {
+
+    private final Cache<String, Bucket> buckets;
+    private final Limit ipLimit;
+    private final Limit ipFailureLimit;
+    private final Limit identityLimit;
+    private final int freeFailures;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final Counter throttledByIp;
+    private final Counter throttledByIpFailures;
+    private final Counter throttledByIdentity;
+
+    public LoginThrottle(@Value("${ecotrack.auth.login.ip-capacity:300}") int ipCapacity,
+                         @Value("${ecotrack.auth.login.ip-per-minute:300}") int ipPerMinute,
+                         @Value("${ecotrack.auth.login.ip-failure-capacity:30}") int ipFailureCapacity,
+                         @Value("${ecotrack.auth.login.ip-failures-per-minute:10}") int ipFailuresPerMinute,
+                         @Value("${ecotrack.auth.login.identity-capacity:5}") int identityCapacity,
+                         @Value("${ecotrack.auth.login.identity-per-minute:5}") int identityPerMinute,
+                         @Value("${ecotrack.auth.login.free-failures:3}") int freeFailures,
+                         @Value("${ecotrack.auth.login.base-delay-ms:1000}") long baseDelayMillis,
+                         @Value("${ecotrack.auth.login.max-delay-ms:300000}") long maxDelayMillis,
+                         @Value("${ecotrack.auth.login.idle-minutes:15}") long idleMinutes,
+                         @Value("${ecotrack.auth.login.max-keys:100000}") long maxKeys,
+                         MeterRegistry meterRegistry) {
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .maximumSize(maxKeys)
+                .build();
+        this.ipLimit = new Limit(ipCapacity, ipPerMinute);
+        this.ipFailureLimit = new Limit(ipFailureCapacity, ipFailuresPerMinute);
+        this.identityLimit = new Limit(identityCapacity, identityPerMinute);
+        this.freeFailures = freeFailures;
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.throttledByIp = counter(meterRegistry, "ip");
+        this.throttledByIpFailures = counter(meterRegistry, "ip_failures");
+        this.throttledByIdentity = counter(meterRegistry, "identity");
+    }
+
+    // Take a login attempt from the IP and email buckets; returns 0 if allowed, otherwise seconds to wait
+    public long tryAcquire(String email, String clientIp) {
+        long now = System.nanoTime();
+        if (clientIp != null) {
+            long wait = bucket(ipKey(clientIp), ipLimit, now).tryAcquire(ipLimit, now);
+            if (wait > 0) {
+                throttledByIp.increment();
+                return toSeconds(wait);
+            }
+            // Checked, not taken: only a failure takes from it
+            wait = bucket(ipFailureKey(clientIp), ipFailureLimit, now).waitFor(ipFailureLimit, now);
+            if (wait > 0) {
+                throttledByIpFailures.increment();
+                return toSeconds(wait);
+            }
+        }
+        String identity = identityKey(email);
+        if (identity != null) {
+            long wait = bucket(identity, identityLimit, now).tryAcquire(identityLimit, now);
+            if (wait > 0) {
+                throttledByIdentity.increment();
+                return toSeconds(wait);
+            }
+        }
+        return 0;
+    }
+
+    // A wrong password for the email: count it and lock the email once past the free failures, and take
+    // from the client IP's failure bucket
+    public void recordFailure(String email, String clientIp) {
+        long now = System.nanoTime();
+        String identity = identityKey(email);
+        if (identity != null) {
+            bucket(identity, identityLimit, now).recordFailure(now, this);
+        }
+        if (clientIp != null) {
+            bucket(ipFailureKey(clientIp), ipFailureLimit, now).take(ipFailureLimit, now);
+        }
+    }
+
+    public void recordSuccess(String email) {
+        String identity = identityKey(email);
+        if (identity != null) {
+            Bucket bucket = buckets.getIfPresent(identity);
+            if (bucket != null) {
+                bucket.resetFailures();
+            }
+        }
+    }
+
+    // Lockout after the given number of consecutive failures: base, 2x base, 4x base ... up to max
+    long delayAfter(int failures) {
+        int over = failures - freeFailures;
+        if (over <= 0) {
+            return 0;
+        }
+        long delay = baseDelayNanos;
+        for (int i = 1; i < over && delay < maxDelayNanos; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxDelayNanos);
+    }
+
+    private Bucket bucket(String key, Limit limit, long now) {
+        return buckets.get(key, k -> new Bucket(limit.capacity, now));
+    }
+
+    private static String ipKey(String clientIp) {
+        return "ip:" + clientIp;
+    }
+
+    private static String ipFailureKey(String clientIp) {
+        return "ipfail:" + clientIp;
+    }
+
+    private static String identityKey(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        return "email:" + email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    private static Counter counter(MeterRegistry registry, String key) {
+        return Counter.builder("ecotrack.login.throttled")
+                .description("Login attempts rejected before checking the password")
+                .tag("key", key)
+                .register(registry);
+    }
+
+    private static final class Limit {
+        final double capacity;
+        final double tokensPerNano;
+
+        Limit(int capacity, int perMinute) {
+            this.capacity = capacity;
+            this.tokensPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        }
+    }
+
+    // Immutable snapshot of a bucket, swapped atomically
+    private static final class State {
+        final double tokens;
+        final long refilledAt;
+        final int failures;
+        final long lockedUntil;
+
+        State(double tokens, long refilledAt, int failures, long lockedUntil) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+            this.failures = failures;
+            this.lockedUntil = lockedUntil;
+        }
+    }
+
+    private static final class Bucket {
+        private final AtomicReference<State> state;
+
+        Bucket(double capacity, long now) {
+            this.state = new AtomicReference<>(new State(capacity, now, 0, now));
+        }
+
+        // Returns 0 when a token was taken, otherwise nanos until the next attempt can succeed
+        long tryAcquire(Limit limit, long now) {
+            while (true) {
+                State current = state.get();
+                if (now - current.lockedUntil < 0) {
+                    return current.lockedUntil - now;
+                }
+                double tokens = Math.min(limit.capacity,
+                        current.tokens + Math.max(0, now - current.refilledAt) * limit.tokensPerNano);
+                if (tokens < 1) {
+                    return (long) Math.ceil((1 - tokens) / limit.tokensPerNano);
+                }
+                State next = new State(tokens - 1, now, current.failures, current.lockedUntil);
+                if (state.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        // Nanos until a token is available, without taking it; 0 if one is available now
+        long waitFor(Limit limit, long now) {
+            State current = state.get();
+            double tokens = Math.min(limit.capacity,
+                    current.tokens + Math.max(0, now - current.refilledAt) * limit.tokensPerNano);
+            return tokens < 1 ? (long) Math.ceil((1 - tokens) / limit.tokensPerNano) : 0;
+        }
+
+        // Take a token whether or not one is available; the bucket bottoms out at zero
+        void take(Limit limit, long now) {
+            while (true) {
+                State current = state.get();
+                double tokens = Math.min(limit.capacity,
+                        current.tokens + Math.max(0, now - current.refilledAt) * limit.tokensPerNano);
+                State next = new State(Math.max(0, tokens - 1), now, current.failures, current.lockedUntil);
+                if (state.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        void recordFailure(long now, LoginThrottle throttle) {
+            while (true) {
+                State current = state.get();
+                int failures = current.failures + 1;
+                long delay = throttle.delayAfter(failures);
+                long lockedUntil = delay > 0 ? now + delay : current.lockedUntil;
+                State next = new State(current.tokens, current.refilledAt, failures, lockedUntil);
+                if (state.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        void resetFailures() {
+            while (true) {
+                State current = state.get();
+                if (current.failures == 0) {
+                    return;
+                }
+                State next = new State(current.tokens, current.refilledAt, 0, current.lockedUntil);
+                if (state.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+}
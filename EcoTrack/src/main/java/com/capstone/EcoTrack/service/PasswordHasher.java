@@ -0,0 +1,80 @@
+package com.capstone.EcoTrack.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Runs every BCrypt hash and check on the bounded passwordExecutor. When its queue is full the call
+// fails at once with PasswordHashingBusyException instead of piling up behind other logins.
+@Service
+public class PasswordHasher {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abyx]?\\$(\\d\\d)\\$");
+
+    private final PasswordEncoder passwordEncoder;
+    private final ExecutorService passwordExecutor;
+    private final int strength;
+    private final int retryAfterSeconds;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          @Qualifier("passwordExecutor") ExecutorService passwordExecutor,
+                          @Value("${ecotrack.auth.bcrypt-strength:10}") int strength,
+                          @Value("${ecotrack.auth.hash-retry-after-seconds:1}") int retryAfterSeconds) {
+        this.passwordEncoder = passwordEncoder;
+        this.passwordExecutor = passwordExecutor;
+        this.strength = strength;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String encode(CharSequence rawPassword) throws ExecutionException, InterruptedException {
+        return run(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) throws ExecutionException, InterruptedException {
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // Non-blocking variants; a full queue fails the future with PasswordHashingBusyException
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return runAsync(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return runAsync(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // True when the stored hash was made with a different cost than ecotrack.auth.bcrypt-strength
+    public boolean needsRehash(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    private <T> T run(Callable<T> task) throws ExecutionException, InterruptedException {
+        try {
+            return passwordExecutor.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            throw new PasswordHashingBusyException(retryAfterSeconds);
+        }
+    }
+
+    private <T> CompletableFuture<T> runAsync(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, passwordExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new PasswordHashingBusyException(retryAfterSeconds));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.capstone.EcoTrack.service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+// Bucket width for the dashboard time series; weeks start on Monday
+public enum SeriesBucket {
+    DAY(ChronoUnit.DAYS),
+    WEEK(ChronoUnit.WEEKS),
+    MONTH(ChronoUnit.MONTHS);
+
+    private final ChronoUnit unit;
+
+    SeriesBucket(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    // First day of the bucket that contains the given date
+    public LocalDate start(LocalDate date) {
+        switch (this) {
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return date.withDayOfMonth(1);
+            default:
+                return date;
+        }
+    }
+
+    // Position of the date's bucket counted from the bucket that starts at first
+    public int index(LocalDate first, LocalDate date) {
+        return (int) unit.between(first, start(date));
+    }
+
+    public LocalDate next(LocalDate bucketStart) {
+        return bucketStart.plus(1, unit);
+    }
+
+    public static SeriesBucket parse(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
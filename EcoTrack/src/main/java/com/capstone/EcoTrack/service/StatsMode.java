@@ -0,0 +1,11 @@
+package com.capstone.EcoTrack.service;
+
+// How CollectionService answers the dashboard statistics queries
+public enum StatsMode {
+    SCAN,     // query every matching collection record and aggregate on each request
+    PAGED,    // like SCAN, but walk the query in fixed-size pages so memory stays bounded
+    SHARDED,  // like SCAN, but split overall/barangay queries into date ranges fetched in parallel
+    ROLLUP,   // read the pre-aggregated documents kept by CollectionRollupService
+    COLUMNAR, // loop over the in-memory columns of CollectionAnalyticsStore
+    LIVE      // read the aggregates LiveCollectionStatsCache keeps current through a snapshot listener
+}
@@ -0,0 +1,68 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.User;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Recently loaded UserDetails keyed by the identifier they were looked up with (email or username).
+// Bounded in size and expired after a fixed time; UserService evicts an account's keys whenever it
+// changes credentials, email, or deletes the account. Hits, misses and evictions are published as
+// the cache.* meters tagged cache=userDetails.
+// Loads run on their own virtual threads rather than inside the cache's map lock, where a blocking
+// Firestore call would pin the caller's carrier thread; concurrent misses still share one load.
+@Component
+public class UserDetailsCache {
+
+    private final AsyncCache<String, UserDetails> cache;
+    private final Executor loadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public UserDetailsCache(@Value("${ecotrack.auth.user-cache.max-size:10000}") long maxSize,
+                            @Value("${ecotrack.auth.user-cache.ttl-seconds:300}") long ttlSeconds,
+                            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userDetails");
+    }
+
+    // Cached details for the identifier, loading them on a miss; loader exceptions propagate and nothing is cached
+    public UserDetails get(String identifier, Function<String, UserDetails> loader) {
+        try {
+            return cache.get(identifier, (key, executor) -> CompletableFuture.supplyAsync(() -> loader.apply(key), loadExecutor)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Drop every key the account can be looked up by
+    public void evict(User user) {
+        if (user == null) {
+            return;
+        }
+        evict(user.getEmail());
+        evict(user.getUsername());
+    }
+
+    public void evict(String identifier) {
+        if (identifier != null) {
+            cache.synchronous().invalidate(identifier);
+        }
+    }
+}
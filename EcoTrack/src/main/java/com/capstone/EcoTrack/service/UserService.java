@@ -1,393 +1,505 @@
 package com.capstone.EcoTrack.service;
 
 import com.capstone.EcoTrack.model.*;
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
+import com.capstone.EcoTrack.repository.CollectionRepository;
+import com.capstone.EcoTrack.repository.DuplicateValueException;
+import com.capstone.EcoTrack.repository.Futures;
+import com.capstone.EcoTrack.repository.UserRepository;
 import com.google.firebase.auth.*;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Service;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
 @Service
+@Timed(value = "ecotrack.user.service", description = "UserService calls", percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class UserService {
-    private final Firestore firestore;
-    private final FirebaseAuth firebaseAuth;
-    private final PasswordEncoder passwordEncoder;
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+    // What a password change needs to read: the hash to verify, and the keys of the cached login entries
+    private static final List<String> PASSWORD_FIELDS = List.of("password", "email", "username");
+    private static final List<String> PROFILE_FIELDS = List.of("firstName", "lastName", "location");
+    private static final List<String> ROLE_FIELDS = List.of("role", "email", "username");
+    // Roles only an admin can give, through PUT /api/users/{userId}/role
+    private static final List<String> ASSIGNED_ROLES = List.of("ADMIN", "DRIVER");
+    private static final CacheControl PROFILE_CACHE = CacheControl.noCache().cachePrivate();
+
+    private final UserRepository userRepository;
+    private final FirebaseAuth firebaseAuth; // null on the embedded backend, which has no Firebase Auth mirror
     private final AuthService authService;
     private final JwtService jwtService;
+    private final UserDetailsCache userDetailsCache;
+    private final PasswordHasher passwordHasher;
+    private final CollectionRepository collectionRepository;
+    // ecotrack.login.attempts{outcome}: login results without logging who tried
+    private final Counter loginSucceeded;
+    private final Counter loginUnknownUser;
+    private final Counter loginWrongPassword;
+    private final Counter loginFailed;
 
     @Autowired
-    public UserService(Firestore firestore, FirebaseAuth firebaseAuth, PasswordEncoder passwordEncoder, AuthService authService, JwtService jwtService) {
-        this.firestore = firestore;
-        this.firebaseAuth = firebaseAuth;
-        this.passwordEncoder = passwordEncoder;
+    public UserService(UserRepository userRepository, ObjectProvider<FirebaseAuth> firebaseAuth, AuthService authService, JwtService jwtService,
+                       UserDetailsCache userDetailsCache, PasswordHasher passwordHasher, CollectionRepository collectionRepository,
+                       MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.firebaseAuth = firebaseAuth.getIfAvailable();
         this.authService = authService;
         this.jwtService = jwtService;
+        this.userDetailsCache = userDetailsCache;
+        this.passwordHasher = passwordHasher;
+        this.collectionRepository = collectionRepository;
+        this.loginSucceeded = loginCounter(meterRegistry, "success");
+        this.loginUnknownUser = loginCounter(meterRegistry, "unknown_user");
+        this.loginWrongPassword = loginCounter(meterRegistry, "wrong_password");
+        this.loginFailed = loginCounter(meterRegistry, "error");
     }
     
    
-    public ResponseEntity<?> registerUser(User user) {
-        try {
-            // Check if user already exists
-            Query query = firestore.collection("users")
-                .whereEqualTo("email", user.getEmail());
-            QuerySnapshot querySnapshot = query.get().get();
-
-            if (!querySnapshot.isEmpty()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User with this email already exists");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Hash password
-            user.setPassword(passwordEncoder.encode(user.getPassword()));
-
-            // Save user to Firestore
-            String userId = firestore.collection("users").document().getId();
-            user.setUserId(userId);
-            firestore.collection("users").document(userId).set(user).get();
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "User registered successfully");
-            response.put("userId", userId);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(error);
+    public CompletableFuture<ResponseEntity<?>> registerUser(User user) {
+        if (user.getRole() != null && ASSIGNED_ROLES.contains(user.getRole().toUpperCase())) {
+            return CompletableFuture.completedFuture(badRequest("The " + user.getRole() + " role is assigned by an administrator"));
         }
+        String userId = userRepository.newId();
+        // Hash password
+        return passwordHasher.encodeAsync(user.getPassword())
+                .thenCompose(hash -> {
+                    // Save user; the repository rejects a taken email or username atomically
+                    user.setPassword(hash);
+                    user.setUserId(userId);
+                    return userRepository.createAsync(user);
+                })
+                .<ResponseEntity<?>>thenApply(created -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("message", "User registered successfully");
+                    response.put("userId", userId);
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(error -> {
+                    Throwable cause = Futures.unwrap(error);
+                    if (cause instanceof DuplicateValueException) {
+                        return badRequest("User with this " + ((DuplicateValueException) cause).getField() + " already exists");
+                    }
+                    if (cause instanceof PasswordHashingBusyException) {
+                        return busy((PasswordHashingBusyException) cause);
+                    }
+                    return badRequest(cause.getMessage());
+                });
     }
 
-    public ResponseEntity<?> loginUser(User user) {
-        try {
-            System.out.println("Login attempt for email: " + user.getEmail());
-            
-            // Find user by email
-            Query query = firestore.collection("users")
-                .whereEqualTo("email", user.getEmail());
-            QuerySnapshot querySnapshot = query.get().get();
-
-            if (querySnapshot.isEmpty()) {
-                System.out.println("User not found for email: " + user.getEmail());
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not found");
-                return ResponseEntity.badRequest().body(error);
-            }
+    // Lookup and password check run without holding the request thread: the lookup completes on
+    // Firestore's callback thread and the BCrypt check on the password executor
+    public CompletableFuture<ResponseEntity<?>> loginUser(User user) {
+        // Find user by email
+        return userRepository.findByEmailAsync(user.getEmail())
+                .<ResponseEntity<?>>thenCompose(foundUser -> {
+                    if (foundUser == null) {
+                        loginUnknownUser.increment();
+                        return CompletableFuture.completedFuture(badRequest("User not found"));
+                    }
 
-            User foundUser = querySnapshot.getDocuments().get(0).toObject(User.class);
-            System.out.println("User found, verifying password");
 
-            // Verify password
-            if (!passwordEncoder.matches(user.getPassword(), foundUser.getPassword())) {
-                System.out.println("Invalid password for user: " + user.getEmail());
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Invalid password");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            System.out.println("Password verified, generating token");
-            // Generate JWT token
-            String token = jwtService.generateToken(foundUser);
+                    // Verify password
+                    return passwordHasher.matchesAsync(user.getPassword(), foundUser.getPassword())
+                            .<ResponseEntity<?>>thenApply(matches -> {
+                                if (!matches) {
+                                    loginWrongPassword.increment();
+                                    log.debug("Wrong password for user {}", foundUser.getUserId());
+                                    return badRequest("Invalid password");
+                                }
+
+                                rehashIfNeeded(foundUser, user.getPassword());
+
+                                // Generate JWT token
+                                String token = jwtService.generateToken(foundUser);
+
+                                Map<String, Object> response = new HashMap<>();
+                                response.put("token", token);
+                                loginSucceeded.increment();
+                                log.debug("Login for user {}", foundUser.getUserId());
+                                return ResponseEntity.ok(response);
+                            });
+                })
+                .exceptionally(error -> {
+                    Throwable cause = Futures.unwrap(error);
+                    if (cause instanceof PasswordHashingBusyException) {
+                        return busy((PasswordHashingBusyException) cause);
+                    }
+                    loginFailed.increment();
+                    log.error("Error during login", cause);
+                    Map<String, String> body = new HashMap<>();
+                    body.put("error", cause.getMessage());
+                    return ResponseEntity.internalServerError().body(body);
+                });
+    }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("token", token);
-            System.out.println("Login successful for user: " + user.getEmail());
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            System.err.println("Error during login: " + e.getMessage());
-            e.printStackTrace();
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.internalServerError().body(error);
+    // Conditional GET: with If-None-Match, only the user's version is read first, and an unchanged profile is
+    // answered with 304 before the document is fetched. Clients must revalidate every time (no-cache).
+    public CompletableFuture<ResponseEntity<?>> getUserProfile(String userId, String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return readUserProfile(userId);
         }
+        return userRepository.findVersionAsync(userId)
+                .<ResponseEntity<?>>thenCompose(version -> {
+                    String etag = version == null ? null : profileTag(version);
+                    if (ETags.matches(ifNoneMatch, etag)) {
+                        return CompletableFuture.<ResponseEntity<?>>completedFuture(ETags.notModified(etag, PROFILE_CACHE));
+                    }
+                    return readUserProfile(userId);
+                })
+                .exceptionally(error -> badRequest(Futures.unwrap(error).getMessage()));
     }
 
-    public ResponseEntity<?> getUserProfile(String userId) {
-        try {
-            User user = firestore.collection("users").document(userId).get().get().toObject(User.class);
-            if (user == null) {
-                return ResponseEntity.notFound().build();
-            }
+    private CompletableFuture<ResponseEntity<?>> readUserProfile(String userId) {
+        return userRepository.findVersionedAsync(userId)
+                .<ResponseEntity<?>>thenApply(versioned -> {
+                    if (versioned == null) {
+                        return ResponseEntity.notFound().build();
+                    }
+                    User user = versioned.getValue();
+
+                    // Create a profile map without sensitive information
+                    Map<String, Object> profile = new HashMap<>();
+                    profile.put("userId", user.getUserId());
+                    profile.put("username", user.getUsername());
+                    profile.put("firstName", user.getFirstName());
+                    profile.put("lastName", user.getLastName());
+                    profile.put("email", user.getEmail());
+                    profile.put("location", user.getLocation());
+                    profile.put("preferences", user.getPreferences());
+                    profile.put("createdAt", user.getCreatedAt());
+
+                    return ETags.ok(profile, profileTag(versioned.getVersion()), PROFILE_CACHE);
+                })
+                .exceptionally(error -> badRequest(Futures.unwrap(error).getMessage()));
+    }
 
-            // Create a profile map without sensitive information
-            Map<String, Object> profile = new HashMap<>();
-            profile.put("userId", user.getUserId());
-            profile.put("username", user.getUsername());
-            profile.put("firstName", user.getFirstName());
-            profile.put("lastName", user.getLastName());
-            profile.put("email", user.getEmail());
-            profile.put("location", user.getLocation());
-            profile.put("preferences", user.getPreferences());
-            profile.put("createdAt", user.getCreatedAt());
-
-            return ResponseEntity.ok(profile);
-        } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(error);
-        }
+    private static String profileTag(long version) {
+        return ETags.of("user-" + version);
+    }
+
+    public CompletableFuture<ResponseEntity<?>> updateUserProfile(String userId, User user) {
+        // Update only allowed fields, preconditioned on the update time of a read of just those fields and
+        // retried on conflict; the rest of the document is neither read nor rewritten
+        return userRepository.updateCheckedAsync(userId, PROFILE_FIELDS,
+                        current -> CompletableFuture.completedFuture(profileUpdate(user.getFirstName(), user.getLastName(), user.getLocation())))
+                .<ResponseEntity<?>>thenApply(previous -> previous == null ? ResponseEntity.notFound().build() : ResponseEntity.ok().build())
+                .exceptionally(error -> badRequest(Futures.unwrap(error).getMessage()));
     }
 
-    public ResponseEntity<?> updateUserProfile(String userId, User user) {
+    // Admin only (see SecurityConfig). Existing tokens keep their role claim until they expire.
+    public ResponseEntity<?> updateRole(String userId, String role) {
+        if (role == null || role.isBlank()) {
+            return badRequest("Role is required");
+        }
         try {
-            User existingUser = firestore.collection("users").document(userId).get().get().toObject(User.class);
-            if (existingUser == null) {
+            User previous = userRepository.updateChecked(userId, ROLE_FIELDS, current -> {
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("role", role.toUpperCase());
+                return updates;
+            });
+            if (previous == null) {
                 return ResponseEntity.notFound().build();
             }
-
-            // Update only allowed fields
-            existingUser.setFirstName(user.getFirstName());
-            existingUser.setLastName(user.getLastName());
-            existingUser.setLocation(user.getLocation());
-
-            firestore.collection("users").document(userId).set(existingUser).get();
+            userDetailsCache.evict(previous);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(error);
+            return badRequest(e.getMessage());
         }
     }
 
-    public ResponseEntity<?> updatePassword(String userId, User user) {
-        try {
-            User existingUser = firestore.collection("users").document(userId).get().get().toObject(User.class);
-            if (existingUser == null) {
-                return ResponseEntity.notFound().build();
-            }
-
-            // Verify old password
-            if (!passwordEncoder.matches(user.getOldPassword(), existingUser.getPassword())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Invalid old password");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Update password
-            existingUser.setPassword(passwordEncoder.encode(user.getNewPassword()));
-            firestore.collection("users").document(userId).set(existingUser).get();
+    public CompletableFuture<ResponseEntity<?>> updatePassword(String userId, User user) {
+        // Verify the old password against the hash as read and write the new one only if nothing
+        // changed the user in between, so a concurrent password change cannot be silently overwritten
+        String[] hash = new String[1]; // hashed once, not again on every conflict retry
+        return userRepository.updateCheckedAsync(userId, PASSWORD_FIELDS, current ->
+                        passwordHasher.matchesAsync(user.getOldPassword(), current.getPassword()).thenCompose(matches -> {
+                            if (!matches) {
+                                throw new BadCredentialsException("Invalid old password");
+                            }
+                            if (hash[0] != null) {
+                                return CompletableFuture.completedFuture(passwordUpdate(hash[0]));
+                            }
+                            return passwordHasher.encodeAsync(user.getNewPassword()).thenApply(encoded -> {
+                                hash[0] = encoded;
+                                return passwordUpdate(encoded);
+                            });
+                        }))
+                .<ResponseEntity<?>>thenApply(existingUser -> {
+                    if (existingUser == null) {
+                        return ResponseEntity.notFound().build();
+                    }
+                    userDetailsCache.evict(existingUser);
+
+                    Map<String, String> response = new HashMap<>();
+                    response.put("message", "Password updated successfully");
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(error -> {
+                    Throwable cause = Futures.unwrap(error);
+                    if (cause instanceof PasswordHashingBusyException) {
+                        return busy((PasswordHashingBusyException) cause);
+                    }
+                    return badRequest(cause.getMessage());
+                });
+    }
 
-            Map<String, String> response = new HashMap<>();
-            response.put("message", "Password updated successfully");
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(error);
-        }
+    public CompletableFuture<ResponseEntity<?>> getCollectionStats(String userId) {
+        // Counters kept up to date by every collection write, so this is one read whatever the history
+        return collectionRepository.findUserStatsAsync(userId)
+                .<ResponseEntity<?>>thenApply(counters -> {
+                    Map<String, Object> stats = new HashMap<>();
+                    stats.put("totalCollections", counters.getTotalCollections());
+                    stats.put("totalWeight", counters.getTotalWeight());
+                    stats.put("lastCollection", counters.getLastCollection() == null ? null : counters.getLastCollection().toString());
+                    stats.put("byStatus", counters.getByStatus());
+                    return ResponseEntity.ok(stats);
+                })
+                .exceptionally(error -> badRequest(Futures.unwrap(error).getMessage()));
     }
 
-    public ResponseEntity<?> getCollectionStats(String userId) {
+    public User getUserByEmailOrUsername(String identifier) {
         try {
-            // TODO: Implement collection stats retrieval
-            Map<String, Object> stats = new HashMap<>();
-            stats.put("totalCollections", 0);
-            stats.put("lastCollection", null);
-            return ResponseEntity.ok(stats);
+            // Email first, then username
+            return userRepository.findByEmailOrUsername(identifier);
         } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", e.getMessage());
-            return ResponseEntity.badRequest().body(error);
+            log.error("Error looking up a user by email or username", e);
         }
+
+        return null; // User not found
     }
 
-    public User getUserByEmailOrUsername(String identifier) {
-        // Use the injected Firestore instance
-        CollectionReference users = firestore.collection("users");
+    // Email and username indexes are read together; completes with null when neither matches
+    public CompletableFuture<User> getUserByEmailOrUsernameAsync(String identifier) {
+        return userRepository.findByEmailOrUsernameAsync(identifier);
+    }
 
-        try {
-            // Try fetching user by email
-            Query query = users.whereEqualTo("email", identifier).limit(1);
-            ApiFuture<QuerySnapshot> future = query.get();
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-            
-            if (!documents.isEmpty()) {
-                return documents.get(0).toObject(User.class);
-            }
+    public boolean validatePassword(User user, String password) throws ExecutionException, InterruptedException {
+        return passwordHasher.matches(password, user.getPassword());
+    }
 
-            // If not found by email, search by username
-            query = users.whereEqualTo("username", identifier).limit(1);
-            future = query.get();
-            documents = future.get().getDocuments();
-            
-            if (!documents.isEmpty()) {
-                return documents.get(0).toObject(User.class);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    // After a successful login, move the stored hash to the configured BCrypt cost.
+    // Best effort and in the background: the login itself has already succeeded. The new hash is only written
+    // while the stored one is still the hash the login verified, so a password change that lands in between
+    // is never overwritten with a hash of the old password; the next login tries again.
+    private void rehashIfNeeded(User user, String rawPassword) {
+        if (!passwordHasher.needsRehash(user.getPassword())) {
+            return;
         }
+        String verifiedHash = user.getPassword();
+        passwordHasher.encodeAsync(rawPassword)
+                .thenCompose(hash -> userRepository.updateIfAsync(user.getUserId(), PASSWORD_FIELDS,
+                        current -> verifiedHash.equals(current.getPassword()), passwordUpdate(hash)))
+                .whenComplete((written, error) -> {
+                    if (error != null) {
+                        log.warn("Could not re-hash password for user {}: {}", user.getUserId(), Futures.unwrap(error).getMessage());
+                    } else if (written) {
+                        userDetailsCache.evict(user);
+                    }
+                });
+    }
 
-        return null; // User not found
+    private static Counter loginCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("ecotrack.login.attempts")
+                .description("Login attempts that reached the password check, by result")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static Map<String, Object> profileUpdate(String firstName, String lastName, String location) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("firstName", firstName);
+        updates.put("lastName", lastName);
+        updates.put("location", location);
+        return updates;
+    }
+
+    private static Map<String, Object> passwordUpdate(String hash) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("password", hash);
+        return updates;
     }
 
-    public boolean validatePassword(User user, String password) {
-        return passwordEncoder.matches(password, user.getPassword()); // Replace with hashed password validation
+    private static ResponseEntity<?> badRequest(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.badRequest().body(error);
+    }
+
+    private ResponseEntity<?> busy(PasswordHashingBusyException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SC_SERVICE_UNAVAILABLE)
+                .header("Retry-After", String.valueOf(e.getRetryAfterSeconds()))
+                .body(error);
     }
 
     // 🔹 Authenticate User (Login)
     public User authenticateUser(String email) throws ExecutionException, InterruptedException {
-        CollectionReference usersRef = firestore.collection("users");
-        Query query = usersRef.whereEqualTo("email", email).limit(1);
-        ApiFuture<QuerySnapshot> future = query.get();
-
-        QuerySnapshot snapshot = future.get();
-        if (!snapshot.isEmpty()) {
-            DocumentSnapshot document = snapshot.getDocuments().get(0);
-            return document.toObject(User.class);
-        }
-
-        return null; // User not found
+        return userRepository.findByEmail(email); // null if not found
     }
 
     //  Get User by ID
     public User getUserById(String userId) throws ExecutionException, InterruptedException {
-        DocumentReference docRef = firestore.collection("users").document(userId);
-        DocumentSnapshot document = docRef.get().get();
-
-        if (document.exists()) {
-            return document.toObject(User.class);
-        }
-        return null;
+        return userRepository.findById(userId);
     }
     
 
     //  Update User
-    public void updateUser(String userId, Map<String, Object> updates) {
-        firestore.collection("users").document(userId).update(updates);
+    public void updateUser(String userId, Map<String, Object> updates) throws ExecutionException, InterruptedException {
+        User previous = userRepository.findById(userId);
+        if (!userRepository.update(userId, updates)) {
+            throw new IllegalArgumentException("User not found: " + userId);
+        }
+        userDetailsCache.evict(previous);
     }
 
     //  Delete User
-    public void deleteUser(String userId) throws FirebaseAuthException {
-        FirebaseAuth.getInstance().deleteUser(userId);
-        firestore.collection("users").document(userId).delete();
+    public void deleteUser(String userId) throws FirebaseAuthException, ExecutionException, InterruptedException {
+        if (firebaseAuth != null) {
+            firebaseAuth.deleteUser(userId);
+        }
+        User previous = userRepository.delete(userId);
+        userDetailsCache.evict(previous);
     }
 
     // Update User Profile Information
     public void updateProfileInfo(String userId, String firstName, String lastName, String location) throws ExecutionException, InterruptedException {
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("firstName", firstName);
-        updates.put("lastName", lastName);
-        updates.put("location", location);
-        firestore.collection("users").document(userId).update(updates).get();
+        if (userRepository.updateChecked(userId, PROFILE_FIELDS, current -> profileUpdate(firstName, lastName, location)) == null) {
+            throw new IllegalArgumentException("User not found: " + userId);
+        }
     }
 
-    // Update User Email
-    public void updateEmail(String userId, String newEmail) throws Exception {
-        try {
-            // First check if user exists in Firestore
-            DocumentReference userDoc = firestore.collection("users").document(userId);
-            DocumentSnapshot snapshot = userDoc.get().get();
-            
-            if (!snapshot.exists()) {
-                throw new Exception("User not found in Firestore");
-            }
-
-            User user = snapshot.toObject(User.class);
-            if (user == null) {
-                throw new Exception("User data is invalid");
-            }
-
-            // Check if new email is already in use by another user
-            QuerySnapshot emailCheck = firestore.collection("users")
-                .whereEqualTo("email", newEmail)
-                .get()
-                .get();
-
-            boolean emailInUseByOtherUser = emailCheck.getDocuments().stream()
-                .anyMatch(doc -> !doc.getId().equals(userId));
-
-            if (emailInUseByOtherUser) {
-                throw new Exception("Email is already in use by another user");
-            }
-
-            // Update Firestore first
-            user.setEmail(newEmail);
-            userDoc.set(user).get();
+    // Update User Email. Fails with "Error updating email: ..." when the stored user could not be changed.
+    public CompletableFuture<Void> updateEmail(String userId, String newEmail) {
+        // Update the stored user first; existence and uniqueness are checked in the same transaction
+        return userRepository.changeEmailAsync(userId, newEmail)
+                .handle((previous, error) -> {
+                    if (error != null) {
+                        Throwable cause = Futures.unwrap(error);
+                        String message = cause instanceof DuplicateValueException ? "Email is already in use by another user" : cause.getMessage();
+                        throw new CompletionException(new IllegalArgumentException("Error updating email: " + message, cause));
+                    }
+                    if (previous == null) {
+                        throw new CompletionException(new IllegalArgumentException("Error updating email: User not found"));
+                    }
+                    userDetailsCache.evict(previous);
+                    userDetailsCache.evict(newEmail);
+                    return previous;
+                })
+                // Then try to update or create Firebase Auth user
+                .thenCompose(previous -> mirrorEmail(userId, newEmail));
+    }
 
-            // Then try to update or create Firebase Auth user
-            try {
-                // Try to get the user from Firebase Auth
-                UserRecord userRecord = firebaseAuth.getUser(userId);
-                // If user exists, update their email
-                UserRecord.UpdateRequest request = new UserRecord.UpdateRequest(userId)
-                    .setEmail(newEmail);
-                firebaseAuth.updateUser(request);
-            } catch (FirebaseAuthException e) {
-                if (e.getErrorCode().equals("user-not-found")) {
+    // Best effort: the stored update has been made, so Firebase Auth errors are only logged
+    private CompletableFuture<Void> mirrorEmail(String userId, String newEmail) {
+        if (firebaseAuth == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // If the user exists, update their email
+        UserRecord.UpdateRequest request = new UserRecord.UpdateRequest(userId)
+            .setEmail(newEmail);
+        return Futures.toCompletable(firebaseAuth.updateUserAsync(request))
+                .<Void>thenApply(updated -> null)
+                .exceptionallyCompose(error -> {
+                    Throwable cause = Futures.unwrap(error);
+                    if (!(cause instanceof FirebaseAuthException)
+                            || ((FirebaseAuthException) cause).getAuthErrorCode() != AuthErrorCode.USER_NOT_FOUND) {
+                        log.warn("Could not update Firebase Auth for user {}: {}", userId, cause.getMessage());
+                        return CompletableFuture.completedFuture(null);
+                    }
                     // Create new Firebase Auth user if they don't exist
                     UserRecord.CreateRequest createRequest = new UserRecord.CreateRequest()
                         .setUid(userId)
                         .setEmail(newEmail)
                         .setEmailVerified(false)
                         .setPassword("tempPassword123!@#");
-                    
-                    try {
-                        firebaseAuth.createUser(createRequest);
-                        System.out.println("Created new Firebase Auth user for: " + userId);
-                    } catch (FirebaseAuthException createError) {
-                        System.err.println("Warning: Could not create Firebase Auth user: " + createError.getMessage());
-                        // Don't throw exception here, as Firestore update was successful
-                    }
-                } else {
-                    System.err.println("Warning: Could not update Firebase Auth: " + e.getMessage());
-                    // Don't throw exception here, as Firestore update was successful
-                }
-            }
-
-        } catch (Exception e) {
-            throw new Exception("Error updating email: " + e.getMessage());
-        }
+                    return Futures.toCompletable(firebaseAuth.createUserAsync(createRequest))
+                            .<Void>handle((created, createError) -> {
+                                if (createError != null) {
+                                    log.warn("Could not create Firebase Auth user {}: {}", userId, Futures.unwrap(createError).getMessage());
+                                } else {
+                                    log.info("Created new Firebase Auth user for {}", userId);
+                                }
+                                return null;
+                            });
+                });
     }
 
     // Update User Password
     public void updatePassword(String userId, String oldPassword, String newPassword) throws Exception {
-        // First, get the user from Firestore
-        User user = getUserById(userId);
-        if (user == null) {
+        User previous;
+        String[] hash = new String[1];
+        try {
+            // The change callback only verifies and returns the write: it runs again on every conflict, so
+            // nothing outside the store is touched until the new hash is committed
+            previous = userRepository.updateChecked(userId, PASSWORD_FIELDS, current -> {
+                if (!validatePassword(current, oldPassword)) {
+                    throw new BadCredentialsException("Invalid old password");
+                }
+                if (hash[0] == null) {
+                    hash[0] = passwordHasher.encode(newPassword);
+                }
+                return passwordUpdate(hash[0]);
+            });
+        } catch (BadCredentialsException e) {
+            throw new RuntimeException("Invalid old password");
+        } catch (PasswordHashingBusyException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error while updating password for user {}", userId, e);
+            throw new RuntimeException("Failed to update password: " + e.getMessage(), e);
+        }
+        if (previous == null) {
             throw new RuntimeException("User not found");
         }
+        userDetailsCache.evict(previous);
 
-        // Verify the old password
-        if (!validatePassword(user, oldPassword)) {
-            throw new RuntimeException("Invalid old password");
+        // Then mirror it to Firebase Auth. If that fails, put the old hash back (unless the password has been
+        // changed again since) so the two keep agreeing on the old password, and report the failure.
+        if (firebaseAuth != null) {
+            try {
+                firebaseAuth.updateUser(new UserRecord.UpdateRequest(userId).setPassword(newPassword));
+            } catch (FirebaseAuthException e) {
+                log.error("Firebase Auth error while updating password for user {}: {}", userId, e.getMessage());
+                boolean restored;
+                try {
+                    restored = userRepository.updateIfAsync(userId, PASSWORD_FIELDS,
+                            current -> hash[0].equals(current.getPassword()), passwordUpdate(previous.getPassword())).get();
+                } catch (ExecutionException restoreError) {
+                    restored = false;
+                }
+                userDetailsCache.evict(previous);
+                if (!restored) {
+                    log.error("Could not restore the previous password of user {}; the stored password and Firebase Auth now differ",
+                            userId);
+                }
+                throw new RuntimeException("Failed to update password in Firebase Auth: " + e.getMessage(), e);
+            }
         }
 
-        try {
-            // Update password in Firebase Auth
-            UserRecord.UpdateRequest request = new UserRecord.UpdateRequest(userId)
-                    .setPassword(newPassword);
-            firebaseAuth.updateUser(request);
-
-            // Hash the new password
-            String hashedPassword = passwordEncoder.encode(newPassword);
-
-            // Update password in Firestore
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("password", hashedPassword);
-            firestore.collection("users").document(userId).update(updates).get();
-
-            System.out.println("Password updated successfully for user: " + userId);
-        } catch (FirebaseAuthException e) {
-            System.err.println("❌ Firebase Auth error while updating password: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to update password in Firebase Auth: " + e.getMessage(), e);
-        } catch (Exception e) {
-            System.err.println("❌ Error while updating password: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to update password: " + e.getMessage(), e);
-        }
+        log.info("Password updated for user {}", userId);
     }
 
     // Update User Preferences
     public void updatePreferences(String userId, UserPreferences preferences) throws ExecutionException, InterruptedException {
         Map<String, Object> updates = new HashMap<>();
         updates.put("preferences", preferences);
-        firestore.collection("users").document(userId).update(updates).get();
+        if (!userRepository.update(userId, updates)) {
+            throw new IllegalArgumentException("User not found: " + userId);
+        }
     }
 }
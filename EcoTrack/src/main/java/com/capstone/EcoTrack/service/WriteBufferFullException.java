@@ -0,0 +1,16 @@
+package com.capstone.EcoTrack.service;
+
+// The collection write buffer stayed full (or is shutting down); the caller should answer 503 with Retry-After
+public class WriteBufferFullException extends RuntimeException {
+
+    private final int retryAfterSeconds;
+
+    public WriteBufferFullException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,134 @@
+package com.capstone.EcoTrack.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyRingTest {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final JwtConfig JWT_CONFIG = new JwtConfig(); // 24 hour tokens, so 24 hour retention
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ephemeralRingFindsItsOwnKey() {
+        JwtKeyRing ring = JwtKeyRing.ephemeral(JWT_CONFIG);
+
+        JwtKeyRing.SigningKey current = ring.current();
+        assertEquals(current.getKey(), ring.find(current.getKid()));
+        assertEquals(current.getKey(), ring.find(null));
+        assertNull(ring.find("unknown"));
+    }
+
+    @Test
+    void configuredKeysWinOverTheKeystoreFile() {
+        Path keystore = dir.resolve("keys.json");
+        JwtKeyRing ring = new JwtKeyRing("a:" + secret() + ", b:" + secret(), keystore.toString(), 30, 0, JWT_CONFIG);
+
+        assertEquals("a", ring.current().getKid());
+        assertNotNull(ring.find("b"));
+        ring.refresh();
+        assertFalse(Files.exists(keystore));
+    }
+
+    @Test
+    void rejectsMalformedConfiguredKeys() {
+        assertThrows(IllegalArgumentException.class, () -> new JwtKeyRing("no-secret", "", 30, 0, JWT_CONFIG));
+    }
+
+    @Test
+    void nodesSharingAKeystoreShareTheKeys() {
+        String keystore = dir.resolve("keys.json").toString();
+        JwtKeyRing first = new JwtKeyRing("", keystore, 30, 0, JWT_CONFIG);
+        JwtKeyRing second = new JwtKeyRing("", keystore, 30, 0, JWT_CONFIG);
+
+        assertEquals(first.current().getKid(), second.current().getKid());
+    }
+
+    @Test
+    void rotationKeepsTheRetiredKeyAndReachesOtherNodes() {
+        String keystore = dir.resolve("keys.json").toString();
+        JwtKeyRing rotating = new JwtKeyRing("", keystore, 0, 0, JWT_CONFIG); // due for rotation on every check
+        JwtKeyRing other = new JwtKeyRing("", keystore, 30, 0, JWT_CONFIG);
+        String original = rotating.current().getKid();
+
+        rotating.refresh();
+        String rotated = rotating.current().getKid();
+        assertNotEquals(original, rotated);
+        // Tokens signed before the rotation still verify
+        assertNotNull(rotating.find(original));
+
+        // Before its own scheduled refresh, the other node re-reads the file for the unknown kid
+        assertNotNull(other.find(rotated));
+        assertEquals(rotated, other.current().getKid());
+        assertNotNull(other.find(original));
+    }
+
+    @Test
+    void reReadsTheKeystoreForUnknownKidsAtMostOncePerInterval() {
+        String keystore = dir.resolve("keys.json").toString();
+        JwtKeyRing rotating = new JwtKeyRing("", keystore, 0, 0, JWT_CONFIG);
+        JwtKeyRing other = new JwtKeyRing("", keystore, 30, 60_000, JWT_CONFIG);
+
+        rotating.refresh();
+        assertNotNull(other.find(rotating.current().getKid()));
+
+        // Within the interval an unknown kid is refused without reading the file again
+        rotating.refresh();
+        assertNull(other.find(rotating.current().getKid()));
+        other.refresh();
+        assertNotNull(other.find(rotating.current().getKid()));
+    }
+
+    @Test
+    void dropsKeysRetiredLongerThanATokenLifetime() throws Exception {
+        Path keystore = dir.resolve("keys.json");
+        long now = System.currentTimeMillis();
+        writeKeystore(keystore, List.of(
+                Map.of("kid", "current", "secret", secret(), "createdAt", now - TimeUnit.DAYS.toMillis(2)),
+                Map.of("kid", "expired", "secret", secret(), "createdAt", now - TimeUnit.DAYS.toMillis(40))));
+        JwtKeyRing ring = new JwtKeyRing("", keystore.toString(), 30, 0, JWT_CONFIG);
+        assertNotNull(ring.find("expired"));
+
+        ring.refresh();
+        assertEquals("current", ring.current().getKid());
+        assertNull(ring.find("expired"));
+        assertFalse(Files.readString(keystore).contains("\"expired\""));
+    }
+
+    @Test
+    void keepsARetiredKeyWithinATokenLifetime() throws Exception {
+        Path keystore = dir.resolve("keys.json");
+        long now = System.currentTimeMillis();
+        writeKeystore(keystore, List.of(
+                Map.of("kid", "current", "secret", secret(), "createdAt", now - TimeUnit.HOURS.toMillis(1)),
+                Map.of("kid", "retired", "secret", secret(), "createdAt", now - TimeUnit.DAYS.toMillis(31))));
+        JwtKeyRing ring = new JwtKeyRing("", keystore.toString(), 30, 0, JWT_CONFIG);
+
+        ring.refresh();
+        assertEquals("current", ring.current().getKid());
+        assertNotNull(ring.find("retired"));
+    }
+
+    private static void writeKeystore(Path keystore, List<?> keys) throws Exception {
+        new ObjectMapper().writeValue(keystore.toFile(), Map.of("keys", keys));
+    }
+
+    private static String secret() {
+        byte[] secret = new byte[32];
+        RANDOM.nextBytes(secret);
+        return Base64.getEncoder().encodeToString(secret);
+    }
+}
@@ -0,0 +1,180 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.capstone.EcoTrack.model.UserCollectionStats;
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedCollectionRepositoryTest {
+
+    private final EmbeddedCollectionRepository repository = new EmbeddedCollectionRepository("", 0, 30);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void assignsIdsAndHandsOutCopies() {
+        CollectionRecord saved = record(null, "household-1", "driver-1", "Lahug", "COMPLETED", 5.0);
+        assertNull(repository.save(saved));
+        assertNotNull(saved.getRecordId());
+
+        CollectionRecord found = repository.findById(saved.getRecordId());
+        found.setWeight(99.0);
+        assertEquals(5.0, repository.findById(saved.getRecordId()).getWeight());
+    }
+
+    @Test
+    void aggregatesThroughTheIndexes() {
+        repository.save(record("r1", "household-1", "driver-1", "Lahug", "COMPLETED", 5.0));
+        repository.save(record("r2", "household-2", "driver-1", "Mabolo", "COMPLETED", 3.0));
+        repository.save(record("r3", "household-3", "driver-2", "Lahug", "COMPLETED", 2.0));
+        repository.save(record("r4", "household-3", "driver-2", "Lahug", "PENDING", 7.0));
+
+        CollectionStats lahug = repository.aggregate(CollectionFilter.completedPrivate().barangay("Lahug"));
+        assertEquals(2, lahug.getTotalCollections());
+        assertEquals(7.0, lahug.getTotalWeight(), 1e-9);
+
+        CollectionStats driver = repository.aggregate(CollectionFilter.completedPrivate().driverId("driver-1"));
+        assertEquals(2, driver.getTotalCollections());
+        assertEquals(1, driver.getBarangayBreakdown().get("Mabolo"));
+
+        assertEquals(3, repository.aggregate(CollectionFilter.completedPrivate()).getTotalCollections());
+    }
+
+    @Test
+    void userStatsFollowEveryWrite() {
+        repository.save(record("r1", "household-1", "driver-1", "Lahug", "PENDING", 5.0));
+        assertEquals(0, repository.findUserStats("household-1").getTotalCollections());
+
+        repository.updateStatus("r1", "COMPLETED");
+        repository.save(record("r2", "household-1", "driver-2", "Lahug", "COMPLETED", 2.0));
+        UserCollectionStats household = repository.findUserStats("household-1");
+        assertEquals(2, household.getTotalCollections());
+        assertEquals(7.0, household.getTotalWeight(), 1e-9);
+        assertEquals(1, repository.findUserStats("driver-1").getTotalCollections());
+
+        repository.delete("r1");
+        assertEquals(1, repository.findUserStats("household-1").getTotalCollections());
+        assertEquals(0, repository.findUserStats("driver-1").getTotalCollections());
+        assertEquals(0L, repository.findUserStats("driver-1").getByStatus().get("COMPLETED"));
+    }
+
+    @Test
+    void updateStatusOfAMissingRecordFails() {
+        assertThrows(IllegalArgumentException.class, () -> repository.updateStatus("missing", "COMPLETED"));
+    }
+
+    @Test
+    void fullDownloadPagesByRecordId() {
+        repository.save(record("c", "household-1", "driver-1", "Lahug", "COMPLETED", 1.0));
+        repository.save(record("a", "household-1", "driver-1", "Lahug", "COMPLETED", 1.0));
+        repository.save(record("b", "household-1", "driver-1", "Lahug", "COMPLETED", 1.0));
+        repository.save(record("z", "household-1", "driver-2", "Lahug", "COMPLETED", 1.0));
+
+        CollectionChanges first = repository.changes("driver-1", null, 2);
+        assertEquals(List.of("a", "b"), ids(first.getRecords()));
+        assertTrue(first.hasMore());
+        assertTrue(first.getNext().isFull());
+
+        CollectionChanges second = repository.changes("driver-1", first.getNext(), 2);
+        assertEquals(List.of("c"), ids(second.getRecords()));
+        assertFalse(second.hasMore());
+        assertFalse(second.getNext().isFull());
+        // The delta after a full pass starts where the pass started
+        assertEquals(first.getNext().getSince(), second.getNext().getSince());
+        assertNotNull(second.getRecords().get(0).getUpdatedAt());
+    }
+
+    @Test
+    void deltaMergesWritesAndDeletionsInChangeOrder() {
+        repository.save(record("r1", "household-1", "driver-1", "Lahug", "PENDING", 1.0));
+        repository.save(record("r2", "household-1", "driver-1", "Lahug", "PENDING", 1.0));
+        SyncCursor cursor = repository.changes("driver-1", null, 10).getNext();
+
+        repository.updateStatus("r1", "COMPLETED");
+        repository.delete("r2");
+        repository.save(record("r3", "household-1", "driver-1", "Lahug", "COMPLETED", 1.0));
+        repository.save(record("x1", "household-1", "driver-2", "Lahug", "COMPLETED", 1.0));
+        repository.delete("x1");
+
+        // One change per page, so every page boundary is crossed
+        List<String> seen = new ArrayList<>();
+        Timestamp last = null;
+        CollectionChanges page;
+        do {
+            page = repository.changes("driver-1", cursor, 1);
+            for (CollectionRecord record : page.getRecords()) {
+                seen.add("write " + record.getRecordId() + " " + record.getStatus());
+                last = checkOrder(last, record.getUpdatedAt());
+            }
+            for (Map.Entry<String, Timestamp> deletion : page.getDeleted().entrySet()) {
+                seen.add("delete " + deletion.getKey());
+                last = checkOrder(last, deletion.getValue());
+            }
+            cursor = page.getNext();
+        } while (page.hasMore());
+
+        assertEquals(List.of("write r1 COMPLETED", "delete r2", "write r3 COMPLETED"), seen);
+
+        // Caught up: nothing new until the next write
+        CollectionChanges caughtUp = repository.changes("driver-1", cursor, 10);
+        assertTrue(caughtUp.getRecords().isEmpty() && caughtUp.getDeleted().isEmpty());
+        repository.updateStatus("r3", "CANCELLED");
+        assertEquals(List.of("r3"), ids(repository.changes("driver-1", caughtUp.getNext(), 10).getRecords()));
+    }
+
+    @Test
+    void refusesTokensFromBeforeTheDeletionsAreKnown() {
+        SyncCursor old = SyncCursor.delta("driver-1", Timestamp.ofTimeMicroseconds(1), null, null);
+
+        assertThrows(SyncTokenExpiredException.class, () -> repository.changes("driver-1", old, 10));
+    }
+
+    @Test
+    void keepsRecordsAcrossRestartsInTheDataDir() {
+        EmbeddedCollectionRepository stored = new EmbeddedCollectionRepository(dir.toString(), 0, 30);
+        stored.save(record("r1", "household-1", "driver-1", "Lahug", "COMPLETED", 4.0));
+        stored.flush();
+
+        EmbeddedCollectionRepository reopened = new EmbeddedCollectionRepository(dir.toString(), 0, 30);
+        assertEquals(4.0, reopened.findById("r1").getWeight());
+        // Counters are rebuilt from the records
+        assertEquals(1, reopened.findUserStats("household-1").getTotalCollections());
+    }
+
+    private static Timestamp checkOrder(Timestamp last, Timestamp next) {
+        assertNotNull(next);
+        assertTrue(last == null || last.compareTo(next) < 0, last + " is not before " + next);
+        return next;
+    }
+
+    private static List<String> ids(List<CollectionRecord> records) {
+        List<String> ids = new ArrayList<>();
+        for (CollectionRecord record : records) {
+            ids.add(record.getRecordId());
+        }
+        return ids;
+    }
+
+    static CollectionRecord record(String recordId, String userId, String driverId, String barangay, String status, double weight) {
+        CollectionRecord record = new CollectionRecord();
+        record.setRecordId(recordId);
+        record.setUserId(userId);
+        record.setDriverId(driverId);
+        record.setBarangay(barangay);
+        record.setCollectionType("PRIVATE");
+        record.setStatus(status);
+        record.setWeight(weight);
+        record.setCollectionDate(Timestamp.now());
+        return record;
+    }
+}
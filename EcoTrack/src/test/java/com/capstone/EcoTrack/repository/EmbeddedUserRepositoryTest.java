@@ -0,0 +1,130 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedUserRepositoryTest {
+
+    private final EmbeddedUserRepository repository = new EmbeddedUserRepository("", 0, 5);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsUsersByEmailIgnoringCaseOrByUsername() {
+        repository.create(user("u1", "Juan@Example.com", "juan"));
+
+        assertEquals("u1", repository.findByEmail("juan@example.com").getUserId());
+        assertEquals("u1", repository.findByEmail(" JUAN@EXAMPLE.COM ").getUserId());
+        assertEquals("u1", repository.findByUsername("juan").getUserId());
+        assertEquals("u1", repository.findByEmailOrUsername("juan").getUserId());
+        assertNull(repository.findByUsername("Juan"));
+    }
+
+    @Test
+    void emailsAndUsernamesAreUnique() {
+        repository.create(user("u1", "juan@example.com", "juan"));
+
+        DuplicateValueException email = assertThrows(DuplicateValueException.class,
+                () -> repository.create(user("u2", "JUAN@example.com", "other")));
+        assertEquals("email", email.getField());
+        DuplicateValueException username = assertThrows(DuplicateValueException.class,
+                () -> repository.create(user("u2", "other@example.com", "juan")));
+        assertEquals("username", username.getField());
+        assertNull(repository.findById("u2"));
+
+        // Saving a user again with its own email is fine
+        repository.save(user("u1", "juan@example.com", "juan"));
+    }
+
+    @Test
+    void changeEmailChecksUniquenessAndReturnsThePreviousUser() {
+        repository.create(user("u1", "juan@example.com", "juan"));
+        repository.create(user("u2", "maria@example.com", "maria"));
+
+        assertThrows(DuplicateValueException.class, () -> repository.changeEmail("u2", "Juan@example.com"));
+        assertEquals("maria@example.com", repository.findById("u2").getEmail());
+
+        User previous = repository.changeEmail("u2", "maria@example.org");
+        assertEquals("maria@example.com", previous.getEmail());
+        assertEquals("u2", repository.findByEmail("maria@example.org").getUserId());
+        assertNull(repository.findByEmail("maria@example.com"));
+        assertNull(repository.changeEmail("missing", "x@example.com"));
+    }
+
+    @Test
+    void fieldUpdatesCannotTouchEmailOrUsername() {
+        repository.create(user("u1", "juan@example.com", "juan"));
+
+        assertTrue(repository.update("u1", Map.of("location", "Lahug")));
+        assertEquals("Lahug", repository.findById("u1").getLocation());
+        assertThrows(IllegalArgumentException.class, () -> repository.update("u1", Map.of("email", "x@example.com")));
+        assertFalse(repository.update("missing", Map.of("location", "Lahug")));
+    }
+
+    @Test
+    void updateCheckedAppliesTheChangeAndReturnsThePreviousUser() throws Exception {
+        repository.create(user("u1", "juan@example.com", "juan"));
+
+        User previous = repository.updateChecked("u1", List.of("role"), current -> {
+            assertEquals("RESIDENT", current.getRole());
+            return Map.of("role", "DRIVER");
+        });
+
+        assertEquals("RESIDENT", previous.getRole());
+        assertEquals("DRIVER", repository.findById("u1").getRole());
+        assertNull(repository.updateChecked("missing", List.of("role"), current -> Map.of("role", "DRIVER")));
+    }
+
+    @Test
+    void updateIfOnlyWritesWhenTheConditionHolds() throws Exception {
+        repository.create(user("u1", "juan@example.com", "juan"));
+
+        assertFalse(repository.updateIfAsync("u1", List.of("role"), current -> "ADMIN".equals(current.getRole()),
+                Map.of("role", "DRIVER")).get());
+        assertEquals("RESIDENT", repository.findById("u1").getRole());
+
+        assertTrue(repository.updateIfAsync("u1", List.of("role"), current -> "RESIDENT".equals(current.getRole()),
+                Map.of("role", "DRIVER")).get());
+        assertEquals("DRIVER", repository.findById("u1").getRole());
+    }
+
+    @Test
+    void versionsChangeWithEveryWrite() throws Exception {
+        repository.create(user("u1", "juan@example.com", "juan"));
+        long before = repository.findVersionAsync("u1").get();
+
+        repository.update("u1", Map.of("location", "Lahug"));
+        Versioned<User> after = repository.findVersionedAsync("u1").get();
+        assertTrue(after.getVersion() > before);
+        assertEquals("Lahug", after.getValue().getLocation());
+        assertNull(repository.findVersionAsync("missing").get());
+    }
+
+    @Test
+    void keepsUsersAcrossRestartsInTheDataDir() {
+        EmbeddedUserRepository stored = new EmbeddedUserRepository(dir.toString(), 0, 5);
+        stored.create(user("u1", "juan@example.com", "juan"));
+        stored.flush();
+
+        EmbeddedUserRepository reopened = new EmbeddedUserRepository(dir.toString(), 0, 5);
+        assertEquals("u1", reopened.findByEmail("juan@example.com").getUserId());
+        assertThrows(DuplicateValueException.class, () -> reopened.create(user("u2", "juan@example.com", "juan2")));
+    }
+
+    private static User user(String userId, String email, String username) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setEmail(email);
+        user.setUsername(username);
+        user.setRole("RESIDENT");
+        return user;
+    }
+}
@@ -0,0 +1,122 @@
+package com.capstone.EcoTrack.repository;
+
+import com.capstone.EcoTrack.config.FirestoreMetrics;
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.service.CollectionRollupService;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the local emulator: firebase emulators:start --only firestore
+// then FIRESTORE_EMULATOR_HOST=localhost:8080 ./mvnw test
+@EnabledIfEnvironmentVariable(named = "FIRESTORE_EMULATOR_HOST", matches = ".+")
+class FirestoreCollectionRepositorySyncEmulatorTest {
+
+    private Firestore firestore;
+    private ExecutorService statsExecutor;
+    private FirestoreCollectionRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        firestore = FirestoreOptions.newBuilder()
+                .setProjectId("ecotrack-test")
+                .setEmulatorHost(System.getenv("FIRESTORE_EMULATOR_HOST"))
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+        for (String collection : List.of("collections", FirestoreCollectionRepository.TOMBSTONES)) {
+            for (DocumentReference ref : firestore.collection(collection).listDocuments()) {
+                ref.delete().get();
+            }
+        }
+        FirestoreMetrics metrics = new FirestoreMetrics(new SimpleMeterRegistry());
+        statsExecutor = Executors.newFixedThreadPool(2);
+        repository = new FirestoreCollectionRepository(firestore, new CollectionRollupService(firestore, metrics, 8, 5000),
+                metrics, 1000, statsExecutor, 30, 16, 500, 10000, 5, 30);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        statsExecutor.shutdown();
+        firestore.close();
+    }
+
+    @Test
+    void fullDownloadThenDeltaMergesWritesAndDeletions() throws Exception {
+        repository.save(record("r1", "driver-1", "PENDING"));
+        repository.save(record("r2", "driver-1", "PENDING"));
+        repository.save(record("r3", "driver-1", "PENDING"));
+        repository.save(record("x1", "driver-2", "PENDING"));
+
+        // Full download, two records per page
+        List<String> downloaded = new ArrayList<>();
+        SyncCursor cursor = null;
+        CollectionChanges page;
+        do {
+            page = repository.changes("driver-1", cursor, 2);
+            page.getRecords().forEach(record -> downloaded.add(record.getRecordId()));
+            cursor = page.getNext();
+        } while (page.hasMore());
+        assertEquals(List.of("r1", "r2", "r3"), downloaded);
+
+        repository.updateStatus("r1", "COMPLETED");
+        repository.delete("r2");
+        repository.save(record("r4", "driver-1", "COMPLETED"));
+        repository.delete("x1");
+
+        // One change per page: writes and deletions come out as one stream in commit order
+        List<String> seen = new ArrayList<>();
+        Timestamp last = null;
+        do {
+            page = repository.changes("driver-1", cursor, 1);
+            for (CollectionRecord record : page.getRecords()) {
+                seen.add("write " + record.getRecordId());
+                last = checkOrder(last, record.getUpdatedAt());
+            }
+            for (Map.Entry<String, Timestamp> deletion : page.getDeleted().entrySet()) {
+                seen.add("delete " + deletion.getKey());
+                last = checkOrder(last, deletion.getValue());
+            }
+            cursor = page.getNext();
+        } while (page.hasMore());
+        assertEquals(List.of("write r1", "delete r2", "write r4"), seen);
+
+        CollectionChanges caughtUp = repository.changes("driver-1", cursor, 10);
+        assertTrue(caughtUp.getRecords().isEmpty() && caughtUp.getDeleted().isEmpty());
+        assertFalse(caughtUp.hasMore());
+    }
+
+    private static Timestamp checkOrder(Timestamp last, Timestamp next) {
+        assertNotNull(next);
+        assertTrue(last == null || last.compareTo(next) < 0, last + " is not before " + next);
+        return next;
+    }
+
+    private static CollectionRecord record(String recordId, String driverId, String status) {
+        CollectionRecord record = new CollectionRecord();
+        record.setRecordId(recordId);
+        record.setDriverId(driverId);
+        record.setUserId("household-1");
+        record.setBarangay("Lahug");
+        record.setCollectionType("PRIVATE");
+        record.setStatus(status);
+        record.setWeight(1.0);
+        record.setCollectionDate(Timestamp.now());
+        return record;
+    }
+}
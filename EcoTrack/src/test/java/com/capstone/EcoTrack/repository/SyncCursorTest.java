@@ -0,0 +1,61 @@
+package com.capstone.EcoTrack.repository;
+
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncCursorTest {
+
+    private static final Timestamp STARTED = Timestamp.parseTimestamp("2024-03-01T08:00:00.123456Z");
+    private static final Timestamp AFTER = Timestamp.parseTimestamp("2024-03-02T09:30:00.000001Z");
+
+    @Test
+    void roundTripsAFullCursor() {
+        SyncCursor decoded = SyncCursor.decode(SyncCursor.full("driver-1", STARTED, "rec-9").encode());
+
+        assertTrue(decoded.isFull());
+        assertEquals("driver-1", decoded.getDriverId());
+        assertEquals(STARTED, decoded.getSince());
+        assertNull(decoded.getAfterTime());
+        assertEquals("rec-9", decoded.getAfterId());
+    }
+
+    @Test
+    void roundTripsADeltaCursor() {
+        SyncCursor decoded = SyncCursor.decode(SyncCursor.delta("driver-1", STARTED, AFTER, "rec-9").encode());
+
+        assertFalse(decoded.isFull());
+        assertEquals(STARTED, decoded.getSince());
+        assertEquals(AFTER, decoded.getAfterTime());
+        assertEquals("rec-9", decoded.getAfterId());
+
+        SyncCursor finished = SyncCursor.decode(SyncCursor.delta("driver-1", STARTED, null, null).encode());
+        assertNull(finished.getAfterTime());
+        assertNull(finished.getAfterId());
+    }
+
+    @Test
+    void tokensAreUrlSafe() {
+        String token = SyncCursor.full("driver/with?odd&chars", STARTED, "id+with/slashes").encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+        assertEquals("driver/with?odd&chars", SyncCursor.decode(token).getDriverId());
+    }
+
+    @Test
+    void rejectsAnythingElse() {
+        assertThrows(IllegalArgumentException.class, () -> SyncCursor.decode("not a token"));
+        assertThrows(IllegalArgumentException.class, () -> SyncCursor.decode(encode("2\nF\ndriver-1\n" + STARTED + "\n\n")));
+        assertThrows(IllegalArgumentException.class, () -> SyncCursor.decode(encode("1\nX\ndriver-1\n" + STARTED + "\n\n")));
+        assertThrows(IllegalArgumentException.class, () -> SyncCursor.decode(encode("1\nF\ndriver-1\nyesterday\n\n")));
+        assertThrows(IllegalArgumentException.class, () -> SyncCursor.decode(encode("1\nF\ndriver-1")));
+    }
+
+    private static String encode(String plain) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,171 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.repository.EmbeddedCollectionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.Timestamp;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollectionBatchServiceTest {
+
+    private final RecordingRepository repository = new RecordingRepository();
+
+    private CollectionBatchService service(int chunkSize, int maxRecords) {
+        return new CollectionBatchService(repository, new CollectionAnalyticsStore(repository, StatsMode.SCAN),
+                new ObjectMapper(), chunkSize, maxRecords);
+    }
+
+    @Test
+    void writesValidRecordsInChunks() throws Exception {
+        Map<String, Object> report = service(2, 100).ingest(json("["
+                + record("r1", "COMPLETED", 1) + "," + record("r2", "COMPLETED", 2) + ","
+                + record("r3", "PENDING", 3) + "," + record("r4", "CANCELLED", 4) + ","
+                + record("r5", "COMPLETED", 5) + "]"));
+
+        assertEquals(5, report.get("received"));
+        assertEquals(5L, report.get("written"));
+        assertEquals(List.of(2, 2, 1), repository.chunkSizes);
+        assertEquals(5.0, repository.findById("r5").getWeight());
+    }
+
+    @Test
+    void reportsInvalidAndDuplicateRecordsAndWritesTheRest() throws Exception {
+        Map<String, Object> report = service(500, 100).ingest(json("["
+                + record("r1", "COMPLETED", 1) + ","
+                + record("r2", "DONE", 1) + ","
+                + record("r3", "COMPLETED", -1) + ","
+                + record("a/b", "COMPLETED", 1) + ","
+                + record("r1", "COMPLETED", 9) + ","
+                + "{\"status\": \"COMPLETED\", \"collectionType\": \"PUBLIC\", \"weight\": \"heavy\"}" + "]"));
+
+        assertEquals(6, report.get("received"));
+        assertEquals(1L, report.get("written"));
+        assertEquals(4L, report.get("invalid"));
+        assertEquals(1L, report.get("duplicate"));
+        List<String> statuses = statuses(report);
+        assertEquals(List.of("written", "invalid", "invalid", "invalid", "duplicate", "invalid"), statuses);
+        // The duplicate did not overwrite the first record with that ID
+        assertEquals(1.0, repository.findById("r1").getWeight());
+    }
+
+    @Test
+    void assignsIdsToRecordsWithout() throws Exception {
+        Map<String, Object> report = service(500, 100).ingest(json("[" + record(null, "COMPLETED", 1) + "]"));
+
+        Map<String, Object> result = results(report).get(0);
+        assertEquals("written", result.get("status"));
+        assertNotNull(repository.findById((String) result.get("recordId")));
+    }
+
+    @Test
+    void refusesRecordsPastMaxRecords() throws Exception {
+        Map<String, Object> report = service(500, 2).ingest(json("["
+                + record("r1", "COMPLETED", 1) + "," + record("r2", "COMPLETED", 1) + "," + record("r3", "COMPLETED", 1) + "]"));
+
+        assertEquals(List.of("written", "written", "invalid"), statuses(report));
+        assertNull(repository.findById("r3"));
+    }
+
+    @Test
+    void keepsRecordsBeforeMalformedJson() throws Exception {
+        Map<String, Object> report = service(500, 100).ingest(json("[" + record("r1", "COMPLETED", 1) + ", {\"status\": "));
+
+        assertEquals(1L, report.get("written"));
+        assertTrue(((String) report.get("error")).startsWith("Malformed JSON after record 1"));
+        assertNotNull(repository.findById("r1"));
+    }
+
+    @Test
+    void rejectsABodyThatIsNotAnArray() {
+        assertThrows(IllegalArgumentException.class, () -> service(500, 100).ingest(json(record("r1", "COMPLETED", 1))));
+    }
+
+    @Test
+    void reportsRecordsTheStoreRefused() throws Exception {
+        repository.refuse = "r2";
+        Map<String, Object> report = service(500, 100).ingest(json("["
+                + record("r1", "COMPLETED", 1) + "," + record("r2", "COMPLETED", 1) + "]"));
+
+        assertEquals(List.of("written", "failed"), statuses(report));
+        assertEquals("refused", results(report).get(1).get("error"));
+    }
+
+    @Test
+    void readsCollectionDatesAsTextOrEpochMillis() throws Exception {
+        CollectionBatchService service = service(500, 100);
+
+        CollectionRecord text = service.readRecord(json("{\"status\": \"COMPLETED\", \"collectionType\": \"PRIVATE\","
+                + " \"weight\": 1, \"collectionDate\": \"2024-03-01T08:00:00Z\"}"));
+        CollectionRecord millis = service.readRecord(json("{\"status\": \"COMPLETED\", \"collectionType\": \"PRIVATE\","
+                + " \"weight\": 1, \"collectionDate\": 1709280000000}"));
+
+        assertEquals(Timestamp.parseTimestamp("2024-03-01T08:00:00Z"), text.getCollectionDate());
+        assertEquals(text.getCollectionDate(), millis.getCollectionDate());
+    }
+
+    @Test
+    void readRecordRejectsInvalidRecords() {
+        CollectionBatchService service = service(500, 100);
+
+        assertThrows(IllegalArgumentException.class, () -> service.readRecord(json(record("r1", "DONE", 1))));
+        assertThrows(IllegalArgumentException.class, () -> service.readRecord(json("{\"weight\": ")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> results(Map<String, Object> report) {
+        return (List<Map<String, Object>>) report.get("results");
+    }
+
+    private static List<String> statuses(Map<String, Object> report) {
+        List<String> statuses = new ArrayList<>();
+        for (Map<String, Object> result : results(report)) {
+            statuses.add((String) result.get("status"));
+        }
+        return statuses;
+    }
+
+    private static String record(String recordId, String status, double weight) {
+        return "{" + (recordId == null ? "" : "\"recordId\": \"" + recordId + "\", ")
+                + "\"driverId\": \"driver-1\", \"barangay\": \"Lahug\", \"collectionType\": \"PRIVATE\","
+                + " \"status\": \"" + status + "\", \"weight\": " + weight + "}";
+    }
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // The embedded store, noting the size of every saveAll; refuses one record ID if asked to
+    private static class RecordingRepository extends EmbeddedCollectionRepository {
+        final List<Integer> chunkSizes = new ArrayList<>();
+        String refuse;
+
+        RecordingRepository() {
+            super("", 0, 30);
+        }
+
+        @Override
+        public List<String> saveAll(List<CollectionRecord> records) throws ExecutionException, InterruptedException {
+            chunkSizes.add(records.size());
+            List<String> errors = new ArrayList<>();
+            for (CollectionRecord record : records) {
+                if (record.getRecordId() != null && record.getRecordId().equals(refuse)) {
+                    errors.add("refused");
+                } else {
+                    save(record);
+                    errors.add(null);
+                }
+            }
+            return errors;
+        }
+    }
+}
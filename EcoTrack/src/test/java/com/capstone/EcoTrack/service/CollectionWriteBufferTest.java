@@ -0,0 +1,174 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.repository.EmbeddedCollectionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollectionWriteBufferTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RecordingRepository repository = new RecordingRepository();
+    private CollectionWriteBuffer buffer;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (repository.release != null) {
+            repository.release.countDown();
+        }
+        buffer.close();
+    }
+
+    private CollectionWriteBuffer buffer(int capacity, int flushSize, long maxLatencyMillis) {
+        buffer = new CollectionWriteBuffer(repository, registry, capacity, flushSize, maxLatencyMillis, 50, 1, 5000);
+        return buffer;
+    }
+
+    @Test
+    void flushesOnceFlushSizeRecordsAreWaiting() throws Exception {
+        buffer(100, 3, 60_000);
+
+        List<CompletableFuture<CollectionRecord>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(buffer.submit(record("r" + i, 1.0)));
+        }
+        for (CompletableFuture<CollectionRecord> future : futures) {
+            assertNotNull(future.get(5, TimeUnit.SECONDS).getRecordId());
+        }
+        assertEquals(List.of(List.of("r0", "r1", "r2")), repository.batches);
+        assertEquals(1, flushes("size"));
+        assertNotNull(repository.findById("r2"));
+    }
+
+    @Test
+    void flushesALoneRecordAfterMaxLatency() throws Exception {
+        buffer(100, 500, 20);
+
+        CollectionRecord written = buffer.submit(record(null, 1.0)).get(5, TimeUnit.SECONDS);
+
+        // The repository assigned an ID
+        assertNotNull(written.getRecordId());
+        assertEquals(1, repository.batches.size());
+        assertEquals(1, flushes("deadline"));
+    }
+
+    @Test
+    void coalescesWritesToOneRecordInAFlush() throws Exception {
+        buffer(100, 3, 60_000);
+
+        CompletableFuture<CollectionRecord> first = buffer.submit(record("r1", 1.0));
+        CompletableFuture<CollectionRecord> second = buffer.submit(record("r1", 2.0));
+        CompletableFuture<CollectionRecord> other = buffer.submit(record("r2", 3.0));
+
+        // Both callers of r1 get the write that was sent, which is the last one
+        assertEquals(2.0, first.get(5, TimeUnit.SECONDS).getWeight());
+        assertEquals(2.0, second.get(5, TimeUnit.SECONDS).getWeight());
+        assertEquals(3.0, other.get(5, TimeUnit.SECONDS).getWeight());
+        assertEquals(List.of(List.of("r1", "r2")), repository.batches);
+        assertEquals(2.0, repository.findById("r1").getWeight());
+    }
+
+    @Test
+    void failsEveryCallerOfAFailedFlush() throws Exception {
+        repository.failure = new IllegalStateException("store unavailable");
+        buffer(100, 2, 60_000);
+
+        CompletableFuture<CollectionRecord> first = buffer.submit(record("r1", 1.0));
+        CompletableFuture<CollectionRecord> second = buffer.submit(record("r2", 1.0));
+
+        for (CompletableFuture<CollectionRecord> future : List.of(first, second)) {
+            ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertEquals("store unavailable", error.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void shutdownFlushesWhatIsQueuedAndRefusesMore() throws Exception {
+        buffer(100, 500, 60_000);
+
+        CompletableFuture<CollectionRecord> first = buffer.submit(record("r1", 1.0));
+        CompletableFuture<CollectionRecord> second = buffer.submit(record("r2", 1.0));
+        buffer.close();
+
+        assertTrue(first.isDone() && second.isDone());
+        assertEquals("r1", first.get().getRecordId());
+        assertEquals("r2", second.get().getRecordId());
+        assertEquals(1, flushes("shutdown"));
+        assertThrows(WriteBufferFullException.class, () -> buffer.submit(record("r3", 1.0)));
+    }
+
+    @Test
+    void rejectsWhenTheQueueStaysFull() throws Exception {
+        repository.entered = new CountDownLatch(1);
+        repository.release = new CountDownLatch(1);
+        buffer(1, 1, 60_000);
+
+        // The first record holds the flusher inside the save, the second fills the queue
+        CompletableFuture<CollectionRecord> first = buffer.submit(record("r1", 1.0));
+        assertTrue(repository.entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<CollectionRecord> second = buffer.submit(record("r2", 1.0));
+
+        WriteBufferFullException error = assertThrows(WriteBufferFullException.class, () -> buffer.submit(record("r3", 1.0)));
+        assertEquals(1, error.getRetryAfterSeconds());
+        assertEquals(1.0, registry.get("ecotrack.collections.write_buffer.rejected").counter().count());
+
+        repository.release.countDown();
+        assertEquals("r1", first.get(5, TimeUnit.SECONDS).getRecordId());
+        assertEquals("r2", second.get(5, TimeUnit.SECONDS).getRecordId());
+    }
+
+    private long flushes(String trigger) {
+        return registry.get("ecotrack.collections.write_buffer.flush.size").tag("trigger", trigger).summary().count();
+    }
+
+    private static CollectionRecord record(String recordId, double weight) {
+        CollectionRecord record = new CollectionRecord();
+        record.setRecordId(recordId);
+        record.setDriverId("driver-1");
+        record.setBarangay("Lahug");
+        record.setCollectionType("PRIVATE");
+        record.setStatus("COMPLETED");
+        record.setWeight(weight);
+        return record;
+    }
+
+    // The embedded store, noting the record IDs of every transactional save; can fail or hold the flusher
+    private static class RecordingRepository extends EmbeddedCollectionRepository {
+        final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        volatile RuntimeException failure;
+        volatile CountDownLatch entered;
+        volatile CountDownLatch release;
+
+        RecordingRepository() {
+            super("", 0, 30);
+        }
+
+        @Override
+        public List<String> saveAllInTransactions(List<CollectionRecord> records) throws ExecutionException, InterruptedException {
+            List<String> ids = new ArrayList<>();
+            for (CollectionRecord record : records) {
+                ids.add(record.getRecordId());
+            }
+            batches.add(ids);
+            if (entered != null) {
+                entered.countDown();
+                release.await();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return super.saveAllInTransactions(records);
+        }
+    }
+}
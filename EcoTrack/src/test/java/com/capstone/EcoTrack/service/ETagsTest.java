@@ -0,0 +1,50 @@
+package com.capstone.EcoTrack.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ETagsTest {
+
+    @Test
+    void quotesTheVersion() {
+        assertEquals("\"42\"", ETags.of("42"));
+        assertNull(ETags.of(null));
+    }
+
+    @Test
+    void matchesIfNoneMatchWithWeakComparison() {
+        String etag = ETags.of("42");
+        assertTrue(ETags.matches("\"42\"", etag));
+        assertTrue(ETags.matches("W/\"42\"", etag));
+        assertTrue(ETags.matches("\"41\", \"42\"", etag));
+        assertTrue(ETags.matches("*", etag));
+        assertFalse(ETags.matches("\"41\"", etag));
+        assertFalse(ETags.matches("42", etag));
+        assertFalse(ETags.matches(null, etag));
+        assertFalse(ETags.matches("*", null));
+    }
+
+    @Test
+    void notModifiedCarriesTheTagAndNoBody() {
+        ResponseEntity<?> response = ETags.notModified("\"42\"", CacheControl.noCache());
+
+        assertEquals(304, response.getStatusCode().value());
+        assertEquals("\"42\"", response.getHeaders().getETag());
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void okIsOnlyTaggedWithATag() {
+        ResponseEntity<?> tagged = ETags.ok("body", "\"42\"", CacheControl.noCache());
+        assertEquals(200, tagged.getStatusCode().value());
+        assertEquals("\"42\"", tagged.getHeaders().getETag());
+        assertEquals("body", tagged.getBody());
+
+        ResponseEntity<?> untagged = ETags.ok("body", null, CacheControl.noCache());
+        assertNull(untagged.getHeaders().getETag());
+    }
+}
@@ -0,0 +1,95 @@
+package com.capstone.EcoTrack.service;
+
+import com.capstone.EcoTrack.model.CollectionRecord;
+import com.capstone.EcoTrack.model.CollectionStats;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the local emulator: firebase emulators:start --only firestore
+// then FIRESTORE_EMULATOR_HOST=localhost:8080 ./mvnw test
+@EnabledIfEnvironmentVariable(named = "FIRESTORE_EMULATOR_HOST", matches = ".+")
+class LiveCollectionStatsCacheEmulatorTest {
+
+    private Firestore firestore;
+    private LiveCollectionStatsCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        firestore = FirestoreOptions.newBuilder()
+                .setProjectId("ecotrack-test")
+                .setEmulatorHost(System.getenv("FIRESTORE_EMULATOR_HOST"))
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+        for (DocumentReference ref : firestore.collection("collections").listDocuments()) {
+            ref.delete().get();
+        }
+        cache = new LiveCollectionStatsCache(firestore, StatsMode.LIVE, 200);
+        cache.start();
+        await(cache::isSynced);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        cache.stop();
+        firestore.close();
+    }
+
+    @Test
+    void appliesAddedModifiedAndRemovedDocuments() throws Exception {
+        firestore.collection("collections").document("r1").set(record("r1", "Lahug", "driver-1", 10.0, "COMPLETED")).get();
+        firestore.collection("collections").document("r2").set(record("r2", "Lahug", "driver-2", 5.0, "COMPLETED")).get();
+        firestore.collection("collections").document("r3").set(record("r3", "Mabolo", "driver-1", 7.5, "PENDING")).get();
+
+        await(() -> cache.getOverall().getTotalCollections() == 2);
+        CollectionStats lahug = cache.getBarangay("Lahug");
+        assertEquals(2, lahug.getTotalCollections());
+        assertEquals(15.0, lahug.getTotalWeight(), 1e-9);
+        assertFalse(cache.isStale());
+
+        // PENDING -> COMPLETED enters the aggregates, COMPLETED -> CANCELLED leaves them
+        firestore.collection("collections").document("r3").update("status", "COMPLETED").get();
+        firestore.collection("collections").document("r2").update("status", "CANCELLED").get();
+        await(() -> cache.getBarangay("Mabolo").getTotalCollections() == 1 && cache.getBarangay("Lahug").getTotalCollections() == 1);
+
+        firestore.collection("collections").document("r1").delete().get();
+        await(() -> cache.getOverall().getTotalCollections() == 1);
+        CollectionStats overall = cache.getOverall();
+        assertEquals(7.5, overall.getTotalWeight(), 1e-9);
+        assertEquals(1, overall.getDriverBreakdown().get("driver-1"));
+        assertNull(overall.getBarangayBreakdown().get("Lahug"));
+    }
+
+    private static CollectionRecord record(String id, String barangay, String driverId, double weight, String status) {
+        CollectionRecord record = new CollectionRecord();
+        record.setRecordId(id);
+        record.setBarangay(barangay);
+        record.setDriverId(driverId);
+        record.setWeight(weight);
+        record.setStatus(status);
+        record.setCollectionType("PRIVATE");
+        record.setCollectionDate(Timestamp.now());
+        return record;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within 10 seconds");
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.capstone.EcoTrack.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginThrottleTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // Refill rates of one per minute, so no token comes back while a test runs
+    private LoginThrottle throttle(int ipCapacity, int ipFailureCapacity, int identityCapacity, int freeFailures,
+                                   long baseDelayMillis, long maxDelayMillis) {
+        return new LoginThrottle(ipCapacity, 1, ipFailureCapacity, 1, identityCapacity, 1, freeFailures,
+                baseDelayMillis, maxDelayMillis, 15, 1000, registry);
+    }
+
+    @Test
+    void throttlesAnEmailOnceItsBucketIsEmpty() {
+        LoginThrottle throttle = throttle(100, 100, 3, 3, 1000, 60_000);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, throttle.tryAcquire("juan@example.com", "10.0.0." + i));
+        }
+        // Same address in another case and with spaces is the same bucket
+        long wait = throttle.tryAcquire("  Juan@Example.COM ", "10.0.0.9");
+        assertTrue(wait >= 1, "expected a wait, got " + wait);
+        assertEquals(0, throttle.tryAcquire("maria@example.com", "10.0.0.9"));
+        assertEquals(1.0, registry.get("ecotrack.login.throttled").tag("key", "identity").counter().count());
+    }
+
+    @Test
+    void throttlesAnIpOnceItsBucketIsEmpty() {
+        LoginThrottle throttle = throttle(2, 100, 100, 3, 1000, 60_000);
+
+        assertEquals(0, throttle.tryAcquire("a@example.com", "10.0.0.1"));
+        assertEquals(0, throttle.tryAcquire("b@example.com", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("c@example.com", "10.0.0.1") >= 1);
+        assertEquals(0, throttle.tryAcquire("c@example.com", "10.0.0.2"));
+        assertEquals(1.0, registry.get("ecotrack.login.throttled").tag("key", "ip").counter().count());
+    }
+
+    @Test
+    void onlyFailuresDrainTheIpFailureBucket() {
+        LoginThrottle throttle = throttle(100, 2, 100, 10, 1000, 60_000);
+
+        // Many good logins from one address are fine
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, throttle.tryAcquire("user" + i + "@example.com", "10.0.0.1"));
+        }
+        // Wrong passwords for different emails add up per address
+        throttle.recordFailure("a@example.com", "10.0.0.1");
+        throttle.recordFailure("b@example.com", "10.0.0.1");
+        assertTrue(throttle.tryAcquire("fresh@example.com", "10.0.0.1") >= 1);
+        assertEquals(0, throttle.tryAcquire("fresh@example.com", "10.0.0.2"));
+        assertEquals(1.0, registry.get("ecotrack.login.throttled").tag("key", "ip_failures").counter().count());
+    }
+
+    @Test
+    void locksAnEmailAfterTheFreeFailures() {
+        LoginThrottle throttle = throttle(100, 100, 100, 2, 60_000, 600_000);
+
+        throttle.recordFailure("juan@example.com", "10.0.0.1");
+        throttle.recordFailure("juan@example.com", "10.0.0.2");
+        assertEquals(0, throttle.tryAcquire("juan@example.com", "10.0.0.3"));
+
+        throttle.recordFailure("JUAN@example.com", "10.0.0.3");
+        long wait = throttle.tryAcquire("juan@example.com", "10.0.0.4");
+        assertTrue(wait > 50 && wait <= 60, "expected about a minute, got " + wait);
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        LoginThrottle throttle = throttle(100, 100, 100, 2, 60_000, 600_000);
+
+        throttle.recordFailure("juan@example.com", null);
+        throttle.recordFailure("juan@example.com", null);
+        throttle.recordSuccess("juan@example.com");
+        // Counting starts again, so two more failures are still free
+        throttle.recordFailure("juan@example.com", null);
+        throttle.recordFailure("juan@example.com", null);
+        assertEquals(0, throttle.tryAcquire("juan@example.com", null));
+    }
+
+    @Test
+    void lockoutDoublesUpToTheMaximum() {
+        LoginThrottle throttle = throttle(100, 100, 100, 2, 1000, 5000);
+
+        assertEquals(0, throttle.delayAfter(2));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), throttle.delayAfter(3));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), throttle.delayAfter(4));
+        assertEquals(TimeUnit.SECONDS.toNanos(4), throttle.delayAfter(5));
+        assertEquals(TimeUnit.SECONDS.toNanos(5), throttle.delayAfter(6));
+        assertEquals(TimeUnit.SECONDS.toNanos(5), throttle.delayAfter(1000));
+    }
+}